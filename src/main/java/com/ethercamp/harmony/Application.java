@@ -19,6 +19,10 @@
 package com.ethercamp.harmony;
 
 import com.ethercamp.harmony.config.EthereumHarmonyConfig;
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.keystore.FileSystemKeystore;
+import com.ethercamp.harmony.keystore.KdfExecutor;
+import com.ethercamp.harmony.keystore.KeystoreBulkTool;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.manager.BlockLoader;
 import org.ethereum.util.RLP;
@@ -59,6 +63,8 @@ public class Application {
         SystemProperties config = SystemProperties.getDefault();
 
         getBlocksDumpPath(config).ifPresent(dumpPath -> loadDumpAndExit(config, dumpPath));
+        getKeystorePath(config, "keystore.import").ifPresent(path -> importKeysAndExit(config, path));
+        getKeystorePath(config, "keystore.export").ifPresent(path -> exportKeysAndExit(path));
 
         // Overriding mine.start to get control of its startup
         // in {@link com.ethercamp.harmony.service.PrivateMinerService}
@@ -123,6 +129,66 @@ public class Application {
         System.exit(loaded ? 0 : 1);
     }
 
+    private static Optional<Path> getKeystorePath(SystemProperties config, String property) {
+        String value = config.getProperty(property, EMPTY);
+        return isEmpty(value) ? Optional.empty() : Optional.of(Paths.get(value));
+    }
+
+    /**
+     * Keystore used by command line modes, its location could be set with "keystore.dir" system property
+     */
+    private static FileSystemKeystore createKeystore(KdfExecutor kdfExecutor) {
+        FileSystemKeystore keystore = new FileSystemKeystore();
+        keystore.keystoreDir = System.getProperty("keystore.dir");
+        keystore.kdfExecutor = kdfExecutor;
+        keystore.init();
+        return keystore;
+    }
+
+    /**
+     * Imports keys from directory or zip archive into keystore, and terminate program execution.<br>
+     * Keys are added to wallet on next start, when wallet reads keystore.<br>
+     * Password for raw keys is taken from "keystore.password" property or asked in console.<br>
+     * Exit code is 0 when all keys are imported or skipped, 1 otherwise.
+     */
+    private static void importKeysAndExit(SystemProperties config, Path path) {
+        boolean imported = false;
+        KdfExecutor kdfExecutor = new KdfExecutor(HarmonyProperties.DEFAULT);
+        try {
+            kdfExecutor.init();
+            String password = config.getProperty("keystore.password", EMPTY);
+            if (isEmpty(password) && System.console() != null) {
+                password = new String(System.console().readPassword("Password for raw keys (empty for keystore files only): "));
+            }
+
+            KeystoreBulkTool.ImportResult result = new KeystoreBulkTool(createKeystore(kdfExecutor), HarmonyProperties.DEFAULT.kdfThreads())
+                    .importKeys(path, isEmpty(password) ? null : password, System.out::println);
+            result.getErrors().forEach(System.out::println);
+            imported = result.getErrors().isEmpty();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            kdfExecutor.close();
+        }
+
+        System.exit(imported ? 0 : 1);
+    }
+
+    /**
+     * Copies all keystore files into directory or zip archive (when path ends with .zip), and terminate program execution.
+     */
+    private static void exportKeysAndExit(Path path) {
+        boolean exported = false;
+        try {
+            new KeystoreBulkTool(createKeystore(null), 1).exportKeys(path, System.out::println);
+            exported = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        System.exit(exported ? 0 : 1);
+    }
+
     public static class RlpDumpWalker implements BlockLoader.DumpWalker {
 
         private Iterator<RLPElement> iterator;
@@ -83,4 +83,252 @@ public class HarmonyProperties {
     public boolean isContractStorageEnabled() {
         return config.getConfig().getBoolean("modules.contracts.enabled");
     }
+
+    public boolean isLogIndexEnabled() {
+        return getBoolean("modules.rpc.logIndex.enabled", false);
+    }
+
+    public boolean isBloomBitsEnabled() {
+        return getBoolean("modules.rpc.bloomBits.enabled", false);
+    }
+
+    /**
+     * Number of blocks in one section of bloom bits index, should be multiple of 8
+     */
+    public int bloomBitsSectionSize() {
+        return getInt("modules.rpc.bloomBits.sectionSize", 4096);
+    }
+
+    /**
+     * Max number of threads scanning historical block ranges for logs
+     */
+    public int logScanParallelism() {
+        return getInt("modules.rpc.logScan.parallelism", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Number of blocks scanned by one thread at once
+     */
+    public int logScanChunkSize() {
+        return getInt("modules.rpc.logScan.chunkSize", 1000);
+    }
+
+    /**
+     * Max number of logs returned by eth_getLogs, requests matching more logs are rejected
+     */
+    public int getLogsMaxResults() {
+        return getInt("modules.rpc.getLogs.maxResults", 10000);
+    }
+
+    /**
+     * Filters which were not polled for this time are uninstalled
+     */
+    public int filterIdleTimeoutSec() {
+        return getInt("modules.rpc.filters.idleTimeout", 300);
+    }
+
+    /**
+     * Max size of events kept by one filter, oldest events are dropped when exceeded
+     */
+    public long filterMaxBytes() {
+        return getBytes("modules.rpc.filters.maxBytes", 1024 * 1024);
+    }
+
+    /**
+     * Max size of events kept by all filters, least recently polled filters are uninstalled when exceeded
+     */
+    public long filtersMaxTotalBytes() {
+        return getBytes("modules.rpc.filters.maxTotalBytes", 64 * 1024 * 1024);
+    }
+
+    /**
+     * Max number of transactions with receipts kept rendered for RPC
+     */
+    public int transactionCacheSize() {
+        return getInt("modules.rpc.txCache.size", 10000);
+    }
+
+    /**
+     * Max number of requests in JSON-RPC batch
+     */
+    public int rpcBatchMaxSize() {
+        return getInt("modules.rpc.batch.maxSize", 1000);
+    }
+
+    /**
+     * Max number of requests of one JSON-RPC batch executed concurrently
+     */
+    public int rpcBatchConcurrency() {
+        return getInt("modules.rpc.batch.concurrency", 8);
+    }
+
+    /**
+     * Number of threads executing JSON-RPC batch requests, shared by all batches
+     */
+    public int rpcBatchThreads() {
+        return getInt("modules.rpc.batch.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Number of threads executing concurrent calls of a single request, like eth_estimateGas probes
+     */
+    public int rpcCallThreads() {
+        return getInt("modules.rpc.call.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Number of calls executed concurrently in each round of eth_estimateGas search
+     */
+    public int estimateGasProbes() {
+        return getInt("modules.rpc.estimateGas.probes", 4);
+    }
+
+    /**
+     * Max duration of eth_estimateGas search, best known gas limit is returned when exceeded
+     */
+    public int estimateGasTimeBudgetMs() {
+        return getInt("modules.rpc.estimateGas.timeBudget", 5000);
+    }
+
+    /**
+     * Max number of calls in one ethj_multiCall request
+     */
+    public int multiCallMaxSize() {
+        return getInt("modules.rpc.multiCall.maxSize", 100);
+    }
+
+    /**
+     * Max number of transactions in one ethj_sendTransactionBatch request
+     */
+    public int sendBatchMaxSize() {
+        return getInt("modules.rpc.sendBatch.maxSize", 1000);
+    }
+
+    /**
+     * Max size of messages waiting for sending to WebSocket JSON-RPC client, slow client is disconnected when exceeded
+     */
+    public long webSocketMaxBufferedBytes() {
+        return getBytes("modules.rpc.websocket.maxBufferedBytes", 1024 * 1024);
+    }
+
+    /**
+     * Max time of sending one message to WebSocket JSON-RPC client, slow client is disconnected when exceeded
+     */
+    public int webSocketSendTimeoutSec() {
+        return getInt("modules.rpc.websocket.sendTimeout", 10);
+    }
+
+    /**
+     * Number of threads sending messages to WebSocket JSON-RPC clients
+     */
+    public int webSocketSenderThreads() {
+        return getInt("modules.rpc.websocket.senderThreads", 4);
+    }
+
+    /**
+     * Max number of eth_subscribe subscriptions of one WebSocket connection
+     */
+    public int webSocketMaxSubscriptions() {
+        return getInt("modules.rpc.websocket.maxSubscriptions", 100);
+    }
+
+    /**
+     * Number of recent blocks, which state snapshots are kept for eth_call and other state queries
+     */
+    public int stateSnapshotsWindow() {
+        return getInt("modules.rpc.stateSnapshots.window", 16);
+    }
+
+    /**
+     * Number of calls served by one state snapshot, before it is replaced by fresh one to drop its caches
+     */
+    public int stateSnapshotsMaxCalls() {
+        return getInt("modules.rpc.stateSnapshots.maxCalls", 1000);
+    }
+
+    /**
+     * Max number of blocks kept rendered for RPC
+     */
+    public int blockCacheSize() {
+        return getInt("modules.rpc.blockCache.size", 128);
+    }
+
+    /**
+     * Number of threads deriving keys from passwords
+     */
+    public int kdfThreads() {
+        return getInt("modules.keystore.kdf.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Max memory used by key derivations at the same time, quarter of max heap by default
+     */
+    public long kdfMaxMemory() {
+        return getBytes("modules.keystore.kdf.maxMemory", Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Max number of key derivations waiting for start, next ones are rejected
+     */
+    public int kdfQueueSize() {
+        return getInt("modules.keystore.kdf.queueSize", 64);
+    }
+
+    /**
+     * Max time of waiting for start of key derivation
+     */
+    public int kdfTimeoutSec() {
+        return getInt("modules.keystore.kdf.timeout", 30);
+    }
+
+    /**
+     * Directory, which ethj_importKeys reads from, null when import over RPC is disabled
+     */
+    public String keystoreImportDir() {
+        return getString("modules.keystore.importDir", null);
+    }
+
+    /**
+     * Directory, which ethj_exportKeys writes to, null when export over RPC is disabled
+     */
+    public String keystoreExportDir() {
+        return getString("modules.keystore.exportDir", null);
+    }
+
+    /**
+     * Max number of keys decrypted for personal_signAndSendTransaction kept in memory
+     */
+    public int keySessionCacheSize() {
+        return getInt("modules.keystore.sessions.size", 100);
+    }
+
+    /**
+     * Time decrypted key is kept in memory after it was loaded, 0 disables caching
+     */
+    public int keySessionTtlSec() {
+        return getInt("modules.keystore.sessions.ttl", 300);
+    }
+
+    /**
+     * Max number of blockchain events waiting for handling in each stage of event pipeline
+     */
+    public int eventPipelineQueueSize() {
+        return getInt("modules.eventPipeline.queueSize", 1024);
+    }
+
+    private boolean getBoolean(String path, boolean defaultValue) {
+        return config.getConfig().hasPath(path) ? config.getConfig().getBoolean(path) : defaultValue;
+    }
+
+    private String getString(String path, String defaultValue) {
+        return config.getConfig().hasPath(path) ? config.getConfig().getString(path) : defaultValue;
+    }
+
+    private int getInt(String path, int defaultValue) {
+        return config.getConfig().hasPath(path) ? config.getConfig().getInt(path) : defaultValue;
+    }
+
+    private long getBytes(String path, long defaultValue) {
+        return config.getConfig().hasPath(path) ? config.getConfig().getBytes(path) : defaultValue;
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.config;
+
+import com.ethercamp.harmony.jsonrpc.JsonRpcWebSocketHandler;
+import com.ethercamp.harmony.util.AppConst;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Raw WebSocket endpoint for JSON-RPC, separate from STOMP endpoint used by web frontend
+ */
+@Configuration
+@EnableWebSocket
+@Conditional(RpcEnabledCondition.class)
+public class JsonRpcWebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    JsonRpcWebSocketHandler jsonRpcWebSocketHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(jsonRpcWebSocketHandler, AppConst.JSON_RPC_WS_PATH).setAllowedOrigins("*");
+    }
+}
@@ -4,6 +4,7 @@ import com.ethercamp.contrdata.storage.dictionary.StorageDictionaryVmHook;
 import com.ethercamp.harmony.service.ClientMessageService;
 import com.ethercamp.harmony.service.ClientMessageServiceDummy;
 import com.ethercamp.harmony.service.ClientMessageServiceImpl;
+import com.ethercamp.harmony.service.JsonRpcUsageService;
 import com.ethercamp.harmony.service.contracts.ContractsService;
 import com.ethercamp.harmony.service.contracts.ContractsServiceImpl;
 import com.ethercamp.harmony.service.contracts.DisabledContractService;
@@ -18,6 +19,7 @@ import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.web.filter.HiddenHttpMethodFilter;
 
 import javax.servlet.Filter;
@@ -32,7 +34,7 @@ public class ModuleConfig {
     private Integer secondPort = null;
     private HarmonyProperties props = HarmonyProperties.DEFAULT;
 
-    private static final String ERROR_RESOLVER_KEY = "jsonrpc.web3jCompliantError";
+    public static final String ERROR_RESOLVER_KEY = "jsonrpc.web3jCompliantError";
 
     public ModuleConfig() {
         LinkedHashSet<Integer> portSet = new LinkedHashSet<>();
@@ -99,13 +101,17 @@ public class ModuleConfig {
     /**
      * Export bean which will find our json-rpc bean with @JsonRpcService and publish it.
      * https://github.com/briandilley/jsonrpc4j/issues/69
+     *
+     * Usage service is notified about each invocation by server itself, so request is parsed once.
+     * It is injected lazily, as exporter is created before regular beans.
      */
     @Bean
     @Conditional(RpcEnabledCondition.class)
     @SuppressWarnings({"unchecked", "deprecation"})
     // full class path to avoid deprecation warning
-    public com.googlecode.jsonrpc4j.spring.AutoJsonRpcServiceExporter exporter() {
+    public com.googlecode.jsonrpc4j.spring.AutoJsonRpcServiceExporter exporter(@Lazy JsonRpcUsageService jsonRpcUsageService) {
         com.googlecode.jsonrpc4j.spring.AutoJsonRpcServiceExporter serviceExporter = new com.googlecode.jsonrpc4j.spring.AutoJsonRpcServiceExporter();
+        serviceExporter.setInvocationListener(jsonRpcUsageService);
 
         if ("true".equalsIgnoreCase(System.getProperty(ERROR_RESOLVER_KEY, ""))) {
             serviceExporter.setErrorResolver(Web3jSafeAnnotationsErrorResolver.INSTANCE);
@@ -32,7 +32,10 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 import static com.ethercamp.harmony.util.AppConst.JSON_RPC_ALIAS_PATH;
+import static com.ethercamp.harmony.util.AppConst.JSON_RPC_LOGS_PATH;
+import static com.ethercamp.harmony.util.AppConst.JSON_RPC_METRICS_PATH;
 import static com.ethercamp.harmony.util.AppConst.JSON_RPC_PATH;
+import static com.ethercamp.harmony.util.AppConst.JSON_RPC_WS_PATH;
 
 /**
  * Filters web and rpc requests to ensure that
@@ -75,6 +78,9 @@ public class ModulePortFilter implements Filter {
 
     private boolean isRpcRequest(HttpServletRequest request) {
         return request.getRequestURI().equals(JSON_RPC_PATH) ||
+                request.getRequestURI().equals(JSON_RPC_LOGS_PATH) ||
+                request.getRequestURI().equals(JSON_RPC_METRICS_PATH) ||
+                request.getRequestURI().equals(JSON_RPC_WS_PATH) ||
                 ("POST".equals(request.getMethod()) && request.getRequestURI().equals(JSON_RPC_ALIAS_PATH));
     }
 
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.BlockResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.db.ByteArrayWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Cache of rendered blocks, keyed by block hash. Both variants of block result are kept:
+ * with transaction hashes only and with full transaction objects.
+ *
+ * Filled with imported blocks and with results of lookups.
+ * Cached results are shared between calls, so they must not be modified.
+ * Tracks main chain hashes of last {@link #TRACKED_BLOCKS} blocks by number, when imported block
+ * replaces some of them, replaced blocks are evicted. Lookups by number use these hashes,
+ * so recent blocks are found without loading them from block store.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class BlockCache implements PublicMetrics {
+
+    private static final int TRACKED_BLOCKS = 1024;
+
+    @Autowired
+    BlockchainImpl blockchain;
+
+    @Autowired
+    HarmonyProperties properties;
+
+    private Map<ByteArrayWrapper, Entry> cache;
+
+    /**
+     * Main chain block hash by block number
+     */
+    private final TreeMap<Long, ByteArrayWrapper> blocks = new TreeMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = new LRUMap<ByteArrayWrapper, Entry>(properties.blockCacheSize()) {
+            @Override
+            protected boolean removeLRU(LinkEntry<ByteArrayWrapper, BlockCache.Entry> entry) {
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return cached block result or null
+     */
+    public BlockResult get(byte[] blockHash, boolean fullTx) {
+        final Entry entry;
+        synchronized (this) {
+            entry = cache.get(new ByteArrayWrapper(blockHash));
+        }
+        final BlockResult result = entry == null ? null : entry.get(fullTx);
+        (result == null ? misses : hits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * @return cached block result of main chain block with given number or null
+     */
+    public BlockResult getByNumber(long number, boolean fullTx) {
+        final Entry entry;
+        synchronized (this) {
+            final ByteArrayWrapper hash = blocks.get(number);
+            entry = hash == null ? null : cache.get(hash);
+        }
+        final BlockResult result = entry == null ? null : entry.get(fullTx);
+        (result == null ? misses : hits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Caches block result of any block, block content doesn't depend on its place in chain.
+     */
+    public synchronized void put(Block block, boolean fullTx, BlockResult result) {
+        cache.computeIfAbsent(new ByteArrayWrapper(block.getHash()), k -> new Entry()).set(fullTx, result);
+    }
+
+    /**
+     * Renders and caches both variants of imported main chain block.
+     *
+     * @param renderer renders block result for block and fullTx flag
+     */
+    public void onBlock(Block block, BiFunction<Block, Boolean, BlockResult> renderer) {
+        // events are handled with delay, block could already leave main chain
+        final Block mainBlock = blockchain.getBlockByNumber(block.getNumber());
+        if (mainBlock == null || !Arrays.equals(mainBlock.getHash(), block.getHash())) return;
+
+        // render outside of lock, so lookups are not blocked
+        final Entry entry = new Entry();
+        entry.set(false, renderer.apply(block, false));
+        entry.set(true, renderer.apply(block, true));
+
+        synchronized (this) {
+            // chain could become shorter after reorg
+            while (!blocks.isEmpty() && blocks.lastKey() > block.getNumber()) {
+                evict(blocks.lastKey());
+            }
+            evict(block.getNumber());
+
+            // evict replaced blocks down to common ancestor
+            byte[] parentHash = block.getParentHash();
+            for (long number = block.getNumber() - 1; blocks.containsKey(number); number--) {
+                if (blocks.get(number).equals(new ByteArrayWrapper(parentHash))) break;
+
+                evict(number);
+                final Block parent = blockchain.getBlockByHash(parentHash);
+                if (parent == null) break;
+                parentHash = parent.getParentHash();
+            }
+
+            final ByteArrayWrapper hash = new ByteArrayWrapper(block.getHash());
+            cache.put(hash, entry);
+            blocks.put(block.getNumber(), hash);
+            while (blocks.size() > TRACKED_BLOCKS) {
+                blocks.pollFirstEntry();
+            }
+        }
+    }
+
+    private void evict(long number) {
+        final ByteArrayWrapper hash = blocks.remove(number);
+        if (hash != null) {
+            cache.remove(hash);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final int size;
+        synchronized (this) {
+            size = cache.size();
+        }
+        return Arrays.asList(
+                new Metric<>("rpc.blockCache.size", size),
+                new Metric<>("rpc.blockCache.hits", hits.get()),
+                new Metric<>("rpc.blockCache.misses", misses.get()),
+                new Metric<>("rpc.blockCache.evictions", evictions.get()));
+    }
+
+    private static class Entry {
+
+        volatile BlockResult light;
+
+        volatile BlockResult full;
+
+        BlockResult get(boolean fullTx) {
+            return fullTx ? full : light;
+        }
+
+        void set(boolean fullTx, BlockResult result) {
+            if (fullTx) {
+                full = result;
+            } else {
+                light = result;
+            }
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.Bloom;
+import org.ethereum.crypto.HashUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bloom bits index of block headers (similar to geth bloombits).
+ *
+ * Blocks are grouped into sections of fixed size. For each section all 2048 log bloom bits
+ * are stored transposed: one bit vector per bloom bit, where n-th bit is set
+ * if bloom of n-th block of the section has this bit.
+ * So blocks which could contain logs of an address or topic are found with few bitwise operations
+ * instead of reading every block.
+ *
+ * Completed sections are stored one file per section and memory mapped on read.
+ * Section file is written to temporary file and moved in place, so existing file of proper size is complete.
+ * Last incomplete section is kept in memory.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class BloomBitsIndex {
+
+    static final int BLOOM_BITS = 2048;
+    private static final int MAPPED_SECTIONS_CACHE = 256;
+
+    @Autowired
+    BlockchainImpl blockchain;
+
+    @Autowired
+    HarmonyProperties properties;
+
+    @Autowired
+    SystemProperties config;
+
+    private int sectionSize;
+
+    /**
+     * Size of one bit vector in bytes
+     */
+    private int vectorSize;
+
+    private Path dir;
+
+    private volatile boolean enabled;
+
+    /**
+     * Index covers all blocks up to this one
+     */
+    private volatile long indexedBlock = -1;
+
+    private long currentSection;
+
+    private byte[] currentBits;
+
+    private final Map<Long, MappedByteBuffer> mappedSections = new LRUMap<>(MAPPED_SECTIONS_CACHE);
+
+    private ExecutorService backfillExecutor;
+
+    @PostConstruct
+    public void init() throws IOException {
+        enabled = properties.isBloomBitsEnabled();
+        if (!enabled) {
+            log.info("Bloom bits index is disabled");
+            return;
+        }
+
+        final int sectionSize = properties.bloomBitsSectionSize();
+        open(Paths.get(config.databaseDir(), "bloombits", String.valueOf(sectionSize)), sectionSize);
+        log.info("Bloom bits index has {} sections", currentSection);
+
+        backfillExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "bloom-bits-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        backfillExecutor.submit(this::backfill);
+    }
+
+    void open(Path dir, int sectionSize) throws IOException {
+        if (sectionSize <= 0 || sectionSize % 8 != 0) {
+            throw new RuntimeException("Bloom bits section size should be positive multiple of 8: " + sectionSize);
+        }
+        this.sectionSize = sectionSize;
+        this.vectorSize = sectionSize / 8;
+        this.dir = dir;
+        Files.createDirectories(dir);
+        Files.deleteIfExists(tempFile());
+
+        // incomplete section is rebuilt from blocks
+        currentSection = 0;
+        while (Files.exists(sectionFile(currentSection))) {
+            if (Files.size(sectionFile(currentSection)) != BLOOM_BITS * vectorSize) {
+                log.warn("Bloom bits section {} has wrong size, it will be rebuilt", currentSection);
+                break;
+            }
+            currentSection++;
+        }
+        // sections after broken one are rebuilt too
+        for (long section = currentSection; Files.exists(sectionFile(section)); section++) {
+            Files.delete(sectionFile(section));
+        }
+        currentBits = new byte[BLOOM_BITS * vectorSize];
+        indexedBlock = currentSection * sectionSize - 1;
+        enabled = true;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (backfillExecutor != null) {
+            backfillExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getIndexedBlock() {
+        return indexedBlock;
+    }
+
+    /**
+     * Adds imported block bloom. Blocks ahead of backfill are skipped, backfill will reach them later.
+     */
+    public void onBlock(Block block) {
+        if (!enabled) return;
+
+        synchronized (this) {
+            if (block.getNumber() > indexedBlock + 1) return;
+
+            try {
+                addBloom(block.getNumber(), block.getLogBloom());
+            } catch (IOException e) {
+                log.error("Problem adding block #" + block.getNumber() + " to bloom bits index", e);
+            }
+        }
+    }
+
+    void backfill() {
+        log.info("Bloom bits backfill started from block #{}", indexedBlock + 1);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final long number = indexedBlock + 1;
+                if (number > blockchain.getBestBlock().getNumber()) break;
+
+                final Block block = blockchain.getBlockByNumber(number);
+                // chain got shorter meanwhile
+                if (block == null) continue;
+                synchronized (this) {
+                    // block could be replaced while read, its replacement was skipped by onBlock
+                    // as ahead of backfill, so replaced block is read again
+                    if (number == indexedBlock + 1 && isMainChain(block)) {
+                        addBloom(number, block.getLogBloom());
+                    }
+                }
+            }
+            log.info("Bloom bits backfill finished at block #{}", indexedBlock);
+        } catch (Exception e) {
+            log.error("Bloom bits backfill failed at block #" + (indexedBlock + 1), e);
+        }
+    }
+
+    private boolean isMainChain(Block block) {
+        return Arrays.equals(blockchain.getBlockStore().getBlockHashByNumber(block.getNumber()), block.getHash());
+    }
+
+    private void addBloom(long blockNumber, byte[] bloom) throws IOException {
+        final long section = blockNumber / sectionSize;
+        final int blockIdx = (int) (blockNumber % sectionSize);
+
+        if (section < currentSection) {
+            // block from side chain of completed section, extra bits only give false positives
+            final ByteBuffer bits = mapSection(section, true);
+            for (int bit : bloomBits(bloom)) {
+                final int pos = bit * vectorSize + blockIdx / 8;
+                bits.put(pos, (byte) (bits.get(pos) | (0x80 >>> (blockIdx % 8))));
+            }
+            return;
+        }
+
+        for (int bit : bloomBits(bloom)) {
+            currentBits[bit * vectorSize + blockIdx / 8] |= 0x80 >>> (blockIdx % 8);
+        }
+        indexedBlock = Math.max(indexedBlock, blockNumber);
+
+        if (blockIdx == sectionSize - 1) {
+            Files.write(tempFile(), currentBits);
+            Files.move(tempFile(), sectionFile(currentSection), StandardCopyOption.ATOMIC_MOVE);
+            currentSection++;
+            currentBits = new byte[BLOOM_BITS * vectorSize];
+        }
+    }
+
+    /**
+     * Finds blocks, which bloom could match given addresses and topics.
+     *
+     * @param addresses - contract addresses, any of them should match. Empty list matches any address
+     * @param topics - list of topic alternatives per position, null entry matches any topic
+     * @return sorted block numbers or null if query has no restrictions and index could not help
+     */
+    public List<Long> findCandidates(List<byte[]> addresses, List<byte[][]> topics, long fromBlock, long toBlock) throws IOException {
+        final List<int[][]> groups = new ArrayList<>();
+        if (!addresses.isEmpty()) {
+            groups.add(termBits(addresses.toArray(new byte[0][])));
+        }
+        for (byte[][] topicAlternatives : topics) {
+            if (topicAlternatives != null) {
+                groups.add(termBits(topicAlternatives));
+            }
+        }
+        if (groups.isEmpty()) return null;
+
+        final List<Long> result = new ArrayList<>();
+        for (long section = fromBlock / sectionSize; section <= toBlock / sectionSize; section++) {
+            final byte[] matched = matchSection(section, groups);
+            if (matched == null) continue;
+
+            for (int blockIdx = 0; blockIdx < sectionSize; blockIdx++) {
+                if ((matched[blockIdx / 8] & (0x80 >>> (blockIdx % 8))) != 0) {
+                    final long number = section * sectionSize + blockIdx;
+                    if (number >= fromBlock && number <= toBlock) {
+                        result.add(number);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return bit vector of section blocks matching all groups, or null if nothing matched
+     */
+    private byte[] matchSection(long section, List<int[][]> groups) throws IOException {
+        byte[] result = null;
+        for (int[][] group : groups) {
+            final byte[] groupVector = new byte[vectorSize];
+            for (int[] termBits : group) {
+                final byte[] termVector = new byte[vectorSize];
+                Arrays.fill(termVector, (byte) 0xFF);
+                for (int bit : termBits) {
+                    and(termVector, readVector(section, bit));
+                }
+                or(groupVector, termVector);
+            }
+
+            if (result == null) {
+                result = groupVector;
+            } else {
+                and(result, groupVector);
+            }
+            if (isEmpty(result)) return null;
+        }
+        return result;
+    }
+
+    private byte[] readVector(long section, int bit) throws IOException {
+        final byte[] vector = new byte[vectorSize];
+        synchronized (this) {
+            if (section >= currentSection) {
+                System.arraycopy(currentBits, bit * vectorSize, vector, 0, vectorSize);
+                return vector;
+            }
+        }
+
+        final ByteBuffer bits = mapSection(section, false).duplicate();
+        bits.position(bit * vectorSize);
+        bits.get(vector);
+        return vector;
+    }
+
+    private MappedByteBuffer mapSection(long section, boolean write) throws IOException {
+        synchronized (mappedSections) {
+            MappedByteBuffer buffer = mappedSections.get(section);
+            if (buffer == null || (write && buffer.isReadOnly())) {
+                try (RandomAccessFile file = new RandomAccessFile(sectionFile(section).toFile(), write ? "rw" : "r")) {
+                    buffer = file.getChannel().map(write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                            0, BLOOM_BITS * vectorSize);
+                }
+                mappedSections.put(section, buffer);
+            }
+            return buffer;
+        }
+    }
+
+    private Path sectionFile(long section) {
+        return dir.resolve("section-" + section);
+    }
+
+    private Path tempFile() {
+        return dir.resolve("section.tmp");
+    }
+
+    private int[][] termBits(byte[][] terms) {
+        final int[][] result = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            result[i] = bloomBits(Bloom.create(HashUtil.sha3(terms[i])).getData());
+        }
+        return result;
+    }
+
+    /**
+     * @return indexes of bits set in bloom
+     */
+    static int[] bloomBits(byte[] bloom) {
+        final List<Integer> bits = new ArrayList<>();
+        for (int i = 0; i < bloom.length; i++) {
+            if (bloom[i] == 0) continue;
+            for (int j = 0; j < 8; j++) {
+                if ((bloom[i] & (0x80 >>> j)) != 0) {
+                    bits.add(i * 8 + j);
+                }
+            }
+        }
+        return bits.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void and(byte[] target, byte[] other) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] &= other[i];
+        }
+    }
+
+    private static void or(byte[] target, byte[] other) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= other[i];
+        }
+    }
+
+    private static boolean isEmpty(byte[] vector) {
+        for (byte b : vector) {
+            if (b != 0) return false;
+        }
+        return true;
+    }
+}
@@ -18,17 +18,24 @@
 
 package com.ethercamp.harmony.jsonrpc;
 
+import com.ethercamp.harmony.config.HarmonyProperties;
 import com.ethercamp.harmony.config.RpcEnabledCondition;
+import com.ethercamp.harmony.keystore.FileSystemKeystore;
 import com.ethercamp.harmony.keystore.Keystore;
+import com.ethercamp.harmony.keystore.KeystoreBulkTool;
+import com.ethercamp.harmony.jsonrpc.SigningService.SigningContext;
 import com.ethercamp.harmony.model.Account;
 import com.ethercamp.harmony.service.BlockchainInfoService;
+import com.ethercamp.harmony.service.EventPipelineService;
 import com.ethercamp.harmony.service.PrivateMinerService;
 import com.ethercamp.harmony.service.WalletService;
+import com.ethercamp.harmony.util.AppConst;
 import com.ethercamp.harmony.util.ErrorCodes;
 import com.ethercamp.harmony.util.exception.HarmonyException;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import lombok.AllArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.map.LRUMap;
@@ -76,17 +83,40 @@ import org.spongycastle.util.encoders.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.stereotype.Service;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static com.ethercamp.harmony.jsonrpc.TypeConverter.*;
 import static java.math.BigInteger.valueOf;
@@ -108,6 +138,11 @@ public class EthJsonRpcImpl implements JsonRpc {
 
     private static final String BLOCK_LATEST = "latest";
 
+    /**
+     * Max number of logs returned by one ethj_getLogs call
+     */
+    static final int MAX_LOGS_PAGE = 10_000;
+
     public class BinaryCallArguments {
         public long nonce;
         public long gasPrice;
@@ -214,10 +249,51 @@ public class EthJsonRpcImpl implements JsonRpc {
     @Autowired
     BlockchainInfoService blockchainInfoService;
 
+    @Autowired
+    LogIndex logIndex;
+
+    @Autowired
+    BloomBitsIndex bloomBitsIndex;
+
+    @Autowired
+    TransactionCache transactionCache;
+
+    @Autowired
+    BlockCache blockCache;
+
+    @Autowired
+    PendingBlockCache pendingBlockCache;
+
+    @Autowired
+    StateSnapshotCache stateSnapshotCache;
+
+    @Autowired
+    SigningService signingService;
+
+    @Autowired
+    NonceManager nonceManager;
+
+    @Autowired
+    KeySessionCache keySessionCache;
+
+    @Autowired
+    HarmonyProperties harmonyProperties;
+
+    @Autowired
+    EventPipelineService eventPipeline;
+
     /**
-     * Lowercase hex address as a key.
+     * Scans chunks of historical block ranges, size is limited to not starve block import
      */
-    Map<String, Account> unlockedAccounts = new ConcurrentHashMap<>();
+    ForkJoinPool logScanPool;
+
+    /**
+     * Executes concurrent probes of eth_estimateGas and calls of ethj_multiCall, saturated pool runs them on the calling thread
+     */
+    ExecutorService callPool;
+
+    GasEstimator gasEstimator;
+
 
     /**
      * State fields
@@ -226,6 +302,8 @@ public class EthJsonRpcImpl implements JsonRpc {
 
     AtomicInteger filterCounter = new AtomicInteger(1);
     Map<Integer, Filter> installedFilters = new Hashtable<>();
+    final LogFilterDispatcher logFilterDispatcher = new LogFilterDispatcher();
+    private volatile SubscriptionLog lastSubscriptionLog;
     Map<ByteArrayWrapper, TransactionReceipt> pendingReceipts = Collections.synchronizedMap(new LRUMap<>(1024));
 
     Map<ByteArrayWrapper, Block> miningBlocks = new ConcurrentHashMap<>();
@@ -257,9 +335,34 @@ public class EthJsonRpcImpl implements JsonRpc {
     private void init() {
         initialBlockNumber = blockchain.getBestBlock().getNumber();
 
-        compositeEthereumListener.addListener(new EthereumListenerAdapter() {
+        logScanPool = new ForkJoinPool(harmonyProperties.logScanParallelism(), pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("log-scan-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final int callThreads = Math.max(1, harmonyProperties.rpcCallThreads());
+        callPool = new ThreadPoolExecutor(callThreads, callThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(callThreads * 4),
+                r -> {
+                    final Thread thread = new Thread(r, "rpc-call-" + threadCounter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        gasEstimator = new GasEstimator(callPool, harmonyProperties.estimateGasProbes(),
+                harmonyProperties.estimateGasTimeBudgetMs());
+
+        eventPipeline.addListener("jsonrpc", new EthereumListenerAdapter() {
             @Override
             public void onBlock(Block block, List<TransactionReceipt> receipts) {
+                logIndex.onBlock(block, receipts);
+                bloomBitsIndex.onBlock(block);
+                transactionCache.onBlock(block, receipts);
+                blockCache.onBlock(block, EthJsonRpcImpl.this::getBlockResult);
+                pendingBlockCache.invalidate();
+                stateSnapshotCache.onBlock(block);
+                nonceManager.onBlock();
+                logFilterDispatcher.onBlock(block, receipts);
                 for (Filter filter : installedFilters.values()) {
                     filter.newBlockReceived(block);
                 }
@@ -267,6 +370,7 @@ public class EthJsonRpcImpl implements JsonRpc {
 
             @Override
             public void onPendingTransactionsReceived(List<Transaction> transactions) {
+                pendingBlockCache.invalidate();
                 for (Filter filter : installedFilters.values()) {
                     for (Transaction tx : transactions) {
                         filter.newPendingTx(tx);
@@ -276,9 +380,12 @@ public class EthJsonRpcImpl implements JsonRpc {
 
             @Override
             public void onPendingTransactionUpdate(TransactionReceipt txReceipt, PendingTransactionState state, Block block) {
+                pendingBlockCache.invalidate();
+                nonceManager.onPendingTransactionUpdate(txReceipt, state);
                 ByteArrayWrapper txHashW = new ByteArrayWrapper(txReceipt.getTransaction().getHash());
                 if (state.isPending() || state == PendingTransactionState.DROPPED) {
                     pendingReceipts.put(txHashW, txReceipt);
+                    logFilterDispatcher.onPendingReceipt(txReceipt);
                     for (Filter filter : installedFilters.values()) {
                         filter.updatePendingTx(txReceipt);
                     }
@@ -290,6 +397,12 @@ public class EthJsonRpcImpl implements JsonRpc {
 
     }
 
+    @PreDestroy
+    private void close() {
+        logScanPool.shutdownNow();
+        callPool.shutdownNow();
+    }
+
     private long jsonHexToLong(String x) throws Exception {
         if (!x.startsWith("0x"))
             throw new Exception("Incorrect hex syntax");
@@ -334,7 +447,7 @@ public class EthJsonRpcImpl implements JsonRpc {
             return pendingState.getRepository();
         } else {
             Block block = getByJsonBlockId(id);
-            return this.repository.getSnapshotTo(block.getStateRoot());
+            return stateSnapshotCache.getSnapshot(block);
         }
     }
 
@@ -349,16 +462,16 @@ public class EthJsonRpcImpl implements JsonRpc {
 
     /**
      * @param address
-     * @return unlocked account with private key ready for signing tx
+     * @return signing context of unlocked account with private key ready for signing tx
      * @throws RuntimeException if account is not unlocked or not found in keystore
      */
-    protected Account getAccountFromKeystore(String address) throws RuntimeException {
+    protected SigningContext getSigningContext(String address) throws RuntimeException {
         if (address.indexOf("0x") == 0) {
             address = address.substring(2);
         }
-        final Account account = unlockedAccounts.get(address.toLowerCase());
-        if (account != null) {
-            return account;
+        final SigningContext context = signingService.get(address);
+        if (context != null) {
+            return context;
         }
 
         if (keystore.hasStoredKey(address)) {
@@ -529,13 +642,13 @@ public class EthJsonRpcImpl implements JsonRpc {
      */
     public String eth_sign(String address, String msg) throws Exception {
         String ha = jsonHexToHex(address);
-        Account account = getAccountFromKeystore(ha);
+        SigningContext context = getSigningContext(ha);
 
         String origMsg = new String(hexToByteArray(msg));
         // 0x19 = 25, length should be an ascii decimals, message - original
         String message = (char) 25 + "Ethereum Signed Message:\n" + origMsg.length() + origMsg;
 
-        ECKey.ECDSASignature signature = account.getEcKey().sign(sha3(message.getBytes()));
+        ECKey.ECDSASignature signature = context.getKey().sign(sha3(message.getBytes()));
         byte[] signatureBytes = toByteArray(signature);
 
         return TypeConverter.toJsonHex(signatureBytes);
@@ -549,12 +662,31 @@ public class EthJsonRpcImpl implements JsonRpc {
     }
 
     public String eth_sendTransaction(CallArguments args) throws Exception {
-        Account account = getAccountFromKeystore(jsonHexToHex(args.from));
+        SigningContext context = getSigningContext(jsonHexToHex(args.from));
+
+        return sendTransaction(args, context);
+    }
+
+    @Override
+    public SendResult[] ethj_sendTransactionBatch(CallArguments[] txs) {
+        if (txs.length > harmonyProperties.sendBatchMaxSize()) {
+            throw new RuntimeException("Too many transactions: " + txs.length + ", max " + harmonyProperties.sendBatchMaxSize());
+        }
 
-        return sendTransaction(args, account);
+        // sent in order, so transactions of one account get consecutive nonces
+        final SendResult[] results = new SendResult[txs.length];
+        for (int i = 0; i < txs.length; i++) {
+            try {
+                results[i] = new SendResult(sendTransaction(txs[i], getSigningContext(jsonHexToHex(txs[i].from))), null);
+            } catch (Exception e) {
+                log.debug("Transaction failed in batch", e);
+                results[i] = new SendResult(null, e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        }
+        return results;
     }
 
-    private String sendTransaction(CallArguments args, Account account) {
+    private String sendTransaction(CallArguments args, SigningContext context) {
         if (args.data != null && args.data.startsWith("0x"))
             args.data = args.data.substring(2);
 
@@ -563,17 +695,16 @@ public class EthJsonRpcImpl implements JsonRpc {
         final BigInteger valueBigInt = args.value != null ? hexToBigInteger(args.value) : BigInteger.ZERO;
         final byte[] value = !valueBigInt.equals(BigInteger.ZERO) ? bigIntegerToBytes(valueBigInt) : EMPTY_BYTE_ARRAY;
 
-        final Transaction tx = new Transaction(
-                args.nonce != null ? hexToByteArray(args.nonce) : bigIntegerToBytes(pendingState.getRepository().getNonce(account.getAddress())),
-                args.gasPrice != null ? hexToByteArray(args.gasPrice) : ByteUtil.longToBytesNoLeadZeroes(blockchainInfoService.getRecommendedGasPrice()),
-                args.gas != null ? hexToByteArray(args.gas) : longToBytes(90_000),
-                args.to != null ? hexToByteArray(args.to) : EMPTY_BYTE_ARRAY,
-                value,
-                args.data != null ? hexToByteArray(args.data) : EMPTY_BYTE_ARRAY);
-
-        tx.sign(account.getEcKey());
-
-        validateAndSubmit(tx);
+        final Transaction tx = signingService.signAndSubmit(context,
+                args.nonce != null ? hexToBigInteger(args.nonce) : null,
+                nonce -> new Transaction(
+                        bigIntegerToBytes(nonce),
+                        args.gasPrice != null ? hexToByteArray(args.gasPrice) : ByteUtil.longToBytesNoLeadZeroes(blockchainInfoService.getRecommendedGasPrice()),
+                        args.gas != null ? hexToByteArray(args.gas) : longToBytes(90_000),
+                        args.to != null ? hexToByteArray(args.to) : EMPTY_BYTE_ARRAY,
+                        value,
+                        args.data != null ? hexToByteArray(args.data) : EMPTY_BYTE_ARRAY),
+                this::validateAndSubmit);
 
         return TypeConverter.toJsonHex(tx.getHash());
     }
@@ -599,9 +730,7 @@ public class EthJsonRpcImpl implements JsonRpc {
     }
 
     protected TransactionReceipt createCallTxAndExecute(CallArguments args, Block block) throws Exception {
-        Repository repository = ((Repository) worldManager.getRepository())
-                .getSnapshotTo(block.getStateRoot())
-                .startTracking();
+        Repository repository = stateSnapshotCache.getTrackingRepository(block);
 
         return createCallTxAndExecute(args, block, repository, worldManager.getBlockStore());
     }
@@ -646,8 +775,9 @@ public class EthJsonRpcImpl implements JsonRpc {
     public String eth_call(CallArguments args, String bnOrId) throws Exception {
         TransactionReceipt res;
         if ("pending".equals(bnOrId)) {
-            Block pendingBlock = blockchain.createNewBlock(blockchain.getBestBlock(), pendingState.getPendingTransactions(), Collections.<BlockHeader>emptyList());
-            res = createCallTxAndExecute(args, pendingBlock, pendingState.getRepository(), worldManager.getBlockStore());
+            Block pendingBlock = pendingBlockCache.getSnapshot().getBlock();
+            // call gets own tracking layer, so pending state is not affected by it
+            res = createCallTxAndExecute(args, pendingBlock, pendingState.getRepository().startTracking(), worldManager.getBlockStore());
         } else {
             res = createCallTxAndExecute(args, getByJsonBlockId(bnOrId));
         }
@@ -655,8 +785,106 @@ public class EthJsonRpcImpl implements JsonRpc {
     }
 
     public String eth_estimateGas(CallArguments args) throws Exception {
-        TransactionReceipt res = createCallTxAndExecute(args, blockchain.getBestBlock());
-        return TypeConverter.toJsonHex(res.getGasUsed());
+        final Block block = blockchain.getBestBlock();
+        final long cap = args.gas != null && !args.gas.isEmpty()
+                ? jsonHexToLong(args.gas)
+                : ByteUtil.byteArrayToLong(block.getGasLimit());
+
+        final long gas = gasEstimator.estimate(cap, gasLimit -> {
+            final TransactionReceipt res = createCallTxAndExecute(withGas(args, gasLimit), block);
+            return res.isSuccessful() ? ByteUtil.byteArrayToLong(res.getGasUsed()) : -1;
+        });
+        return TypeConverter.toJsonHex(gas);
+    }
+
+    @Override
+    public CallResult[] ethj_multiCall(CallArguments[] calls, String bnOrId) throws Exception {
+        if (calls.length > harmonyProperties.multiCallMaxSize()) {
+            throw new RuntimeException("Too many calls: " + calls.length + ", max " + harmonyProperties.multiCallMaxSize());
+        }
+
+        // block and state are resolved once, each call gets own tracking layer on top of them
+        final Block block;
+        final Repository repository;
+        if ("pending".equals(bnOrId)) {
+            // live pending state changes while calls run, so pending block state is used
+            final PendingBlockCache.Snapshot snapshot = pendingBlockCache.getSnapshot();
+            block = snapshot.getBlock();
+            repository = snapshot.getRepository(this::buildPendingRepository);
+        } else {
+            block = getByJsonBlockId(bnOrId);
+            if (block == null) {
+                throw new RuntimeException("Block not found: " + bnOrId);
+            }
+            repository = stateSnapshotCache.getSnapshot(block);
+        }
+
+        final List<Future<CallResult>> futures = new ArrayList<>();
+        for (CallArguments args : calls) {
+            final Callable<CallResult> call = () -> {
+                try {
+                    final TransactionReceipt res = createCallTxAndExecute(args, block, repository.startTracking(),
+                            worldManager.getBlockStore());
+                    return new CallResult(toJsonHex(res.getExecutionResult()),
+                            res.isSuccessful() ? null : res.getError());
+                } catch (Exception e) {
+                    log.debug("Call failed in multiCall", e);
+                    return new CallResult(null, e.getMessage() != null ? e.getMessage() : e.toString());
+                }
+            };
+            try {
+                futures.add(callPool.submit(call));
+            } catch (RejectedExecutionException e) {
+                // pool is saturated, call is executed by request thread
+                final FutureTask<CallResult> inline = new FutureTask<>(call);
+                inline.run();
+                futures.add(inline);
+            }
+        }
+
+        final CallResult[] results = new CallResult[calls.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = futures.get(i).get();
+        }
+        return results;
+    }
+
+    /**
+     * Executes transactions of pending block on top of its parent state.
+     * Transactions which can't be executed are skipped, as they are by pending state.
+     */
+    Repository buildPendingRepository(PendingBlockCache.Snapshot snapshot) {
+        final Block block = snapshot.getBlock();
+        final Repository track = stateSnapshotCache.getTrackingRepository(snapshot.getParent());
+        long gasUsedInBlock = 0;
+        for (Transaction tx : block.getTransactionsList()) {
+            final TransactionExecutor executor = new TransactionExecutor(
+                    tx, block.getCoinbase(), track, worldManager.getBlockStore(),
+                    programInvokeFactory, block, new EthereumListenerAdapter(), gasUsedInBlock)
+                    .withCommonConfig(commonConfig);
+            try {
+                executor.init();
+                executor.execute();
+                executor.go();
+                executor.finalization();
+                gasUsedInBlock += executor.getGasUsed();
+            } catch (Exception e) {
+                log.debug("Pending transaction failed while building pending block state", e);
+            }
+        }
+        return track;
+    }
+
+    private static CallArguments withGas(CallArguments args, long gasLimit) {
+        final CallArguments result = new CallArguments();
+        result.from = args.from;
+        result.to = args.to;
+        result.gas = toJsonHex(gasLimit);
+        result.gasPrice = args.gasPrice;
+        result.value = args.value;
+        result.data = args.data;
+        result.nonce = args.nonce;
+        return result;
     }
 
 
@@ -706,22 +934,52 @@ public class EthJsonRpcImpl implements JsonRpc {
     }
 
     public BlockResult eth_getBlockByHash(String blockHash, Boolean fullTransactionObjects) throws Exception {
-        final Block b = getBlockByJSonHash(blockHash);
-        return getBlockResult(b, fullTransactionObjects);
+        final byte[] hash = hexToByteArray(blockHash);
+        final BlockResult cached = blockCache.get(hash, fullTransactionObjects);
+        if (cached != null) return cached;
+        return renderAndCache(blockchain.getBlockByHash(hash), fullTransactionObjects);
     }
 
     public BlockResult eth_getBlockByNumber(String bnOrId, Boolean fullTransactionObjects) throws Exception {
-        final Block b;
         if ("pending".equalsIgnoreCase(bnOrId)) {
-            b = blockchain.createNewBlock(blockchain.getBestBlock(), pendingState.getPendingTransactions(), Collections.<BlockHeader>emptyList());
-        } else {
-            b = getByJsonBlockId(bnOrId);
+            return pendingBlockCache.getSnapshot().getBlockResult(fullTransactionObjects, this::getBlockResult);
         }
-        return (b == null ? null : getBlockResult(b, fullTransactionObjects));
+        // best block is in memory, other blocks are loaded from block store only on cache miss
+        final Block best = blockchain.getBestBlock();
+        if ("latest".equalsIgnoreCase(bnOrId)) {
+            final BlockResult cached = blockCache.get(best.getHash(), fullTransactionObjects);
+            return cached != null ? cached : renderAndCache(best, fullTransactionObjects);
+        }
+        final long number = "earliest".equalsIgnoreCase(bnOrId) ? 0 : hexToBigInteger(bnOrId).longValue();
+        if (number > best.getNumber()) return null;
+        final BlockResult cached = blockCache.getByNumber(number, fullTransactionObjects);
+        if (cached != null) return cached;
+        return renderAndCache(blockchain.getBlockByNumber(number), fullTransactionObjects);
+    }
+
+    /**
+     * Not used for uncles, as block made of uncle header has no transactions.
+     */
+    private BlockResult renderAndCache(Block block, boolean fullTx) {
+        if (block == null) return null;
+        final BlockResult result = getBlockResult(block, fullTx);
+        blockCache.put(block, fullTx, result);
+        return result;
     }
 
     public TransactionResultDTO eth_getTransactionByHash(String transactionHash) throws Exception {
-        final byte[] txHash = hexToByteArray(transactionHash);
+        final TransactionCache.Entry entry = getMainChainTransaction(hexToByteArray(transactionHash));
+        return entry == null ? null : entry.getTransaction();
+    }
+
+    /**
+     * @return cached transaction and receipt or null if transaction is not in main chain
+     */
+    private TransactionCache.Entry getMainChainTransaction(byte[] txHash) {
+        final TransactionCache.Entry cached = transactionCache.get(txHash);
+        if (cached != null) {
+            return cached;
+        }
 
         final TransactionInfo txInfo = blockchain.getTransactionInfo(txHash);
         if (txInfo == null) {
@@ -736,7 +994,7 @@ public class EthJsonRpcImpl implements JsonRpc {
         }
         txInfo.setTransaction(block.getTransactionsList().get(txInfo.getIndex()));
 
-        return new TransactionResultDTO(block, txInfo.getIndex(), txInfo.getReceipt().getTransaction());
+        return transactionCache.put(block, txInfo);
     }
 
     public TransactionResultDTO eth_getTransactionByBlockHashAndIndex(String blockHash, String index) throws Exception {
@@ -759,22 +1017,8 @@ public class EthJsonRpcImpl implements JsonRpc {
     }
 
     public TransactionReceiptDTO eth_getTransactionReceipt(String transactionHash) throws Exception {
-        final byte[] hash = TypeConverter.hexToByteArray(transactionHash);
-
-        final TransactionInfo txInfo = blockchain.getTransactionInfo(hash);
-
-        if (txInfo == null)
-            return null;
-
-        final Block block = blockchain.getBlockByHash(txInfo.getBlockHash());
-        final Block mainBlock = blockchain.getBlockByNumber(block.getNumber());
-
-        // need to return txes only from main chain
-        if (!Arrays.equals(block.getHash(), mainBlock.getHash())) {
-            return null;
-        }
-
-        return new TransactionReceiptDTO(block, txInfo);
+        final TransactionCache.Entry entry = getMainChainTransaction(TypeConverter.hexToByteArray(transactionHash));
+        return entry == null ? null : entry.getReceipt();
     }
 
     @Override
@@ -873,41 +1117,154 @@ public class EthJsonRpcImpl implements JsonRpc {
 //        throw new UnsupportedOperationException("JSON RPC method eth_pendingTransactions not implemented yet");
 //    }
 
+    /**
+     * Keeps last {@link #MAX_EVENT_COUNT} events in ring buffer.
+     * Events are added by single producer (blockchain listener or historical scan before filter goes live)
+     * and polled by any number of RPC threads without locking.
+     * Oldest events are also dropped when their estimated size exceeds {@link #maxBufferedBytes}.
+     * Events dropped before they were polled are counted as overflow.
+     */
     static class Filter {
-        static final int MAX_EVENT_COUNT = 1024; // prevent OOM when Filers are forgotten
-        private int pollStart = 0;
+        static final int EVENT_OVERHEAD = 64;
+        static final int MAX_EVENT_COUNT = 1024; // prevent OOM when Filers are forgotten, should be power of 2
+        private static final int INDEX_MASK = MAX_EVENT_COUNT - 1;
+
         static abstract class FilterEvent {
             public abstract Object getJsonEventObject();
+
+            /**
+             * @return rough estimation of memory taken by event
+             */
+            public abstract int getSize();
         }
-        List<FilterEvent> events = new LinkedList<>();
 
-        public synchronized boolean hasNew() { return !events.isEmpty();}
+        private final AtomicReferenceArray<FilterEvent> events = new AtomicReferenceArray<>(MAX_EVENT_COUNT);
 
-        public synchronized Object[] poll() {
-            Object[] ret = new Object[events.size() - pollStart];
-            for (int i = 0; i < ret.length; i++) {
-                ret[i] = events.get(i + pollStart).getJsonEventObject();
+        /**
+         * Sequence of next event to add. Claimed before slot is written, published after
+         */
+        private volatile long claimed = 0;
+        private volatile long published = 0;
+
+        /**
+         * Sequence of oldest event which is kept, older ones are dropped due to size limit
+         */
+        private volatile long floor = 0;
+
+        private volatile long bufferedBytes = 0;
+
+        long maxBufferedBytes = Long.MAX_VALUE;
+
+        /**
+         * Sequence of next event to return by {@link #poll()}
+         */
+        private final AtomicLong pollCursor = new AtomicLong();
+
+        private final AtomicLong overflowCount = new AtomicLong();
+
+        private volatile long lastPollTime = System.currentTimeMillis();
+
+        public boolean hasNew() { return published > 0;}
+
+        public Object[] poll() {
+            lastPollTime = System.currentTimeMillis();
+            while (true) {
+                final long from = pollCursor.get();
+                final EventsRange range = read(from);
+                if (pollCursor.compareAndSet(from, range.end)) {
+                    if (range.start > from) {
+                        overflowCount.addAndGet(range.start - from);
+                        log.warn("Filter events overflow, {} events were dropped before poll", range.start - from);
+                    }
+                    return range.events;
+                }
             }
-            pollStart += ret.length;
-            return ret;
         }
 
-        public synchronized Object[] getAll() {
-            Object[] ret = new Object[events.size()];
-            for (int i = 0; i < ret.length; i++) {
-                ret[i] = events.get(i).getJsonEventObject();
+        public Object[] getAll() {
+            lastPollTime = System.currentTimeMillis();
+            return read(0).events;
+        }
+
+        /**
+         * @return number of events which were dropped before they were polled
+         */
+        public long getOverflowCount() {
+            return overflowCount.get();
+        }
+
+        public long getLastPollTime() {
+            return lastPollTime;
+        }
+
+        public long getBufferedBytes() {
+            return bufferedBytes;
+        }
+
+        public long getEventCount() {
+            final long end = published;
+            return end - Math.max(floor, end - MAX_EVENT_COUNT);
+        }
+
+        protected void add(FilterEvent evt) {
+            final long seq = published;
+            long bytes = bufferedBytes;
+            if (seq - MAX_EVENT_COUNT >= floor) {
+                bytes -= events.get(index(seq)).getSize();
+            }
+            claimed = seq + 1;
+            events.set(index(seq), evt);
+            published = seq + 1;
+            bytes += evt.getSize();
+
+            // newest event is kept even if it alone exceeds limit
+            final long oldFloor = Math.max(floor, seq + 1 - MAX_EVENT_COUNT);
+            long newFloor = oldFloor;
+            while (bytes > maxBufferedBytes && newFloor < seq) {
+                bytes -= events.get(index(newFloor)).getSize();
+                newFloor++;
+            }
+            floor = newFloor;
+            bufferedBytes = bytes;
+            // release dropped events only after floor is moved, so readers skip empty slots
+            for (long dropped = oldFloor; dropped < newFloor; dropped++) {
+                events.set(index(dropped), null);
             }
-            return ret;
         }
 
-        protected synchronized void add(FilterEvent evt) {
-            events.add(evt);
-            if (events.size() > MAX_EVENT_COUNT) {
-                events.remove(0);
-                if (pollStart > 0) {
-                    --pollStart;
-                }
+        /**
+         * Reads events which are still kept in buffer, starting from given sequence.
+         */
+        private EventsRange read(long from) {
+            final long end = published;
+            final long start = Math.max(Math.max(from, floor), end - MAX_EVENT_COUNT);
+            final FilterEvent[] read = new FilterEvent[(int) (end - start)];
+            for (long seq = start; seq < end; seq++) {
+                read[(int) (seq - start)] = events.get(index(seq));
+            }
+
+            // slots being overwritten or released by producer during read are dropped
+            final long validStart = Math.min(end, Math.max(Math.max(start, floor), claimed - MAX_EVENT_COUNT));
+            final Object[] ret = new Object[(int) (end - validStart)];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = read[(int) (validStart - start) + i].getJsonEventObject();
             }
+            return new EventsRange(validStart, end, ret);
+        }
+
+        private static int index(long seq) {
+            return (int) (seq & INDEX_MASK);
+        }
+
+        static int length(String s) {
+            return s == null ? 0 : s.length();
+        }
+
+        @AllArgsConstructor
+        private static class EventsRange {
+            final long start;
+            final long end;
+            final Object[] events;
         }
 
         public void newBlockReceived(Block b) {}
@@ -924,6 +1281,11 @@ public class EthJsonRpcImpl implements JsonRpc {
             public String getJsonEventObject() {
                 return blockHash;
             }
+
+            @Override
+            public int getSize() {
+                return EVENT_OVERHEAD + blockHash.length();
+            }
         }
 
         public void newBlockReceived(Block b) {
@@ -941,6 +1303,11 @@ public class EthJsonRpcImpl implements JsonRpc {
             public String getJsonEventObject() {
                 return txHash;
             }
+
+            @Override
+            public int getSize() {
+                return EVENT_OVERHEAD + txHash.length();
+            }
         }
 
         public void newPendingTx(Transaction tx) {
@@ -951,24 +1318,46 @@ public class EthJsonRpcImpl implements JsonRpc {
         public void updatePendingTx(TransactionReceipt txReceipt) {}
     }
 
+    /**
+     * Logs of new blocks and pending transactions are passed by {@link LogFilterDispatcher},
+     * other methods are used for historical data.
+     */
     class JsonLogFilter extends Filter {
         class LogFilterEvent extends FilterEvent {
             private final LogFilterElement el;
+            private final int size;
 
             LogFilterEvent(LogFilterElement el) {
                 this.el = el;
+                int size = EVENT_OVERHEAD + length(el.logIndex) + length(el.transactionIndex) + length(el.transactionHash)
+                        + length(el.blockHash) + length(el.blockNumber) + length(el.address) + length(el.data);
+                for (String topic : el.topics) {
+                    size += length(topic);
+                }
+                this.size = size;
             }
 
             @Override
             public LogFilterElement getJsonEventObject() {
                 return el;
             }
+
+            @Override
+            public int getSize() {
+                return size;
+            }
         }
 
         LogFilter logFilter;
         boolean onNewBlock;
         boolean onPendingTx;
 
+        /**
+         * Raw filter criteria, kept for lookups in log index
+         */
+        List<byte[]> addresses = new ArrayList<>();
+        List<byte[][]> topics = new ArrayList<>();
+
         public JsonLogFilter(LogFilter logFilter) {
             this.logFilter = logFilter;
         }
@@ -977,6 +1366,13 @@ public class EthJsonRpcImpl implements JsonRpc {
             add(new LogFilterEvent(new LogFilterElement(logInfo, b, txIndex, tx, logIdx)));
         }
 
+        /**
+         * @return true if filter doesn't need more logs
+         */
+        boolean isComplete() {
+            return false;
+        }
+
         void onTransactionReceipt(TransactionReceipt receipt, Block b, Integer txIndex) {
             if (logFilter.matchBloom(receipt.getBloomFilter())) {
                 int logIdx = 0;
@@ -1006,56 +1402,343 @@ public class EthJsonRpcImpl implements JsonRpc {
             }
         }
 
-        @Override
-        public void newBlockReceived(Block b) {
-            if (onNewBlock) onBlock(b);
+        /**
+         * Checks logs found in log index against main chain.
+         * Applies same matching rules as {@link #onBlock(Block)}.
+         */
+        void onIndexedLogs(List<LogIndex.LogPosition> positions) {
+            Block b = null;
+            Transaction tx = null;
+            int txIdx = -1;
+            List<LogInfo> logs = null;
+            for (LogIndex.LogPosition position : positions) {
+                if (isComplete()) return;
+                if (b == null || b.getNumber() != position.getBlockNumber()) {
+                    b = blockchain.getBlockByNumber(position.getBlockNumber());
+                    txIdx = -1;
+                }
+                if (b == null || position.getTxIndex() >= b.getTransactionsList().size()) continue;
+
+                if (txIdx != position.getTxIndex()) {
+                    txIdx = position.getTxIndex();
+                    tx = b.getTransactionsList().get(txIdx);
+                    final TransactionInfo txInfo = logFilter.matchesContractAddress(tx.getReceiveAddress())
+                            ? blockchain.getTransactionInfo(tx.getHash()) : null;
+                    logs = txInfo != null ? txInfo.getReceipt().getLogInfoList() : Collections.emptyList();
+                }
+                if (position.getLogIndex() >= logs.size()) continue;
+
+                final LogInfo logInfo = logs.get(position.getLogIndex());
+                if (logFilter.matchesExactly(logInfo)) {
+                    onLogMatch(logInfo, b, position.getTxIndex(), tx, position.getLogIndex());
+                }
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    static class LogMatch {
+        final LogInfo logInfo;
+        final Block block;
+        final Integer txIndex;
+        final Transaction tx;
+        final int logIdx;
+    }
+
+    /**
+     * Collects matches of one chunk of historical range, which are merged into target filter later.
+     */
+    class ChunkLogFilter extends JsonLogFilter {
+        final List<LogMatch> matches = new ArrayList<>();
+
+        ChunkLogFilter(LogFilter logFilter) {
+            super(logFilter);
         }
 
         @Override
-        public void newPendingTx(Transaction tx) {}
+        void onLogMatch(LogInfo logInfo, Block b, Integer txIndex, Transaction tx, int logIdx) {
+            matches.add(new LogMatch(logInfo, b, txIndex, tx, logIdx));
+        }
+    }
+
+    /**
+     * Not installed filter which passes historical logs to consumer instead of buffering them.
+     * Stops when limit is reached and remembers position of first not passed log.
+     */
+    class PagedLogFilter extends JsonLogFilter {
+        private final LogIndex.LogPosition resumeFrom;
+        private final int limit;
+        private final Consumer<LogFilterElement> consumer;
+        private int count = 0;
+        private LogIndex.LogPosition next;
+
+        PagedLogFilter(LogIndex.LogPosition resumeFrom, int limit, Consumer<LogFilterElement> consumer) {
+            super(new LogFilter());
+            this.resumeFrom = resumeFrom;
+            this.limit = limit;
+            this.consumer = consumer;
+        }
 
         @Override
-        public void updatePendingTx(TransactionReceipt txReceipt) {
-            if (!onPendingTx) return;
-            if (logFilter.matchesContractAddress(txReceipt.getTransaction().getReceiveAddress())) {
-                onTransactionReceipt(txReceipt, null, null);
+        void onLogMatch(LogInfo logInfo, Block b, Integer txIndex, Transaction tx, int logIdx) {
+            final LogIndex.LogPosition position = new LogIndex.LogPosition(b.getNumber(), txIndex, logIdx);
+            if (next != null || (resumeFrom != null && position.compareTo(resumeFrom) < 0)) {
+                return;
+            }
+            if (count >= limit) {
+                next = position;
+                return;
             }
+            consumer.accept(new LogFilterElement(logInfo, b, txIndex, tx, logIdx));
+            count++;
+        }
+
+        @Override
+        boolean isComplete() {
+            return next != null;
         }
     }
 
+    /**
+     * Not installed filter which passes logs of new main chain blocks to consumer, used by push subscriptions.
+     */
+    class SubscriptionLogFilter extends JsonLogFilter {
+        private final Consumer<LogFilterElement> consumer;
+
+        SubscriptionLogFilter(Consumer<LogFilterElement> consumer) {
+            super(new LogFilter());
+            this.consumer = consumer;
+        }
+
+        @Override
+        void onLogMatch(LogInfo logInfo, Block b, Integer txIndex, Transaction tx, int logIdx) {
+            consumer.accept(subscriptionElement(logInfo, b, txIndex, tx, logIdx));
+        }
+    }
+
+    /**
+     * Dispatcher passes one log to all matching subscriptions in a row,
+     * so they share one element and subscribers can render it once
+     */
+    private LogFilterElement subscriptionElement(LogInfo logInfo, Block b, Integer txIndex, Transaction tx, int logIdx) {
+        final SubscriptionLog last = lastSubscriptionLog;
+        if (last != null && last.logInfo == logInfo && last.block == b) {
+            return last.element;
+        }
+        final LogFilterElement element = new LogFilterElement(logInfo, b, txIndex, tx, logIdx);
+        lastSubscriptionLog = new SubscriptionLog(logInfo, b, element);
+        return element;
+    }
+
+    @AllArgsConstructor
+    private static class SubscriptionLog {
+        final LogInfo logInfo;
+        final Block block;
+        final LogFilterElement element;
+    }
+
+    /**
+     * Subscribes consumer to logs of new blocks, matching given criteria. Block range of request is ignored.
+     * Consumer is called on event pipeline thread.
+     */
+    JsonLogFilter subscribeLogs(FilterRequest fr, Consumer<LogFilterElement> consumer) {
+        final JsonLogFilter filter = withCriteria(new SubscriptionLogFilter(consumer), fr);
+        filter.onNewBlock = true;
+        logFilterDispatcher.add(filter);
+        return filter;
+    }
+
+    void unsubscribeLogs(JsonLogFilter filter) {
+        logFilterDispatcher.remove(filter);
+    }
+
     @Override
     public String eth_newFilter(FilterRequest fr) throws Exception {
-        LogFilter logFilter = new LogFilter();
+        // byte limit applies to historical logs too, as they are buffered until polled
+        JsonLogFilter filter = createLogFilter(fr, harmonyProperties.filterMaxBytes());
+        int id = installFilter(filter);
+        logFilterDispatcher.add(filter);
+
+        return toJsonHex(id);
+    }
+
+    /**
+     * Creates log filter with historical data, which is not installed yet.
+     *
+     * @param maxBufferedBytes - limit of events size, which is applied while historical logs are added
+     */
+    private JsonLogFilter createLogFilter(FilterRequest fr, long maxBufferedBytes) throws Exception {
+        JsonLogFilter filter = withCriteria(new JsonLogFilter(new LogFilter()), fr);
+        filter.maxBufferedBytes = maxBufferedBytes;
+
+        Block blockFrom;
+        Block blockTo;
+        // EIP-234
+        if (fr.blockHash != null) {
+            blockFrom = getBlockByJSonHash(fr.blockHash);
+            blockTo = blockFrom;
+        } else {
+            blockFrom = fr.fromBlock == null ? null : getByJsonBlockId(fr.fromBlock);
+            blockTo = fr.toBlock == null ? null : getByJsonBlockId(fr.toBlock);
+        }
+
+        if (blockFrom != null) {
+            // need to add historical data
+            blockTo = blockTo == null ? blockchain.getBestBlock() : blockTo;
+            addHistoricalLogs(filter, blockFrom.getNumber(), blockTo.getNumber());
+        }
+
+        // the following is not precisely documented
+        if ("pending".equalsIgnoreCase(fr.fromBlock) || "pending".equalsIgnoreCase(fr.toBlock)) {
+            filter.onPendingTx = true;
+        } else if (fr.toBlock == null || "latest".equalsIgnoreCase(fr.fromBlock) || "latest".equalsIgnoreCase(fr.toBlock)) {
+            filter.onNewBlock = true;
+        }
+
+        return filter;
+    }
+
+    /**
+     * Applies address and topics criteria of request to filter.
+     */
+    private <T extends JsonLogFilter> T withCriteria(T filter, FilterRequest fr) {
+        LogFilter logFilter = filter.logFilter;
 
         if (fr.address instanceof String) {
+            filter.addresses.add(hexToByteArray((String) fr.address));
             logFilter.withContractAddress(hexToByteArray((String) fr.address));
         } else if (fr.address instanceof String[]) {
             List<byte[]> addr = new ArrayList<>();
             for (String s : ((String[]) fr.address)) {
                 addr.add(hexToByteArray(s));
             }
+            filter.addresses.addAll(addr);
             logFilter.withContractAddress(addr.toArray(new byte[0][]));
         }
 
         if (fr.topics != null) {
             for (Object topic : fr.topics) {
                 if (topic == null) {
+                    filter.topics.add(null);
                     logFilter.withTopic((byte[][]) null);
                 } else if (topic instanceof String) {
-                    logFilter.withTopic(DataWord.of(hexToByteArray((String) topic)).getData());
+                    byte[] t = DataWord.of(hexToByteArray((String) topic)).getData();
+                    filter.topics.add(new byte[][] {t});
+                    logFilter.withTopic(t);
                 } else if (topic instanceof String[]) {
                     List<byte[]> t = new ArrayList<>();
                     for (String s : ((String[]) topic)) {
                         t.add(DataWord.of(hexToByteArray(s)).getData());
                     }
+                    filter.topics.add(t.toArray(new byte[0][]));
                     logFilter.withTopic(t.toArray(new byte[0][]));
                 }
             }
         }
+        return filter;
+    }
 
-        JsonLogFilter filter = new JsonLogFilter(logFilter);
-        int id = filterCounter.getAndIncrement();
-        installedFilters.put(id, filter);
+    /**
+     * Feeds filter with logs of main chain blocks in range.
+     * Range is resolved with log index first, then with bloom bits index,
+     * remaining blocks are scanned in parallel chunks.
+     */
+    private void addHistoricalLogs(JsonLogFilter filter, long fromBlock, long toBlock) throws Exception {
+        long scanFrom = fromBlock;
+
+        final long logIndexTo = Math.min(toBlock, logIndex.getIndexedBlock());
+        if (logIndex.isEnabled() && logIndexTo >= scanFrom) {
+            final List<LogIndex.LogPosition> positions = logIndex.find(filter.addresses, filter.topics, scanFrom, logIndexTo);
+            if (positions != null) {
+                filter.onIndexedLogs(positions);
+                scanFrom = logIndexTo + 1;
+            }
+        }
+
+        final long bloomBitsTo = Math.min(toBlock, bloomBitsIndex.getIndexedBlock());
+        if (bloomBitsIndex.isEnabled() && bloomBitsTo >= scanFrom) {
+            final List<Long> candidates = bloomBitsIndex.findCandidates(filter.addresses, filter.topics, scanFrom, bloomBitsTo);
+            if (candidates != null) {
+                final int chunkSize = harmonyProperties.logScanChunkSize();
+                final List<LongStream> chunks = new ArrayList<>();
+                for (int i = 0; i < candidates.size(); i += chunkSize) {
+                    chunks.add(candidates.subList(i, Math.min(candidates.size(), i + chunkSize))
+                            .stream().mapToLong(Long::longValue));
+                }
+                scanChunks(filter, chunks);
+                scanFrom = bloomBitsTo + 1;
+            }
+        }
+
+        final int chunkSize = harmonyProperties.logScanChunkSize();
+        final List<LongStream> chunks = new ArrayList<>();
+        for (long chunkFrom = scanFrom; chunkFrom <= toBlock; chunkFrom += chunkSize) {
+            chunks.add(LongStream.rangeClosed(chunkFrom, Math.min(toBlock, chunkFrom + chunkSize - 1)));
+        }
+        scanChunks(filter, chunks);
+    }
+
+    /**
+     * Scans chunks of blocks on log scan pool and passes matched logs to filter in canonical (block, tx, log) order.
+     * No more than pool parallelism chunks are in progress at once, so only their matches are kept in memory.
+     * Chunks left in progress, when filter is complete or request fails, stop at next block.
+     */
+    void scanChunks(JsonLogFilter filter, List<LongStream> chunks) throws Exception {
+        if (chunks.size() <= 1 || logScanPool.getParallelism() <= 1) {
+            for (LongStream chunk : chunks) {
+                chunk.filter(blockNum -> !filter.isComplete())
+                        .forEach(blockNum -> filter.onBlock(blockchain.getBlockByNumber(blockNum)));
+            }
+            return;
+        }
+
+        // filter blooms are built lazily, build them before sharing filter between threads
+        filter.logFilter.matchBloom(new Bloom());
+
+        final Iterator<LongStream> pending = chunks.iterator();
+        final Deque<ForkJoinTask<List<LogMatch>>> running = new ArrayDeque<>();
+        // cancel(true) doesn't interrupt running ForkJoin tasks, so they check this flag
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        try {
+            while (running.size() < logScanPool.getParallelism() && pending.hasNext()) {
+                running.add(logScanPool.submit(scanChunkTask(filter.logFilter, pending.next(), cancelled)));
+            }
+            while (!running.isEmpty() && !filter.isComplete()) {
+                final List<LogMatch> matches = running.poll().get();
+                if (pending.hasNext()) {
+                    running.add(logScanPool.submit(scanChunkTask(filter.logFilter, pending.next(), cancelled)));
+                }
+                for (LogMatch match : matches) {
+                    if (filter.isComplete()) break;
+                    filter.onLogMatch(match.logInfo, match.block, match.txIndex, match.tx, match.logIdx);
+                }
+            }
+        } finally {
+            cancelled.set(true);
+            running.forEach(task -> task.cancel(true));
+        }
+    }
+
+    private Callable<List<LogMatch>> scanChunkTask(LogFilter logFilter, LongStream chunk, AtomicBoolean cancelled) {
+        return () -> {
+            final ChunkLogFilter chunkFilter = new ChunkLogFilter(logFilter);
+            chunk.filter(blockNum -> !cancelled.get())
+                    .forEach(blockNum -> chunkFilter.onBlock(blockchain.getBlockByNumber(blockNum)));
+            return chunkFilter.matches;
+        };
+    }
+
+    /**
+     * Loads historical logs matching request and passes them to consumer one by one,
+     * without keeping them in memory.
+     *
+     * @param resumeFrom - position of first log to return, logs before it are skipped. Null for range start
+     * @param limit - max number of logs to pass
+     * @return position of first log which was not passed due to limit or null if all logs were passed
+     */
+    LogIndex.LogPosition getLogs(FilterRequest fr, LogIndex.LogPosition resumeFrom, int limit,
+                                 Consumer<LogFilterElement> consumer) throws Exception {
+        final PagedLogFilter filter = withCriteria(new PagedLogFilter(resumeFrom, limit, consumer), fr);
 
         Block blockFrom;
         Block blockTo;
@@ -1064,46 +1747,131 @@ public class EthJsonRpcImpl implements JsonRpc {
             blockFrom = getBlockByJSonHash(fr.blockHash);
             blockTo = blockFrom;
         } else {
-            blockFrom = fr.fromBlock == null ? null : getByJsonBlockId(fr.fromBlock);
-            blockTo = fr.toBlock == null ? null : getByJsonBlockId(fr.toBlock);
+            blockFrom = fr.fromBlock == null ? blockchain.getBestBlock() : getByJsonBlockId(fr.fromBlock);
+            // pending block logs are not stored, range ends at best block
+            blockTo = fr.toBlock == null || "pending".equalsIgnoreCase(fr.toBlock)
+                    ? blockchain.getBestBlock() : getByJsonBlockId(fr.toBlock);
+        }
+        if (blockFrom == null || blockTo == null) {
+            return null;
         }
 
-        if (blockFrom != null) {
-            // need to add historical data
-            blockTo = blockTo == null ? blockchain.getBestBlock() : blockTo;
-            for (long blockNum = blockFrom.getNumber(); blockNum <= blockTo.getNumber(); blockNum++) {
-                filter.onBlock(blockchain.getBlockByNumber(blockNum));
-            }
+        final long fromBlock = resumeFrom == null
+                ? blockFrom.getNumber()
+                : Math.max(blockFrom.getNumber(), resumeFrom.getBlockNumber());
+        addHistoricalLogs(filter, fromBlock, blockTo.getNumber());
+
+        return filter.next;
+    }
+
+    @Override
+    public LogsPage ethj_getLogs(FilterRequest fr, String cursor, String limit) throws Exception {
+        final int pageSize = parseLogsLimit(limit);
+        final List<LogFilterElement> logs = new ArrayList<>();
+
+        final LogIndex.LogPosition next = getLogs(fr, parseLogCursor(cursor), pageSize, logs::add);
+
+        return new LogsPage(logs.toArray(), next == null ? null : toLogCursor(next));
+    }
+
+    /**
+     * Empty page would return the same cursor, so client paging loop would never end
+     */
+    static int parseLogsLimit(String limit) {
+        if (limit == null) {
+            return MAX_LOGS_PAGE;
         }
+        final BigInteger value = hexToBigInteger(limit);
+        if (value.signum() <= 0) {
+            throw new RuntimeException("Logs limit should be positive: " + limit);
+        }
+        return value.min(BigInteger.valueOf(MAX_LOGS_PAGE)).intValue();
+    }
 
-        // the following is not precisely documented
-        if ("pending".equalsIgnoreCase(fr.fromBlock) || "pending".equalsIgnoreCase(fr.toBlock)) {
-            filter.onPendingTx = true;
-        } else if (fr.toBlock == null || "latest".equalsIgnoreCase(fr.fromBlock) || "latest".equalsIgnoreCase(fr.toBlock)) {
-            filter.onNewBlock = true;
+    static LogIndex.LogPosition parseLogCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
         }
+        final ByteBuffer buffer = ByteBuffer.wrap(hexToByteArray(cursor));
+        return new LogIndex.LogPosition(buffer.getLong(), buffer.getInt(), buffer.getInt());
+    }
 
-        return toJsonHex(id);
+    static String toLogCursor(LogIndex.LogPosition position) {
+        return toJsonHex(LogIndex.encodePosting(position.getBlockNumber(), position.getTxIndex(), position.getLogIndex()));
     }
 
     @Override
     public String eth_newBlockFilter() {
-        int id = filterCounter.getAndIncrement();
-        installedFilters.put(id, new NewBlockFilter());
+        int id = installFilter(new NewBlockFilter());
         return toJsonHex(id);
     }
 
     @Override
     public String eth_newPendingTransactionFilter() {
-        int id = filterCounter.getAndIncrement();
-        installedFilters.put(id, new PendingTransactionFilter());
+        int id = installFilter(new PendingTransactionFilter());
         return toJsonHex(id);
     }
 
+    private int installFilter(Filter filter) {
+        filter.maxBufferedBytes = harmonyProperties.filterMaxBytes();
+        int id = filterCounter.getAndIncrement();
+        installedFilters.put(id, filter);
+        return id;
+    }
+
     @Override
     public boolean eth_uninstallFilter(String id) {
         if (id == null) return false;
-        return installedFilters.remove(hexToBigInteger(id).intValue()) != null;
+        return uninstallFilter(hexToBigInteger(id).intValue());
+    }
+
+    private boolean uninstallFilter(int id) {
+        final Filter filter = installedFilters.remove(id);
+        if (filter instanceof JsonLogFilter) {
+            logFilterDispatcher.remove((JsonLogFilter) filter);
+        }
+        return filter != null;
+    }
+
+    /**
+     * Uninstalls filters which were not polled during idle timeout.
+     * If events of remaining filters still take more than global limit,
+     * least recently polled filters are uninstalled.
+     */
+    @Scheduled(fixedRate = 10_000)
+    private void expireFilters() {
+        final Map<Integer, Filter> filters;
+        synchronized (installedFilters) {
+            filters = new HashMap<>(installedFilters);
+        }
+
+        final long idleTimeout = harmonyProperties.filterIdleTimeoutSec() * 1000L;
+        final long now = System.currentTimeMillis();
+        long totalBytes = 0;
+        for (Map.Entry<Integer, Filter> entry : filters.entrySet()) {
+            if (now - entry.getValue().getLastPollTime() > idleTimeout) {
+                log.debug("Uninstalling filter {} which was not polled for {} ms",
+                        toJsonHex(entry.getKey()), now - entry.getValue().getLastPollTime());
+                uninstallFilter(entry.getKey());
+            } else {
+                totalBytes += entry.getValue().getBufferedBytes();
+            }
+        }
+
+        final long maxTotalBytes = harmonyProperties.filtersMaxTotalBytes();
+        if (totalBytes > maxTotalBytes) {
+            final List<Map.Entry<Integer, Filter>> byLastPoll = filters.entrySet().stream()
+                    .filter(entry -> installedFilters.containsKey(entry.getKey()))
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().getLastPollTime()))
+                    .collect(Collectors.toList());
+            for (Map.Entry<Integer, Filter> entry : byLastPoll) {
+                if (totalBytes <= maxTotalBytes) break;
+                log.warn("Uninstalling filter {} as filters events take {} bytes, which is over limit",
+                        toJsonHex(entry.getKey()), totalBytes);
+                totalBytes -= entry.getValue().getBufferedBytes();
+                uninstallFilter(entry.getKey());
+            }
+        }
     }
 
     @Override
@@ -1123,10 +1891,15 @@ public class EthJsonRpcImpl implements JsonRpc {
     @Override
     public Object[] eth_getLogs(FilterRequest filterRequest) throws Exception {
         log.debug("eth_getLogs ...");
-        String id = eth_newFilter(filterRequest);
-        Object[] ret = eth_getFilterChanges(id);
-        eth_uninstallFilter(id);
-        return ret;
+        final int maxResults = harmonyProperties.getLogsMaxResults();
+        final List<LogFilterElement> logs = new ArrayList<>();
+
+        // all logs are returned at once, so result over limit is an error rather than silently truncated
+        if (getLogs(filterRequest, null, maxResults, logs::add) != null) {
+            throw new RuntimeException("Query returned more than " + maxResults + " logs, use ethj_getLogs or "
+                    + AppConst.JSON_RPC_LOGS_PATH + " to page through them");
+        }
+        return logs.toArray();
     }
 
     @Override
@@ -1393,6 +2166,26 @@ public class EthJsonRpcImpl implements JsonRpc {
                                 .orElse(null)))
                 ).collect(Collectors.toList());
     }
+
+    @Override
+    public List<Map<String, ?>> admin_listFilters() {
+        final Map<Integer, Filter> filters;
+        synchronized (installedFilters) {
+            filters = new TreeMap<>(installedFilters);
+        }
+        final long now = System.currentTimeMillis();
+        return filters.entrySet().stream().map(e ->
+                ImmutableMap.<String, Object>builder()
+                        .put("id", toJsonHex(e.getKey()))
+                        .put("type", e.getValue().getClass().getSimpleName())
+                        .put("events", e.getValue().getEventCount())
+                        .put("bufferedBytes", e.getValue().getBufferedBytes())
+                        .put("overflow", e.getValue().getOverflowCount())
+                        .put("lastPollTime", e.getValue().getLastPollTime())
+                        .put("idleMs", now - e.getValue().getLastPollTime())
+                        .build()
+        ).collect(Collectors.toList());
+    }
 //
 //    @Override
 //    public String admin_datadir() {
@@ -1521,6 +2314,68 @@ public class EthJsonRpcImpl implements JsonRpc {
         return toJsonHex(account.getAddress());
     }
 
+    @Override
+    public ImportKeysResult ethj_importKeys(String path, String password) throws Exception {
+        Objects.requireNonNull(path, "path is required");
+
+        final KeystoreBulkTool.ImportResult result = getKeystoreBulkTool()
+                .importKeys(resolveImportPath(path), password, message -> log.info(message));
+        if (!result.getImported().isEmpty()) {
+            walletService.addKeystoreAddresses(result.getImported());
+        }
+        return new ImportKeysResult(
+                result.getImported().stream().map(a -> "0x" + a).toArray(String[]::new),
+                toJsonHex(result.getSkipped()),
+                result.getErrors().toArray(new String[0]));
+    }
+
+    @Override
+    public String ethj_exportKeys(String path) throws Exception {
+        Objects.requireNonNull(path, "path is required");
+
+        return toJsonHex(getKeystoreBulkTool().exportKeys(resolveExportPath(path), message -> log.info(message)));
+    }
+
+    /**
+     * @return path inside configured import directory
+     */
+    Path resolveImportPath(String path) {
+        final String importDir = harmonyProperties.keystoreImportDir();
+        if (importDir == null || importDir.isEmpty()) {
+            throw new RuntimeException("Import of keys is disabled, set modules.keystore.importDir to enable it");
+        }
+        final Path dir = Paths.get(importDir).toAbsolutePath().normalize();
+        final Path source = dir.resolve(path).normalize();
+        if (!source.startsWith(dir)) {
+            throw new RuntimeException("Import path should be inside import directory: " + path);
+        }
+        return source;
+    }
+
+    /**
+     * @return path inside configured export directory
+     */
+    Path resolveExportPath(String path) throws IOException {
+        final String exportDir = harmonyProperties.keystoreExportDir();
+        if (exportDir == null || exportDir.isEmpty()) {
+            throw new RuntimeException("Export of keys is disabled, set modules.keystore.exportDir to enable it");
+        }
+        final Path dir = Paths.get(exportDir).toAbsolutePath().normalize();
+        final Path target = dir.resolve(path).normalize();
+        if (!target.startsWith(dir) || target.equals(dir)) {
+            throw new RuntimeException("Export path should be inside export directory: " + path);
+        }
+        Files.createDirectories(target.getParent());
+        return target;
+    }
+
+    private KeystoreBulkTool getKeystoreBulkTool() {
+        if (!(keystore instanceof FileSystemKeystore)) {
+            throw new RuntimeException("Bulk import and export require file system keystore");
+        }
+        return new KeystoreBulkTool((FileSystemKeystore) keystore, harmonyProperties.kdfThreads());
+    }
+
     @Override
     public boolean personal_unlockAccount(String address, String password, String duration) {
         log.info("personal_unlockAccount(" + address + ", ...)");
@@ -1531,10 +2386,7 @@ public class EthJsonRpcImpl implements JsonRpc {
         final ECKey key = keystore.loadStoredKey(jsonHexToHex(address).toLowerCase(), password);
         if (key != null) {
             log.info("Found key address is " + Hex.toHexString(key.getAddress()));
-            final Account account = new Account();
-            account.init(key);
-            log.info("Found account address is " + Hex.toHexString(account.getAddress()));
-            unlockedAccounts.put(Hex.toHexString(account.getAddress()).toLowerCase(), account);
+            signingService.unlock(key);
             return true;
         } else {
             // we can return false or send description message with exception
@@ -1547,7 +2399,8 @@ public class EthJsonRpcImpl implements JsonRpc {
     public boolean personal_lockAccount(String address) {
         Objects.requireNonNull(address, "address is required");
 
-        unlockedAccounts.remove(address.toLowerCase());
+        signingService.lock(address);
+        keySessionCache.evict(address);
         return true;
     }
 
@@ -1558,11 +2411,16 @@ public class EthJsonRpcImpl implements JsonRpc {
 
     @Override
     public String personal_signAndSendTransaction(CallArguments tx, String password) {
-        final ECKey key = keystore.loadStoredKey(jsonHexToHex(tx.from).toLowerCase(), password);
+        final String address = jsonHexToHex(tx.from).toLowerCase();
+        ECKey key = keySessionCache.get(address, password);
+        if (key == null) {
+            key = keystore.loadStoredKey(address, password);
+            if (key != null) {
+                keySessionCache.put(address, password, key);
+            }
+        }
         if (key != null) {
-            final Account account = new Account();
-            account.init(key);
-            return sendTransaction(tx, account);
+            return sendTransaction(tx, signingService.getOrCreate(key));
         } else {
             // we can return false or send description message with exception
             // prefer exception for now
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Searches for the lowest gas limit, with which call succeeds.
+ *
+ * Call is executed with the cap first, its gas used is a lower bound (limit below it always fails),
+ * and usually is enough itself. Otherwise the range is narrowed by rounds of probes executed concurrently
+ * at evenly spaced limits, round ends at the lowest successful probe.
+ * When time budget is exceeded, best known successful limit is returned.
+ *
+ * Probes rejected by saturated pool are skipped, when no probe of round is accepted, single probe is executed
+ * by caller if time budget allows. Probes which are not needed anymore are cancelled with interruption.
+ */
+@Slf4j(topic = "jsonrpc")
+class GasEstimator {
+
+    /**
+     * Executes call with given gas limit
+     */
+    interface Probe {
+
+        /**
+         * @return gas used by successful call or -1 when call failed
+         */
+        long execute(long gasLimit) throws Exception;
+    }
+
+    private final ExecutorService pool;
+
+    private final int probes;
+
+    private final long timeBudgetMs;
+
+    GasEstimator(ExecutorService pool, int probes, long timeBudgetMs) {
+        this.pool = pool;
+        this.probes = Math.max(1, probes);
+        this.timeBudgetMs = timeBudgetMs;
+    }
+
+    long estimate(long cap, Probe probe) throws Exception {
+        final long deadline = System.currentTimeMillis() + timeBudgetMs;
+
+        final long gasUsed = probe.execute(cap);
+        if (gasUsed < 0) {
+            throw new RuntimeException("Gas required exceeds allowance (" + cap + ") or always failing transaction");
+        }
+        if (gasUsed >= cap || probe.execute(gasUsed) >= 0) {
+            return gasUsed;
+        }
+
+        // lo always fails, hi always succeeds
+        long lo = gasUsed;
+        long hi = cap;
+        while (hi - lo > 1) {
+            final List<Long> limits = new ArrayList<>();
+            final long step = Math.max(1, (hi - lo) / (probes + 1));
+            for (long limit = lo + step; limit < hi && limits.size() < probes; limit += step) {
+                limits.add(limit);
+            }
+
+            // results are for prefix of limits
+            final List<Future<Long>> results = new ArrayList<>();
+            for (long limit : limits) {
+                try {
+                    results.add(pool.submit(() -> probe.execute(limit)));
+                } catch (RejectedExecutionException e) {
+                    break;
+                }
+            }
+            if (results.isEmpty()) {
+                if (System.currentTimeMillis() >= deadline) {
+                    log.debug("Gas estimation exceeded time budget, returning {}, lower bound {}", hi, lo);
+                    return hi;
+                }
+                final long limit = limits.get(0);
+                final FutureTask<Long> inline = new FutureTask<>(() -> probe.execute(limit));
+                inline.run();
+                results.add(inline);
+            }
+
+            try {
+                int i = 0;
+                for (; i < results.size(); i++) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) throw new TimeoutException();
+
+                    if (results.get(i).get(remaining, TimeUnit.MILLISECONDS) >= 0) {
+                        hi = limits.get(i);
+                        break;
+                    }
+                    lo = limits.get(i);
+                }
+                // higher probes are not needed, when lower one succeeded
+                for (i++; i < results.size(); i++) {
+                    results.get(i).cancel(true);
+                }
+            } catch (TimeoutException e) {
+                results.forEach(f -> f.cancel(true));
+                log.debug("Gas estimation exceeded time budget, returning {}, lower bound {}", hi, lo);
+                return hi;
+            } catch (ExecutionException e) {
+                results.forEach(f -> f.cancel(true));
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        return hi;
+    }
+}
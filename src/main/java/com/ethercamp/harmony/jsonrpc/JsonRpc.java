@@ -219,6 +219,88 @@ public interface JsonRpc {
         }
     }
 
+    @AllArgsConstructor
+    class LogsPage {
+        public Object[] logs;
+        /**
+         * Position to continue from with next call, null when range is exhausted
+         */
+        public String cursor;
+
+        @Override
+        public String toString() {
+            return "LogsPage{" +
+                    "logs=" + logs.length +
+                    ", cursor='" + cursor + '\'' +
+                    '}';
+        }
+    }
+
+    @AllArgsConstructor
+    class CallResult {
+        /**
+         * DATA - value returned by call, revert data when call failed, null when call was not executed
+         */
+        public String result;
+        /**
+         * Error of failed call, null when call succeeded
+         */
+        public String error;
+
+        @Override
+        public String toString() {
+            return "CallResult{" +
+                    "result='" + result + '\'' +
+                    ", error='" + error + '\'' +
+                    '}';
+        }
+    }
+
+    @AllArgsConstructor
+    class SendResult {
+        /**
+         * DATA, 32 Bytes - hash of submitted transaction, null when transaction was not submitted
+         */
+        public String hash;
+        /**
+         * Error of transaction, which was not submitted
+         */
+        public String error;
+
+        @Override
+        public String toString() {
+            return "SendResult{" +
+                    "hash='" + hash + '\'' +
+                    ", error='" + error + '\'' +
+                    '}';
+        }
+    }
+
+    @AllArgsConstructor
+    class ImportKeysResult {
+        /**
+         * Addresses of imported keys
+         */
+        public String[] imported;
+        /**
+         * QUANTITY - number of keys, which were already in keystore
+         */
+        public String skipped;
+        /**
+         * Errors of keys, which were not imported
+         */
+        public String[] errors;
+
+        @Override
+        public String toString() {
+            return "ImportKeysResult{" +
+                    "imported=" + imported.length +
+                    ", skipped='" + skipped + '\'' +
+                    ", errors=" + errors.length +
+                    '}';
+        }
+    }
+
     String web3_clientVersion();
     String web3_sha3(String data) throws Exception;
     String net_version();
@@ -247,8 +329,22 @@ public interface JsonRpc {
     String eth_sign(String addr, String data) throws Exception;
     String eth_sendTransaction(CallArguments transactionArgs) throws Exception;
     String eth_sendRawTransaction(String rawData) throws Exception;
+
+    /**
+     * Signs and submits transactions of unlocked accounts in order.
+     * @return results in order of transactions, failure of one transaction doesn't affect others
+     */
+    SendResult[] ethj_sendTransactionBatch(CallArguments[] txs);
+
     String eth_call(CallArguments args, String bnOrId) throws Exception;
     String eth_estimateGas(CallArguments args) throws Exception;
+
+    /**
+     * Executes calls against state of the same block, calls don't see effects of each other.
+     * @return results in order of calls, failure of one call doesn't affect others
+     */
+    CallResult[] ethj_multiCall(CallArguments[] calls, String bnOrId) throws Exception;
+
     BlockResult eth_getBlockByHash(String blockHash, Boolean fullTransactionObjects) throws Exception;
     BlockResult eth_getBlockByNumber(String bnOrId, Boolean fullTransactionObjects) throws Exception;
     TransactionResultDTO eth_getTransactionByHash(String transactionHash) throws Exception;
@@ -281,8 +377,18 @@ public interface JsonRpc {
 
     Object[] eth_getFilterLogs(String id);
 
+    /**
+     * Returns all matching logs at once, request matching more than modules.rpc.getLogs.maxResults logs fails.
+     */
     Object[] eth_getLogs(FilterRequest fr) throws Exception;
 
+    /**
+     * Paginated version of eth_getLogs without limit on total number of logs.
+     * @param cursor - value returned by previous call or null for first page
+     * @param limit - max number of logs in page (hex), null for default
+     */
+    LogsPage ethj_getLogs(FilterRequest fr, String cursor, String limit) throws Exception;
+
     List<Object> eth_getWork();
     boolean eth_submitWork(String nonce, String header, String digest) throws Exception;
     boolean eth_submitHashrate(String hashrate, String id);
@@ -319,6 +425,11 @@ public interface JsonRpc {
 //    String admin_httpGet();
     Map<String, ?> admin_nodeInfo() throws Exception;
     List<Map<String, ?>> admin_peers();
+
+    /**
+     * Lists installed filters with size of buffered events and last poll time
+     */
+    List<Map<String, ?>> admin_listFilters();
 //    String admin_datadir();
 //    String net_addPeer();
 
@@ -350,4 +461,20 @@ public interface JsonRpc {
     String[] personal_listAccounts();
     String[] ethj_listAvailableMethods();
     String personal_signAndSendTransaction(CallArguments tx, String password);
+
+    /**
+     * Imports keys from directory or zip archive on server, wallet is updated once at the end.
+     * @param path - directory or zip with keystore files or files with raw hex keys, one per line,
+     *             relative to modules.keystore.importDir, import is disabled when it is not configured
+     * @param password - password for raw keys, could be null when there are keystore files only
+     */
+    ImportKeysResult ethj_importKeys(String path, String password) throws Exception;
+
+    /**
+     * Copies all keystore files into directory or zip archive (when path ends with .zip) on server.
+     * Existing files are never overwritten.
+     * @param path - relative to modules.keystore.exportDir, export is disabled when it is not configured
+     * @return QUANTITY - number of exported keys
+     */
+    String ethj_exportKeys(String path) throws Exception;
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.config.ModuleConfig;
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import com.ethercamp.harmony.service.JsonRpcUsageService;
+import com.ethercamp.harmony.util.exception.Web3jSafeAnnotationsErrorResolver;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.JsonRpcBasicServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executes JSON-RPC batch requests, read only requests of batch are executed in parallel.
+ *
+ * Requests are executed by separate jsonrpc4j server with the same configuration as exported one.
+ * Other than read only requests are executed alone, after all preceding requests are done,
+ * so batch still behaves as executed in order. Responses are written in order of requests.
+ *
+ * Each batch executes at most {@link HarmonyProperties#rpcBatchConcurrency()} requests at once,
+ * on a pool shared by all batches. When pool is saturated, requests are executed by the calling thread.
+ * Failure of one request is reported as error response of that request, other requests are not affected.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class JsonRpcBatchExecutor implements PublicMetrics {
+
+    private static final int INVALID_REQUEST = -32600;
+    private static final int INTERNAL_ERROR = -32603;
+    private static final int PARSE_ERROR = -32700;
+
+    /**
+     * Methods which only read blockchain and node state
+     */
+    private static final Set<String> READ_ONLY_METHODS = new HashSet<>(Arrays.asList(
+            "web3_clientVersion", "web3_sha3", "net_version", "net_peerCount", "net_listening",
+            "eth_protocolVersion", "eth_syncing", "eth_coinbase", "eth_mining", "eth_hashrate", "eth_gasPrice",
+            "eth_accounts", "eth_blockNumber", "eth_getBalance", "eth_getLastBalance", "eth_getStorageAt",
+            "eth_getTransactionCount", "eth_getBlockTransactionCountByHash", "eth_getBlockTransactionCountByNumber",
+            "eth_getUncleCountByBlockHash", "eth_getUncleCountByBlockNumber", "eth_getCode", "eth_call",
+            "eth_estimateGas", "ethj_multiCall", "eth_getBlockByHash", "eth_getBlockByNumber", "eth_getTransactionByHash",
+            "eth_getTransactionByBlockHashAndIndex", "eth_getTransactionByBlockNumberAndIndex",
+            "eth_getTransactionReceipt", "ethj_getTransactionReceipt", "eth_getUncleByBlockHashAndIndex",
+            "eth_getUncleByBlockNumberAndIndex", "eth_getLogs", "ethj_getLogs", "eth_pendingTransactions"));
+
+    @Autowired
+    JsonRpc jsonRpc;
+
+    @Autowired
+    JsonRpcUsageService jsonRpcUsageService;
+
+    @Autowired
+    HarmonyProperties properties;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private JsonRpcBasicServer server;
+
+    private ExecutorService pool;
+
+    private int maxSize;
+
+    private int concurrency;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        server = new JsonRpcBasicServer(mapper, jsonRpc, JsonRpc.class);
+        server.setInvocationListener(jsonRpcUsageService);
+        if ("true".equalsIgnoreCase(System.getProperty(ModuleConfig.ERROR_RESOLVER_KEY, ""))) {
+            server.setErrorResolver(Web3jSafeAnnotationsErrorResolver.INSTANCE);
+        }
+
+        maxSize = properties.rpcBatchMaxSize();
+        concurrency = Math.max(1, properties.rpcBatchConcurrency());
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final int threads = Math.max(1, properties.rpcBatchThreads());
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * 4),
+                r -> {
+                    final Thread thread = new Thread(r, "rpc-batch-" + threadCounter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Reads batch request from input and writes responses to output.
+     * Nothing is written when batch contains only notifications.
+     */
+    public void execute(InputStream input, OutputStream output) throws IOException {
+        final JsonNode batch;
+        try {
+            batch = mapper.readTree(input);
+        } catch (JsonProcessingException e) {
+            writeError(output, PARSE_ERROR, "Parse error");
+            return;
+        }
+        execute(batch, output);
+    }
+
+    /**
+     * Executes parsed batch request and writes responses to output.
+     */
+    public void execute(JsonNode batch, OutputStream output) throws IOException {
+        if (batch == null || !batch.isArray() || batch.size() == 0) {
+            writeError(output, INVALID_REQUEST, "Invalid Request");
+            return;
+        }
+        if (batch.size() > maxSize) {
+            rejected.increment();
+            writeError(output, INVALID_REQUEST, "Batch size " + batch.size() + " exceeds limit of " + maxSize);
+            return;
+        }
+        batches.increment();
+        requests.add(batch.size());
+
+        final byte[][] responses = new byte[batch.size()][];
+        final Deque<Future<?>> inFlight = new ArrayDeque<>();
+        for (int i = 0; i < batch.size(); i++) {
+            final JsonNode request = batch.get(i);
+            final int idx = i;
+            if (!isReadOnly(request)) {
+                awaitAll(inFlight);
+                responses[idx] = handleElement(request);
+                continue;
+            }
+            if (inFlight.size() >= concurrency) {
+                await(inFlight.poll());
+            }
+            inFlight.add(pool.submit(() -> {
+                responses[idx] = handleElement(request);
+                return null;
+            }));
+        }
+        awaitAll(inFlight);
+
+        boolean first = true;
+        for (byte[] response : responses) {
+            // notifications have no response
+            if (response.length == 0) continue;
+            output.write(first ? '[' : ',');
+            output.write(response);
+            first = false;
+        }
+        if (!first) {
+            output.write(']');
+        }
+    }
+
+    private static boolean isReadOnly(JsonNode request) {
+        return READ_ONLY_METHODS.contains(request.path("method").asText());
+    }
+
+    /**
+     * Executes single request of batch, failure is turned into error response.
+     *
+     * @return response or empty array for notification
+     */
+    private byte[] handleElement(JsonNode request) throws JsonProcessingException {
+        if (!request.isObject()) {
+            return errorResponse(null, INVALID_REQUEST, "Invalid Request");
+        }
+        try {
+            return handle(request);
+        } catch (Exception e) {
+            log.warn("Problem executing batch request " + request.path("method").asText(), e);
+            // notifications have no response even on failure
+            if (!request.has("id")) {
+                return new byte[0];
+            }
+            return errorResponse(request.get("id"), INTERNAL_ERROR, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Executes single request.
+     *
+     * @return response or empty array for notification
+     */
+    public byte[] handle(JsonNode request) throws IOException {
+        // request element is small, so it is serialized back for public server API
+        final ByteArrayOutputStream response = new ByteArrayOutputStream(256);
+        server.handleRequest(new ByteArrayInputStream(mapper.writeValueAsBytes(request)), response);
+        return response.toByteArray();
+    }
+
+    private void awaitAll(Deque<Future<?>> futures) throws IOException {
+        while (!futures.isEmpty()) {
+            await(futures.poll());
+        }
+    }
+
+    private void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while executing batch");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void writeError(OutputStream output, int code, String message) throws IOException {
+        output.write(errorResponse(null, code, message));
+    }
+
+    private byte[] errorResponse(JsonNode id, int code, String message) throws JsonProcessingException {
+        final ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        if (id == null) {
+            response.putNull("id");
+        } else {
+            response.set("id", id);
+        }
+        response.putObject("error")
+                .put("code", code)
+                .put("message", message);
+        return mapper.writeValueAsBytes(response);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("rpc.batch.count", batches.sum()),
+                new Metric<>("rpc.batch.requests", requests.sum()),
+                new Metric<>("rpc.batch.rejected", rejected.sum()));
+    }
+}
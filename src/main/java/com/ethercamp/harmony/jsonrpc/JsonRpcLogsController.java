@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import com.ethercamp.harmony.util.AppConst;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Serves ethj_getLogs with response streamed to client.
+ * Every found log is written to output right away, so memory use doesn't depend on result size.
+ *
+ * Request is regular JSON-RPC envelope with params [filter, cursor, limit],
+ * where cursor and limit are optional. Response result has same shape as ethj_getLogs result.
+ *
+ * If error happens after output has started, result is closed and "error" field is appended,
+ * client should treat such response as failed.
+ */
+@Slf4j(topic = "jsonrpc")
+@RestController
+@Conditional(RpcEnabledCondition.class)
+public class JsonRpcLogsController {
+
+    private static final int ERROR_CODE = -32000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    EthJsonRpcImpl jsonRpc;
+
+    @RequestMapping(value = AppConst.JSON_RPC_LOGS_PATH, method = RequestMethod.POST)
+    public void getLogs(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        final JsonNode envelope = mapper.readTree(request.getInputStream());
+        final JsonNode params = envelope.path("params");
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator out = mapper.getFactory().createGenerator(response.getOutputStream())) {
+            out.writeStartObject();
+            out.writeStringField("jsonrpc", "2.0");
+            out.writeObjectField("id", envelope.get("id"));
+
+            try {
+                final JsonRpc.FilterRequest fr = mapper.treeToValue(params.path(0), JsonRpc.FilterRequest.class);
+                final String cursor = params.path(1).isTextual() ? params.get(1).asText() : null;
+                final int limit = EthJsonRpcImpl.parseLogsLimit(params.path(2).isTextual() ? params.get(2).asText() : null);
+
+                out.writeObjectFieldStart("result");
+                out.writeArrayFieldStart("logs");
+                final LogIndex.LogPosition next = jsonRpc.getLogs(fr, EthJsonRpcImpl.parseLogCursor(cursor), limit, element -> {
+                    try {
+                        out.writeObject(element);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                out.writeEndArray();
+                out.writeStringField("cursor", next == null ? null : EthJsonRpcImpl.toLogCursor(next));
+                out.writeEndObject();
+            } catch (UncheckedIOException e) {
+                // client gone, nothing to report
+                throw e.getCause();
+            } catch (Exception e) {
+                log.warn("Problem streaming logs", e);
+                // close opened result structures, so client could parse error
+                while (!out.getOutputContext().inRoot() && !out.getOutputContext().getParent().inRoot()) {
+                    if (out.getOutputContext().inArray()) {
+                        out.writeEndArray();
+                    } else {
+                        out.writeEndObject();
+                    }
+                }
+                out.writeObjectFieldStart("error");
+                out.writeNumberField("code", ERROR_CODE);
+                out.writeStringField("message", String.valueOf(e.getMessage()));
+                out.writeEndObject();
+            }
+            out.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import com.ethercamp.harmony.jsonrpc.EthJsonRpcImpl.JsonLogFilter;
+import com.ethercamp.harmony.service.EventPipelineService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.NativeWebSocketSession;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.ethercamp.harmony.jsonrpc.TypeConverter.toJsonHex;
+
+/**
+ * JSON-RPC over WebSocket with push subscriptions (eth_subscribe / eth_unsubscribe).
+ *
+ * Supported subscriptions are newHeads, logs and newPendingTransactions.
+ * Other requests are executed by {@link JsonRpcBatchExecutor}, same as HTTP batches.
+ *
+ * Notifications are rendered once per event and queued per connection, log shared by several
+ * subscriptions is rendered once too. Queues are flushed by fixed pool of sender threads,
+ * so event pipeline never waits for slow client.
+ * Connection is closed when its queue exceeds size limit or when sending takes longer than time limit,
+ * stalled sends are checked by watchdog, so client is closed even if no more messages come for it.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class JsonRpcWebSocketHandler extends TextWebSocketHandler implements PublicMetrics {
+
+    private static final int INVALID_PARAMS = -32602;
+    private static final int LIMIT_EXCEEDED = -32005;
+
+    private static final String NEW_HEADS = "newHeads";
+    private static final String LOGS = "logs";
+    private static final String NEW_PENDING_TRANSACTIONS = "newPendingTransactions";
+
+    /**
+     * Makes Tomcat fail blocked send after timeout, so sender thread is released
+     */
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    @Autowired
+    EthJsonRpcImpl jsonRpc;
+
+    @Autowired
+    JsonRpcBatchExecutor executor;
+
+    @Autowired
+    EventPipelineService eventPipeline;
+
+    @Autowired
+    HarmonyProperties properties;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+
+    private ExecutorService senders;
+    private ScheduledExecutorService watchdog;
+
+    private volatile RenderedLog lastRenderedLog;
+
+    private long maxBufferedBytes;
+    private long sendTimeoutMs;
+    private int maxSubscriptions;
+
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder slowConsumers = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        maxBufferedBytes = properties.webSocketMaxBufferedBytes();
+        sendTimeoutMs = properties.webSocketSendTimeoutSec() * 1000L;
+        maxSubscriptions = properties.webSocketMaxSubscriptions();
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(properties.webSocketSenderThreads(), r -> {
+            final Thread thread = new Thread(r, "rpc-ws-sender-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "rpc-ws-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long checkPeriodMs = Math.max(100, Math.min(sendTimeoutMs / 2, 1000));
+        watchdog.scheduleWithFixedDelay(this::closeStalled, checkPeriodMs, checkPeriodMs, TimeUnit.MILLISECONDS);
+
+        // listener is added after json-rpc one, so block cache and log subscriptions are served first
+        eventPipeline.addListener("jsonrpc", new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(Block block, List<TransactionReceipt> receipts) {
+                if (!hasSubscriptions(NEW_HEADS)) return;
+                try {
+                    final ObjectNode head = mapper.valueToTree(jsonRpc.eth_getBlockByHash(toJsonHex(block.getHash()), false));
+                    head.remove("transactions");
+                    head.remove("uncles");
+                    publish(NEW_HEADS, mapper.writeValueAsString(head));
+                } catch (Exception e) {
+                    log.error("Problem rendering new head", e);
+                }
+            }
+
+            @Override
+            public void onPendingTransactionsReceived(List<Transaction> transactions) {
+                if (!hasSubscriptions(NEW_PENDING_TRANSACTIONS)) return;
+                for (Transaction tx : transactions) {
+                    publish(NEW_PENDING_TRANSACTIONS, "\"" + toJsonHex(tx.getHash()) + "\"");
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        watchdog.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession) {
+            final javax.websocket.Session nativeSession =
+                    ((NativeWebSocketSession) session).getNativeSession(javax.websocket.Session.class);
+            if (nativeSession != null) {
+                nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeoutMs);
+            }
+        }
+        connections.put(session.getId(), new Connection(session));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        final Connection connection = connections.remove(session.getId());
+        if (connection != null) {
+            connection.unsubscribeAll();
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        final Connection connection = connections.get(session.getId());
+        if (connection == null) return;
+
+        final JsonNode request;
+        try {
+            request = mapper.readTree(message.getPayload());
+        } catch (JsonProcessingException e) {
+            connection.send(error(null, -32700, "Parse error"));
+            return;
+        }
+
+        if (request.isArray()) {
+            final ByteArrayOutputStream response = new ByteArrayOutputStream();
+            executor.execute(request, response);
+            if (response.size() > 0) {
+                connection.send(new String(response.toByteArray(), StandardCharsets.UTF_8));
+            }
+            return;
+        }
+
+        final String method = request.path("method").asText();
+        if ("eth_subscribe".equals(method)) {
+            connection.send(subscribe(connection, request));
+        } else if ("eth_unsubscribe".equals(method)) {
+            final boolean removed = connection.unsubscribe(request.path("params").path(0).asText());
+            connection.send(result(request.get("id"), removed ? "true" : "false"));
+        } else {
+            final byte[] response = executor.handle(request);
+            if (response.length > 0) {
+                connection.send(new String(response, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private String subscribe(Connection connection, JsonNode request) throws JsonProcessingException {
+        final JsonNode id = request.get("id");
+        final JsonNode params = request.path("params");
+        final String type = params.path(0).asText();
+
+        if (connection.subscriptions.size() >= maxSubscriptions) {
+            return error(id, LIMIT_EXCEEDED, "Max number of subscriptions " + maxSubscriptions + " reached");
+        }
+
+        final String subscriptionId = toJsonHex(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+        final Subscription subscription;
+        switch (type) {
+            case NEW_HEADS:
+            case NEW_PENDING_TRANSACTIONS:
+                subscription = new Subscription(subscriptionId, type, null);
+                break;
+            case LOGS:
+                final JsonRpc.FilterRequest fr = params.has(1)
+                        ? mapper.treeToValue(params.get(1), JsonRpc.FilterRequest.class)
+                        : new JsonRpc.FilterRequest();
+                final JsonLogFilter filter = jsonRpc.subscribeLogs(fr, element -> {
+                    try {
+                        connection.notify(subscriptionId, renderLog(element));
+                    } catch (JsonProcessingException e) {
+                        log.error("Problem rendering log", e);
+                    }
+                });
+                subscription = new Subscription(subscriptionId, type, filter);
+                break;
+            default:
+                return error(id, INVALID_PARAMS, "Unsupported subscription type " + type);
+        }
+        connection.subscriptions.put(subscriptionId, subscription);
+        return result(id, "\"" + subscriptionId + "\"");
+    }
+
+    /**
+     * Subscriptions matching same log get same element one after another, so last rendering is reused
+     */
+    private String renderLog(JsonRpc.LogFilterElement element) throws JsonProcessingException {
+        final RenderedLog last = lastRenderedLog;
+        if (last != null && last.element == element) {
+            return last.json;
+        }
+        final String json = mapper.writeValueAsString(element);
+        lastRenderedLog = new RenderedLog(element, json);
+        return json;
+    }
+
+    /**
+     * Closes connections, which current send takes longer than time limit
+     */
+    private void closeStalled() {
+        final long now = System.currentTimeMillis();
+        for (Connection connection : connections.values()) {
+            connection.closeIfStalled(now);
+        }
+    }
+
+    private boolean hasSubscriptions(String type) {
+        for (Connection connection : connections.values()) {
+            if (connection.hasSubscriptions(type)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends rendered result to all subscriptions of given type
+     */
+    private void publish(String type, String resultJson) {
+        for (Connection connection : connections.values()) {
+            for (Subscription subscription : connection.subscriptions.values()) {
+                if (subscription.type.equals(type)) {
+                    connection.notify(subscription.id, resultJson);
+                }
+            }
+        }
+    }
+
+    private String result(JsonNode id, String resultJson) throws JsonProcessingException {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + mapper.writeValueAsString(id) + ",\"result\":" + resultJson + "}";
+    }
+
+    private String error(JsonNode id, int code, String message) throws JsonProcessingException {
+        final ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id);
+        response.putObject("error")
+                .put("code", code)
+                .put("message", message);
+        return mapper.writeValueAsString(response);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        int subscriptions = 0;
+        for (Connection connection : connections.values()) {
+            subscriptions += connection.subscriptions.size();
+        }
+        return Arrays.asList(
+                new Metric<>("rpc.ws.connections", connections.size()),
+                new Metric<>("rpc.ws.subscriptions", subscriptions),
+                new Metric<>("rpc.ws.notifications", notifications.sum()),
+                new Metric<>("rpc.ws.slowConsumers", slowConsumers.sum()));
+    }
+
+    private static class Subscription {
+        final String id;
+        final String type;
+        final JsonLogFilter logFilter;
+
+        Subscription(String id, String type, JsonLogFilter logFilter) {
+            this.id = id;
+            this.type = type;
+            this.logFilter = logFilter;
+        }
+    }
+
+    private static class RenderedLog {
+        final JsonRpc.LogFilterElement element;
+        final String json;
+
+        RenderedLog(JsonRpc.LogFilterElement element, String json) {
+            this.element = element;
+            this.json = json;
+        }
+    }
+
+    private class Connection {
+        final WebSocketSession session;
+        final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+        private final Deque<TextMessage> queue = new ArrayDeque<>();
+        private long queuedBytes;
+        private boolean flushing;
+        private long flushStartTime;
+        private boolean closed;
+
+        Connection(WebSocketSession session) {
+            this.session = session;
+        }
+
+        boolean hasSubscriptions(String type) {
+            for (Subscription subscription : subscriptions.values()) {
+                if (subscription.type.equals(type)) return true;
+            }
+            return false;
+        }
+
+        boolean unsubscribe(String subscriptionId) {
+            final Subscription subscription = subscriptions.remove(subscriptionId);
+            if (subscription != null && subscription.logFilter != null) {
+                jsonRpc.unsubscribeLogs(subscription.logFilter);
+            }
+            return subscription != null;
+        }
+
+        void unsubscribeAll() {
+            new ArrayList<>(subscriptions.keySet()).forEach(this::unsubscribe);
+        }
+
+        void notify(String subscriptionId, String resultJson) {
+            notifications.increment();
+            send("{\"jsonrpc\":\"2.0\",\"method\":\"eth_subscription\",\"params\":{\"subscription\":\""
+                    + subscriptionId + "\",\"result\":" + resultJson + "}}");
+        }
+
+        void send(String json) {
+            final TextMessage message = new TextMessage(json);
+            synchronized (this) {
+                if (closed) return;
+                if (queuedBytes + message.getPayloadLength() > maxBufferedBytes
+                        || (flushing && System.currentTimeMillis() - flushStartTime > sendTimeoutMs)) {
+                    closeSlow();
+                    return;
+                }
+                queue.add(message);
+                queuedBytes += message.getPayloadLength();
+                if (flushing) return;
+                flushing = true;
+                flushStartTime = System.currentTimeMillis();
+            }
+            senders.execute(this::flush);
+        }
+
+        private void flush() {
+            while (true) {
+                final TextMessage message;
+                synchronized (this) {
+                    message = queue.poll();
+                    if (message == null || closed) {
+                        flushing = false;
+                        return;
+                    }
+                    queuedBytes -= message.getPayloadLength();
+                    flushStartTime = System.currentTimeMillis();
+                }
+                try {
+                    session.sendMessage(message);
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Problem sending to WebSocket client {}: {}", session.getRemoteAddress(), e.getMessage());
+                    synchronized (this) {
+                        closed = true;
+                        queue.clear();
+                        flushing = false;
+                    }
+                    closeSession(CloseStatus.SERVER_ERROR);
+                    return;
+                }
+            }
+        }
+
+        synchronized void closeIfStalled(long now) {
+            if (!closed && flushing && now - flushStartTime > sendTimeoutMs) {
+                closeSlow();
+            }
+        }
+
+        /**
+         * Called holding lock
+         */
+        private void closeSlow() {
+            slowConsumers.increment();
+            log.warn("Closing slow WebSocket client {}, queued {} bytes", session.getRemoteAddress(), queuedBytes);
+            closed = true;
+            queue.clear();
+            queuedBytes = 0;
+            // closing on watchdog thread, as senders could be all blocked by sending
+            watchdog.execute(() -> closeSession(CloseStatus.SESSION_NOT_RELIABLE));
+        }
+
+        private void closeSession(CloseStatus status) {
+            unsubscribeAll();
+            try {
+                session.close(status);
+            } catch (IOException e) {
+                log.debug("Problem closing WebSocket session", e);
+            }
+        }
+    }
+}
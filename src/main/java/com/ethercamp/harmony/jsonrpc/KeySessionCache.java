@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.util.ByteUtil;
+import org.spongycastle.util.encoders.Hex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Short lived cache of keys decrypted from keystore, so repeated sends with password
+ * don't run key derivation every time.
+ *
+ * Keyed by address and salted digest of password, password itself is not kept.
+ * Private key is kept as byte array, which is zeroed when entry expires, is evicted or account is locked.
+ * Key objects given to callers can't be zeroed (they keep key as BigInteger), they are dropped after use.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class KeySessionCache implements PublicMetrics {
+
+    @Autowired
+    HarmonyProperties properties;
+
+    /**
+     * Random per process, so digests are useless outside of it
+     */
+    private final byte[] salt = new byte[32];
+
+    long ttlMs;
+
+    /**
+     * Guarded by this
+     */
+    private Map<String, Entry> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        new SecureRandom().nextBytes(salt);
+        ttlMs = TimeUnit.SECONDS.toMillis(properties.keySessionTtlSec());
+        cache = new LRUMap<String, Entry>(Math.max(1, properties.keySessionCacheSize())) {
+            @Override
+            protected boolean removeLRU(LinkEntry<String, KeySessionCache.Entry> entry) {
+                evictions.incrementAndGet();
+                entry.getValue().clear();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return cached key or null
+     */
+    public ECKey get(String address, String password) {
+        final String cacheKey = toCacheKey(address, password);
+        final byte[] privateKey;
+        synchronized (this) {
+            final Entry entry = cache.get(cacheKey);
+            if (entry == null || entry.isExpired()) {
+                if (entry != null) {
+                    cache.remove(cacheKey).clear();
+                }
+                misses.incrementAndGet();
+                return null;
+            }
+            privateKey = entry.privateKey.clone();
+        }
+        hits.incrementAndGet();
+        try {
+            return ECKey.fromPrivate(privateKey);
+        } finally {
+            Arrays.fill(privateKey, (byte) 0);
+        }
+    }
+
+    public void put(String address, String password, ECKey key) {
+        if (ttlMs <= 0) return;
+
+        final Entry entry = new Entry(key.getPrivKeyBytes(), System.currentTimeMillis() + ttlMs);
+        synchronized (this) {
+            final Entry previous = cache.put(toCacheKey(address, password), entry);
+            if (previous != null) {
+                previous.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes keys of address cached with any password
+     */
+    public synchronized void evict(String address) {
+        final String prefix = normalize(address) + ":";
+        removeIf(e -> e.getKey().startsWith(prefix));
+    }
+
+    @Scheduled(fixedRate = 10_000)
+    public synchronized void removeExpired() {
+        removeIf(e -> e.getValue().isExpired());
+    }
+
+    private void removeIf(Predicate<Map.Entry<String, Entry>> predicate) {
+        for (Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<String, Entry> e = it.next();
+            if (predicate.test(e)) {
+                e.getValue().clear();
+                it.remove();
+            }
+        }
+    }
+
+    private String toCacheKey(String address, String password) {
+        final byte[] digest = HashUtil.sha3(ByteUtil.merge(salt, password.getBytes(StandardCharsets.UTF_8)));
+        return normalize(address) + ":" + Hex.toHexString(digest);
+    }
+
+    private static String normalize(String address) {
+        return (address.startsWith("0x") ? address.substring(2) : address).toLowerCase();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final int size;
+        synchronized (this) {
+            size = cache.size();
+        }
+        return Arrays.asList(
+                new Metric<>("rpc.keySessions.size", size),
+                new Metric<>("rpc.keySessions.hits", hits.get()),
+                new Metric<>("rpc.keySessions.misses", misses.get()),
+                new Metric<>("rpc.keySessions.evictions", evictions.get()));
+    }
+
+    private static class Entry {
+
+        final byte[] privateKey;
+
+        final long expiresAt;
+
+        Entry(byte[] privateKey, long expiresAt) {
+            this.privateKey = privateKey;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+
+        void clear() {
+            Arrays.fill(privateKey, (byte) 0);
+        }
+    }
+}
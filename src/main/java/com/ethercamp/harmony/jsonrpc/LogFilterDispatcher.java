@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.jsonrpc.EthJsonRpcImpl.JsonLogFilter;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.vm.LogInfo;
+
+import java.util.*;
+
+/**
+ * Routes logs of new blocks and pending transactions only to log filters which could match them.
+ *
+ * Filters are indexed by contract address, or by first topic if filter has no addresses.
+ * Filters without both restrictions receive every log.
+ * Index is rebuilt on filter install / uninstall, which are rare comparing to dispatching,
+ * so dispatching reads immutable index without locking.
+ */
+class LogFilterDispatcher {
+
+    private final Set<JsonLogFilter> blockFilters = new LinkedHashSet<>();
+    private final Set<JsonLogFilter> pendingFilters = new LinkedHashSet<>();
+
+    private volatile Index blockIndex = new Index(Collections.emptySet());
+    private volatile Index pendingIndex = new Index(Collections.emptySet());
+
+    synchronized void add(JsonLogFilter filter) {
+        if (filter.onNewBlock) {
+            blockFilters.add(filter);
+            blockIndex = new Index(blockFilters);
+        }
+        if (filter.onPendingTx) {
+            pendingFilters.add(filter);
+            pendingIndex = new Index(pendingFilters);
+        }
+    }
+
+    synchronized void remove(JsonLogFilter filter) {
+        if (blockFilters.remove(filter)) {
+            blockIndex = new Index(blockFilters);
+        }
+        if (pendingFilters.remove(filter)) {
+            pendingIndex = new Index(pendingFilters);
+        }
+    }
+
+    void onBlock(Block block, List<TransactionReceipt> receipts) {
+        final Index index = blockIndex;
+        if (index.isEmpty() || isEmptyBloom(block.getLogBloom())) return;
+
+        final List<Transaction> txs = block.getTransactionsList();
+        for (int txIdx = 0; txIdx < receipts.size() && txIdx < txs.size(); txIdx++) {
+            onReceipt(index, receipts.get(txIdx), block, txIdx, txs.get(txIdx));
+        }
+    }
+
+    void onPendingReceipt(TransactionReceipt receipt) {
+        final Index index = pendingIndex;
+        if (index.isEmpty()) return;
+
+        onReceipt(index, receipt, null, null, receipt.getTransaction());
+    }
+
+    private void onReceipt(Index index, TransactionReceipt receipt, Block block, Integer txIndex, Transaction tx) {
+        int logIdx = 0;
+        for (LogInfo logInfo : receipt.getLogInfoList()) {
+            for (JsonLogFilter filter : index.candidates(logInfo)) {
+                // same rules as historical scan in JsonLogFilter.onBlock
+                if (filter.logFilter.matchesContractAddress(tx.getReceiveAddress())
+                        && filter.logFilter.matchesExactly(logInfo)) {
+                    filter.onLogMatch(logInfo, block, txIndex, tx, logIdx);
+                }
+            }
+            logIdx++;
+        }
+    }
+
+    private static boolean isEmptyBloom(byte[] bloom) {
+        for (byte b : bloom) {
+            if (b != 0) return false;
+        }
+        return true;
+    }
+
+    private static class Index {
+        final Map<ByteArrayWrapper, Set<JsonLogFilter>> byAddress = new HashMap<>();
+        final Map<ByteArrayWrapper, Set<JsonLogFilter>> byTopic = new HashMap<>();
+        final List<JsonLogFilter> unrestricted = new ArrayList<>();
+
+        Index(Set<JsonLogFilter> filters) {
+            for (JsonLogFilter filter : filters) {
+                if (!filter.addresses.isEmpty()) {
+                    for (byte[] address : filter.addresses) {
+                        byAddress.computeIfAbsent(new ByteArrayWrapper(address), k -> new LinkedHashSet<>()).add(filter);
+                    }
+                } else if (!filter.topics.isEmpty() && filter.topics.get(0) != null) {
+                    for (byte[] topic : filter.topics.get(0)) {
+                        byTopic.computeIfAbsent(new ByteArrayWrapper(topic), k -> new LinkedHashSet<>()).add(filter);
+                    }
+                } else {
+                    unrestricted.add(filter);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return byAddress.isEmpty() && byTopic.isEmpty() && unrestricted.isEmpty();
+        }
+
+        /**
+         * @return filters which could match log, each filter is returned once
+         */
+        Collection<JsonLogFilter> candidates(LogInfo logInfo) {
+            final List<JsonLogFilter> result = new ArrayList<>(unrestricted);
+            result.addAll(byAddress.getOrDefault(new ByteArrayWrapper(logInfo.getAddress()), Collections.emptySet()));
+            if (!logInfo.getTopics().isEmpty()) {
+                result.addAll(byTopic.getOrDefault(
+                        new ByteArrayWrapper(logInfo.getTopics().get(0).getData()), Collections.emptySet()));
+            }
+            return result;
+        }
+    }
+}
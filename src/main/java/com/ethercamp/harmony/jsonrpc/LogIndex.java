@@ -0,0 +1,376 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.datasource.DbSource;
+import org.ethereum.datasource.leveldb.LevelDbDataSource;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent index of contract logs.
+ * Keeps postings (block number, tx index, log index) per log address and per log topic,
+ * so historical log filters read only blocks which could contain matching logs.
+ *
+ * Postings are grouped into buckets of {@link #BUCKET_SIZE} blocks,
+ * because data source supports only point lookups.
+ * Each flush appends postings of a term bucket as new segment, instead of rewriting the whole bucket value.
+ * When bucket gets {@link #MAX_SEGMENTS} segments, they are merged into one,
+ * so lookup reads a bounded number of segments and bucket is rewritten only a few times.
+ *
+ * Index may contain postings of blocks which are not in main chain anymore,
+ * so caller should check every found log against main chain.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class LogIndex {
+
+    static final int BUCKET_SIZE = 1024;
+    private static final int BACKFILL_FLUSH_BLOCKS = 256;
+    private static final int POSTING_SIZE = 16;
+    static final int MAX_SEGMENTS = 32;
+
+    private static final byte ADDRESS_TERM = 0;
+    private static final byte TOPIC_TERM = 1;
+
+    private static final byte[] INDEXED_BLOCK_KEY = "indexedBlock".getBytes(Charset.forName("UTF-8"));
+
+    @Autowired
+    BlockchainImpl blockchain;
+
+    @Autowired
+    HarmonyProperties properties;
+
+    DbSource<byte[]> postingsStorage;
+
+    /**
+     * All main chain blocks up to this one are indexed and flushed to disk.
+     */
+    private volatile long indexedBlock = -1;
+
+    private final Map<ByteArrayWrapper, ByteArrayOutputStream> pendingPostings = new HashMap<>();
+
+    private ExecutorService backfillExecutor;
+
+    private volatile boolean enabled;
+
+    @PostConstruct
+    public void init() {
+        enabled = properties.isLogIndexEnabled();
+        if (!enabled) {
+            log.info("Log index is disabled");
+            return;
+        }
+
+        final LevelDbDataSource storage = new LevelDbDataSource("logIndex");
+        storage.init();
+        open(storage);
+        log.info("Log index is built up to block #{}", indexedBlock);
+
+        backfillExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "log-index-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        backfillExecutor.submit(this::backfill);
+    }
+
+    void open(DbSource<byte[]> storage) {
+        postingsStorage = storage;
+        enabled = true;
+        indexedBlock = Optional.ofNullable(postingsStorage.get(INDEXED_BLOCK_KEY))
+                .map(ByteUtil::byteArrayToLong)
+                .orElse(-1L);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (backfillExecutor != null) {
+            backfillExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of last block which is indexed together with all its predecessors
+     */
+    public long getIndexedBlock() {
+        return indexedBlock;
+    }
+
+    /**
+     * Indexes imported block. Blocks ahead of backfill are skipped, backfill will reach them later.
+     */
+    public void onBlock(Block block, List<TransactionReceipt> receipts) {
+        if (!enabled) return;
+
+        synchronized (this) {
+            if (block.getNumber() > indexedBlock + 1) return;
+
+            addBlock(block, receipts);
+            flush(Math.max(indexedBlock, block.getNumber()));
+        }
+    }
+
+    void backfill() {
+        log.info("Log index backfill started from block #{}", indexedBlock + 1);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final long bestNumber = blockchain.getBestBlock().getNumber();
+                final long from = indexedBlock + 1;
+                if (from > bestNumber) break;
+
+                // read blocks without lock to not hold import thread
+                final long to = Math.min(bestNumber, from + BACKFILL_FLUSH_BLOCKS - 1);
+                final List<Block> blocks = new ArrayList<>();
+                final List<List<TransactionReceipt>> receipts = new ArrayList<>();
+                for (long number = from; number <= to; number++) {
+                    final Block block = blockchain.getBlockByNumber(number);
+                    if (block == null) break;
+                    blocks.add(block);
+                    receipts.add(hasLogs(block) ? loadReceipts(block) : Collections.emptyList());
+                }
+
+                synchronized (this) {
+                    long last = indexedBlock;
+                    for (int i = 0; i < blocks.size(); i++) {
+                        Block block = blocks.get(i);
+                        List<TransactionReceipt> blockReceipts = receipts.get(i);
+                        // block could be replaced while read, its replacement was skipped by onBlock as ahead of backfill
+                        if (!isMainChain(block)) {
+                            block = blockchain.getBlockByNumber(block.getNumber());
+                            if (block == null) break;
+                            blockReceipts = hasLogs(block) ? loadReceipts(block) : Collections.emptyList();
+                        }
+                        addBlock(block, blockReceipts);
+                        last = block.getNumber();
+                    }
+                    // chain got shorter meanwhile
+                    if (last < from) continue;
+                    flush(Math.max(indexedBlock, last));
+                }
+            }
+            log.info("Log index backfill finished at block #{}", indexedBlock);
+        } catch (Exception e) {
+            log.error("Log index backfill failed at block #" + (indexedBlock + 1), e);
+        }
+    }
+
+    private boolean isMainChain(Block block) {
+        return Arrays.equals(blockchain.getBlockStore().getBlockHashByNumber(block.getNumber()), block.getHash());
+    }
+
+    private boolean hasLogs(Block block) {
+        for (byte b : block.getLogBloom()) {
+            if (b != 0) return true;
+        }
+        return false;
+    }
+
+    private List<TransactionReceipt> loadReceipts(Block block) {
+        final List<TransactionReceipt> receipts = new ArrayList<>();
+        for (Transaction tx : block.getTransactionsList()) {
+            final TransactionInfo txInfo = blockchain.getTransactionInfo(tx.getHash());
+            receipts.add(txInfo == null ? null : txInfo.getReceipt());
+        }
+        return receipts;
+    }
+
+    private void addBlock(Block block, List<TransactionReceipt> receipts) {
+        final long bucket = block.getNumber() / BUCKET_SIZE;
+        for (int txIdx = 0; txIdx < receipts.size(); txIdx++) {
+            final TransactionReceipt receipt = receipts.get(txIdx);
+            if (receipt == null) continue;
+
+            int logIdx = 0;
+            for (LogInfo logInfo : receipt.getLogInfoList()) {
+                final byte[] posting = encodePosting(block.getNumber(), txIdx, logIdx);
+                addPosting(termKey(ADDRESS_TERM, logInfo.getAddress(), bucket), posting);
+                for (DataWord topic : logInfo.getTopics()) {
+                    addPosting(termKey(TOPIC_TERM, topic.getData(), bucket), posting);
+                }
+                logIdx++;
+            }
+        }
+    }
+
+    private void addPosting(byte[] key, byte[] posting) {
+        pendingPostings.computeIfAbsent(new ByteArrayWrapper(key), k -> new ByteArrayOutputStream())
+                .write(posting, 0, posting.length);
+    }
+
+    private void flush(long lastBlock) {
+        final Map<byte[], byte[]> batch = new HashMap<>();
+        pendingPostings.forEach((key, postings) -> {
+            final byte[] termKey = key.getData();
+            final int segments = getSegmentCount(termKey);
+            if (segments + 1 < MAX_SEGMENTS) {
+                batch.put(segmentKey(termKey, segments), postings.toByteArray());
+                batch.put(termKey, ByteUtil.intToBytes(segments + 1));
+            } else {
+                // merge all segments into first one
+                final ByteArrayOutputStream merged = new ByteArrayOutputStream();
+                for (int i = 0; i < segments; i++) {
+                    final byte[] segment = postingsStorage.get(segmentKey(termKey, i));
+                    if (segment != null) {
+                        merged.write(segment, 0, segment.length);
+                    }
+                    if (i > 0) {
+                        batch.put(segmentKey(termKey, i), null);
+                    }
+                }
+                merged.write(postings.toByteArray(), 0, postings.size());
+                batch.put(segmentKey(termKey, 0), merged.toByteArray());
+                batch.put(termKey, ByteUtil.intToBytes(1));
+            }
+        });
+        batch.put(INDEXED_BLOCK_KEY, ByteUtil.longToBytes(lastBlock));
+
+        postingsStorage.updateBatch(batch);
+        pendingPostings.clear();
+        indexedBlock = lastBlock;
+    }
+
+    /**
+     * Looks up logs which could match given addresses and topics within indexed blocks.
+     *
+     * @param addresses - contract addresses, any of them should match. Empty list matches any address
+     * @param topics - list of topic alternatives per position, null entry matches any topic
+     * @return positions sorted in canonical (block, tx, log) order
+     *          or null if query has no restrictions and index could not help
+     */
+    public List<LogPosition> find(List<byte[]> addresses, List<byte[][]> topics, long fromBlock, long toBlock) {
+        Set<LogPosition> result = null;
+
+        if (!addresses.isEmpty()) {
+            result = findAny(ADDRESS_TERM, addresses.toArray(new byte[0][]), fromBlock, toBlock);
+        }
+        for (byte[][] topicAlternatives : topics) {
+            if (topicAlternatives == null) continue;
+
+            final Set<LogPosition> found = findAny(TOPIC_TERM, topicAlternatives, fromBlock, toBlock);
+            if (result == null) {
+                result = found;
+            } else {
+                result.retainAll(found);
+            }
+        }
+
+        return result == null ? null : new ArrayList<>(result);
+    }
+
+    private Set<LogPosition> findAny(byte term, byte[][] values, long fromBlock, long toBlock) {
+        final Set<LogPosition> result = new TreeSet<>();
+        for (byte[] value : values) {
+            for (long bucket = fromBlock / BUCKET_SIZE; bucket <= toBlock / BUCKET_SIZE; bucket++) {
+                final byte[] termKey = termKey(term, value, bucket);
+                final int segments = getSegmentCount(termKey);
+                for (int i = 0; i < segments; i++) {
+                    final byte[] postings = postingsStorage.get(segmentKey(termKey, i));
+                    if (postings == null) continue;
+
+                    final ByteBuffer buffer = ByteBuffer.wrap(postings);
+                    while (buffer.remaining() >= POSTING_SIZE) {
+                        final LogPosition position = new LogPosition(buffer.getLong(), buffer.getInt(), buffer.getInt());
+                        if (position.getBlockNumber() >= fromBlock && position.getBlockNumber() <= toBlock) {
+                            result.add(position);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    static byte[] termKey(byte term, byte[] value, long bucket) {
+        return ByteBuffer.allocate(1 + value.length + 8)
+                .put(term)
+                .put(value)
+                .putLong(bucket)
+                .array();
+    }
+
+    /**
+     * Number of segments is kept under term key itself
+     */
+    private int getSegmentCount(byte[] termKey) {
+        final byte[] count = postingsStorage.get(termKey);
+        return count == null ? 0 : ByteUtil.byteArrayToInt(count);
+    }
+
+    static byte[] segmentKey(byte[] termKey, int segment) {
+        return ByteBuffer.allocate(termKey.length + 4)
+                .put(termKey)
+                .putInt(segment)
+                .array();
+    }
+
+    static byte[] encodePosting(long blockNumber, int txIndex, int logIndex) {
+        return ByteBuffer.allocate(POSTING_SIZE)
+                .putLong(blockNumber)
+                .putInt(txIndex)
+                .putInt(logIndex)
+                .array();
+    }
+
+    @Value
+    public static class LogPosition implements Comparable<LogPosition> {
+
+        private final long blockNumber;
+
+        private final int txIndex;
+
+        private final int logIndex;
+
+        @Override
+        public int compareTo(LogPosition o) {
+            int res = Long.compare(blockNumber, o.blockNumber);
+            if (res == 0) res = Integer.compare(txIndex, o.txIndex);
+            if (res == 0) res = Integer.compare(logIndex, o.logIndex);
+            return res;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import lombok.extern.slf4j.Slf4j;
+import org.ethereum.core.PendingStateImpl;
+import org.ethereum.core.PendingTransactionState;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.db.ByteArrayWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Hands out nonces of accounts, which send transactions through RPC.
+ *
+ * Next nonce of account is read from pending state on first use and then tracked locally.
+ * Nonce is assigned and transaction is submitted under account lock, submission adds transaction
+ * to pending state synchronously, so concurrent sends never get the same nonce.
+ *
+ * Pending state drops transactions, which don't follow last pending nonce of sender, so nonces are
+ * never left with gaps: when transaction of account is dropped, its submission fails or block is imported
+ * (pending transactions are re-executed on top of it, some could be dropped, others could be sent
+ * outside of RPC), local nonce is discarded and read from pending state again.
+ * This way dropped nonces are reused by next transactions.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class NonceManager implements PublicMetrics {
+
+    @Autowired
+    PendingStateImpl pendingState;
+
+    private final Map<ByteArrayWrapper, AccountNonce> accounts = new ConcurrentHashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+
+    /**
+     * Executes action with nonce of account under account lock.
+     * When action fails, local nonce is discarded.
+     *
+     * @param nonce explicit nonce or null for next nonce of account
+     * @param action submits transaction with given nonce
+     */
+    public <T> T withNonce(byte[] address, BigInteger nonce, Function<BigInteger, T> action) {
+        final AccountNonce account = accounts.computeIfAbsent(new ByteArrayWrapper(address), AccountNonce::new);
+        synchronized (account) {
+            final BigInteger txNonce = nonce != null ? nonce : account.next();
+            final T result;
+            try {
+                result = action.apply(txNonce);
+            } catch (RuntimeException e) {
+                account.next = null;
+                throw e;
+            }
+            if (account.next != null && txNonce.compareTo(account.next) >= 0) {
+                account.next = txNonce.add(BigInteger.ONE);
+            }
+            return result;
+        }
+    }
+
+    public void onBlock() {
+        accounts.values().forEach(AccountNonce::discard);
+    }
+
+    public void onPendingTransactionUpdate(TransactionReceipt txReceipt, PendingTransactionState state) {
+        if (state != PendingTransactionState.DROPPED) return;
+
+        final AccountNonce account = accounts.get(new ByteArrayWrapper(txReceipt.getTransaction().getSender()));
+        if (account != null) {
+            drops.incrementAndGet();
+            account.discard();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("rpc.nonces.accounts", accounts.size()),
+                new Metric<>("rpc.nonces.lookups", lookups.get()),
+                new Metric<>("rpc.nonces.drops", drops.get()));
+    }
+
+    private class AccountNonce {
+
+        private final byte[] address;
+
+        /**
+         * Guarded by this, null when it should be read from pending state
+         */
+        private BigInteger next;
+
+        AccountNonce(ByteArrayWrapper address) {
+            this.address = address.getData();
+        }
+
+        private BigInteger next() {
+            if (next == null) {
+                lookups.incrementAndGet();
+                next = pendingState.getRepository().getNonce(address);
+            }
+            return next;
+        }
+
+        private synchronized void discard() {
+            next = null;
+        }
+    }
+}
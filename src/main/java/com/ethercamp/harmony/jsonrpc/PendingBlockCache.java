@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.BlockResult;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.PendingStateImpl;
+import org.ethereum.core.Repository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Keeps pending block, which is built from best block and pending transactions.
+ * State after pending block is built on request and kept with it, unlike live pending state it doesn't change.
+ *
+ * Version is increased when block is imported or pending transactions change,
+ * snapshot is rebuilt on first request after that and shared by all requests until next change.
+ * Snapshot is rebuilt also when best block differs from its parent, as events are handled with delay.
+ */
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class PendingBlockCache implements PublicMetrics {
+
+    @Autowired
+    BlockchainImpl blockchain;
+
+    @Autowired
+    PendingStateImpl pendingState;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    /**
+     * Marks current snapshot outdated
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return up to date snapshot, must not be modified
+     */
+    public Snapshot getSnapshot() {
+        final Snapshot current = snapshot;
+        final Block best = blockchain.getBestBlock();
+        if (current != null && isUpToDate(current, best)) return current;
+
+        synchronized (this) {
+            if (snapshot != null && isUpToDate(snapshot, blockchain.getBestBlock())) return snapshot;
+
+            // version is taken before build, so changes made during build cause another rebuild
+            final long buildVersion = version.get();
+            final Block parent = blockchain.getBestBlock();
+            final Block block = blockchain.createNewBlock(parent, pendingState.getPendingTransactions(),
+                    Collections.<BlockHeader>emptyList());
+            snapshot = new Snapshot(block, parent, buildVersion);
+            rebuilds.incrementAndGet();
+            return snapshot;
+        }
+    }
+
+    private boolean isUpToDate(Snapshot snapshot, Block best) {
+        return snapshot.version == version.get() && Arrays.equals(snapshot.parentHash, best.getHash());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("rpc.pendingBlock.version", version.get()),
+                new Metric<>("rpc.pendingBlock.rebuilds", rebuilds.get()));
+    }
+
+    public static class Snapshot {
+
+        private final Block block;
+
+        private final Block parent;
+
+        private final byte[] parentHash;
+
+        private final long version;
+
+        private volatile BlockResult light;
+
+        private volatile BlockResult full;
+
+        private volatile Repository repository;
+
+        private final Object repositoryLock = new Object();
+
+        Snapshot(Block block, Block parent, long version) {
+            this.block = block;
+            this.parent = parent;
+            this.parentHash = parent.getHash();
+            this.version = version;
+        }
+
+        public Block getBlock() {
+            return block;
+        }
+
+        public Block getParent() {
+            return parent;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return block result rendered once per snapshot
+         */
+        BlockResult getBlockResult(boolean fullTx, BiFunction<Block, Boolean, BlockResult> renderer) {
+            BlockResult result = fullTx ? full : light;
+            if (result != null) return result;
+
+            synchronized (this) {
+                result = fullTx ? full : light;
+                if (result == null) {
+                    result = renderer.apply(block, fullTx);
+                    if (fullTx) {
+                        full = result;
+                    } else {
+                        light = result;
+                    }
+                }
+                return result;
+            }
+        }
+
+        /**
+         * @return state after block transactions, built once per snapshot, only reading is allowed
+         */
+        Repository getRepository(Function<Snapshot, Repository> builder) {
+            final Repository result = repository;
+            if (result != null) return result;
+
+            // separate lock, so slow build doesn't hold block result rendering
+            synchronized (repositoryLock) {
+                if (repository == null) {
+                    repository = builder.apply(this);
+                }
+                return repository;
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import lombok.extern.slf4j.Slf4j;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.spongycastle.util.encoders.Hex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Signs transactions of unlocked accounts.
+ *
+ * Each unlocked account has signing context, which keeps key with computed public key and address.
+ * Nonces are assigned by {@link NonceManager}, signing and submission of one account are done under
+ * its account lock, so transactions of one account reach pending state in nonce order.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class SigningService implements PublicMetrics {
+
+    @Autowired
+    NonceManager nonceManager;
+
+    /**
+     * Lowercase hex address as a key
+     */
+    private final Map<String, SigningContext> contexts = new ConcurrentHashMap<>();
+
+    private final AtomicLong signed = new AtomicLong();
+
+    public SigningContext unlock(ECKey key) {
+        final SigningContext context = new SigningContext(key);
+        contexts.put(context.hexAddress, context);
+        return context;
+    }
+
+    public void lock(String address) {
+        contexts.remove(normalize(address));
+    }
+
+    /**
+     * @return context of unlocked account or null
+     */
+    public SigningContext get(String address) {
+        return contexts.get(normalize(address));
+    }
+
+    /**
+     * @return context of unlocked account, or new context which is not kept
+     */
+    public SigningContext getOrCreate(ECKey key) {
+        final SigningContext context = contexts.get(Hex.toHexString(key.getAddress()));
+        return context != null ? context : new SigningContext(key);
+    }
+
+    /**
+     * Assigns nonce, signs and submits transaction.
+     *
+     * @param nonce explicit nonce or null for next nonce of account
+     * @param txFactory creates unsigned transaction with given nonce
+     * @param submitter submits signed transaction
+     */
+    public Transaction signAndSubmit(SigningContext context, BigInteger nonce,
+                                     Function<BigInteger, Transaction> txFactory, Consumer<Transaction> submitter) {
+        return nonceManager.withNonce(context.address, nonce, txNonce -> {
+            final Transaction tx = txFactory.apply(txNonce);
+            tx.sign(context.key);
+            signed.incrementAndGet();
+            submitter.accept(tx);
+            return tx;
+        });
+    }
+
+    private static String normalize(String address) {
+        return (address.startsWith("0x") ? address.substring(2) : address).toLowerCase();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("rpc.signing.accounts", contexts.size()),
+                new Metric<>("rpc.signing.signed", signed.get()));
+    }
+
+    public static class SigningContext {
+
+        private final ECKey key;
+
+        private final byte[] address;
+
+        private final String hexAddress;
+
+        SigningContext(ECKey key) {
+            // public key is computed once here, it is needed for every signature
+            key.getPubKey();
+            this.key = key;
+            this.address = key.getAddress();
+            this.hexAddress = Hex.toHexString(address);
+        }
+
+        public ECKey getKey() {
+            return key;
+        }
+
+        public byte[] getAddress() {
+            return address;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.manager.WorldManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps state snapshots of recent blocks, shared by all calls to the same state root.
+ *
+ * Snapshot caches trie nodes, accounts and storage it has read, so following calls
+ * against the same block find them warm. Calls must not modify snapshot directly,
+ * they get own tracking repository on top of it, which is dropped after call.
+ *
+ * Snapshots of blocks older than {@link HarmonyProperties#stateSnapshotsWindow()} blocks
+ * behind the last imported one are released.
+ *
+ * Snapshot caches are not bounded by themselves and grow with every distinct read,
+ * so snapshot is replaced by fresh one after {@link HarmonyProperties#stateSnapshotsMaxCalls()} calls.
+ */
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class StateSnapshotCache implements PublicMetrics {
+
+    @Autowired
+    WorldManager worldManager;
+
+    @Autowired
+    HarmonyProperties properties;
+
+    private final Map<ByteArrayWrapper, Entry> snapshots = new HashMap<>();
+
+    private volatile long bestNumber = -1;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong renewals = new AtomicLong();
+
+    /**
+     * @return shared snapshot, only reading is allowed
+     */
+    public Repository getSnapshot(Block block) {
+        final long window = properties.stateSnapshotsWindow();
+        final ByteArrayWrapper root = new ByteArrayWrapper(block.getStateRoot());
+        long blockNumber = block.getNumber();
+        synchronized (this) {
+            final Entry entry = snapshots.get(root);
+            if (entry != null) {
+                if (++entry.calls <= properties.stateSnapshotsMaxCalls()) {
+                    entry.blockNumber = Math.max(entry.blockNumber, blockNumber);
+                    hits.incrementAndGet();
+                    return entry.repository;
+                }
+                // calls in progress keep using old snapshot until they finish
+                snapshots.remove(root);
+                blockNumber = Math.max(entry.blockNumber, blockNumber);
+                renewals.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+
+        final Repository snapshot = ((Repository) worldManager.getRepository()).getSnapshotTo(block.getStateRoot());
+        // old blocks are not cached, so historical queries don't wash out recent snapshots
+        if (bestNumber >= 0 && blockNumber < bestNumber - window) {
+            return snapshot;
+        }
+        synchronized (this) {
+            final Entry existing = snapshots.putIfAbsent(root, new Entry(snapshot, blockNumber));
+            return existing != null ? existing.repository : snapshot;
+        }
+    }
+
+    /**
+     * @return tracking repository on top of shared snapshot, changes are never written to snapshot
+     */
+    public Repository getTrackingRepository(Block block) {
+        return getSnapshot(block).startTracking();
+    }
+
+    /**
+     * Releases snapshots, which fell out of window
+     */
+    public synchronized void onBlock(Block block) {
+        bestNumber = Math.max(bestNumber, block.getNumber());
+        final long minNumber = bestNumber - properties.stateSnapshotsWindow();
+        snapshots.values().removeIf(entry -> entry.blockNumber < minNumber);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final int size;
+        synchronized (this) {
+            size = snapshots.size();
+        }
+        return Arrays.asList(
+                new Metric<>("rpc.stateSnapshots.size", size),
+                new Metric<>("rpc.stateSnapshots.hits", hits.get()),
+                new Metric<>("rpc.stateSnapshots.misses", misses.get()),
+                new Metric<>("rpc.stateSnapshots.renewals", renewals.get()));
+    }
+
+    private static class Entry {
+        final Repository repository;
+
+        /**
+         * Highest number of block with this state root, empty blocks share state root with parent
+         */
+        long blockNumber;
+
+        /**
+         * Number of calls served by this snapshot, including the one which loaded it
+         */
+        int calls = 1;
+
+        Entry(Repository repository, long blockNumber) {
+            this.repository = repository;
+            this.blockNumber = blockNumber;
+        }
+    }
+}
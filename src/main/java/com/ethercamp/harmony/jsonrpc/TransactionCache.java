@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.config.RpcEnabledCondition;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.db.ByteArrayWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of rendered transactions and receipts of main chain blocks, keyed by transaction hash.
+ *
+ * Filled with transactions of imported blocks and with results of lookups.
+ * Tracks main chain hashes of last {@link #TRACKED_BLOCKS} blocks, when imported block
+ * replaces some of them, transactions of replaced blocks are evicted.
+ * Deeper reorgs are not expected.
+ * Eviction runs on event pipeline, which could lag behind import, so block of cached entry
+ * is checked against main chain hash of its number in block store index on every lookup,
+ * block itself is not loaded.
+ */
+@Slf4j(topic = "jsonrpc")
+@Component
+@Conditional(RpcEnabledCondition.class)
+public class TransactionCache implements PublicMetrics {
+
+    private static final int TRACKED_BLOCKS = 1024;
+
+    @Autowired
+    BlockchainImpl blockchain;
+
+    @Autowired
+    HarmonyProperties properties;
+
+    private Map<ByteArrayWrapper, Entry> cache;
+
+    /**
+     * Main chain block hash and its transactions hashes by block number
+     */
+    private final TreeMap<Long, CachedBlock> blocks = new TreeMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = new LRUMap<ByteArrayWrapper, Entry>(properties.transactionCacheSize()) {
+            @Override
+            protected boolean removeLRU(LinkEntry<ByteArrayWrapper, TransactionCache.Entry> entry) {
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return cached entry of main chain transaction or null
+     */
+    public Entry get(byte[] txHash) {
+        final ByteArrayWrapper key = new ByteArrayWrapper(txHash);
+        Entry entry;
+        synchronized (this) {
+            entry = cache.get(key);
+        }
+
+        if (entry != null) {
+            // check outside of lock, so lookups are not blocked
+            if (!isMainChain(entry.getBlockNumber(), entry.getBlockHash().getData())) {
+                synchronized (this) {
+                    cache.remove(key, entry);
+                }
+                entry = null;
+            }
+        }
+        (entry == null ? misses : hits).incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Caches transaction of main chain block.
+     */
+    public synchronized Entry put(Block block, TransactionInfo txInfo) {
+        final Entry entry = new Entry(
+                new TransactionResultDTO(block, txInfo.getIndex(), txInfo.getReceipt().getTransaction()),
+                new TransactionReceiptDTO(block, txInfo),
+                block.getNumber(),
+                new ByteArrayWrapper(block.getHash()));
+
+        final CachedBlock cachedBlock = blocks.get(block.getNumber());
+        if (cachedBlock != null && !cachedBlock.hash.equals(new ByteArrayWrapper(block.getHash()))) {
+            // block was replaced meanwhile
+            return entry;
+        }
+        cache.put(new ByteArrayWrapper(txInfo.getReceipt().getTransaction().getHash()), entry);
+        return entry;
+    }
+
+    public synchronized void onBlock(Block block, List<TransactionReceipt> receipts) {
+        // events are handled with delay, block could already leave main chain
+        if (!isMainChain(block.getNumber(), block.getHash())) return;
+
+        // chain could become shorter after reorg
+        while (!blocks.isEmpty() && blocks.lastKey() > block.getNumber()) {
+            evict(blocks.lastKey());
+        }
+        evict(block.getNumber());
+
+        // evict replaced blocks down to common ancestor
+        byte[] parentHash = block.getParentHash();
+        for (long number = block.getNumber() - 1; blocks.containsKey(number); number--) {
+            if (blocks.get(number).hash.equals(new ByteArrayWrapper(parentHash))) break;
+
+            evict(number);
+            final Block parent = blockchain.getBlockByHash(parentHash);
+            if (parent == null) break;
+            parentHash = parent.getParentHash();
+        }
+
+        final List<ByteArrayWrapper> txHashes = new ArrayList<>();
+        final List<Transaction> txs = block.getTransactionsList();
+        for (int i = 0; i < receipts.size() && i < txs.size(); i++) {
+            final TransactionReceipt receipt = receipts.get(i);
+            receipt.setTransaction(txs.get(i));
+            final TransactionInfo txInfo = new TransactionInfo(receipt, block.getHash(), i);
+            txHashes.add(new ByteArrayWrapper(txs.get(i).getHash()));
+            put(block, txInfo);
+        }
+        blocks.put(block.getNumber(), new CachedBlock(new ByteArrayWrapper(block.getHash()), txHashes));
+        while (blocks.size() > TRACKED_BLOCKS) {
+            blocks.pollFirstEntry();
+        }
+    }
+
+    private boolean isMainChain(long number, byte[] blockHash) {
+        return Arrays.equals(blockchain.getBlockStore().getBlockHashByNumber(number), blockHash);
+    }
+
+    private void evict(long number) {
+        final CachedBlock cachedBlock = blocks.remove(number);
+        if (cachedBlock != null) {
+            cachedBlock.txHashes.forEach(cache::remove);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final int size;
+        synchronized (this) {
+            size = cache.size();
+        }
+        return Arrays.asList(
+                new Metric<>("rpc.txCache.size", size),
+                new Metric<>("rpc.txCache.hits", hits.get()),
+                new Metric<>("rpc.txCache.misses", misses.get()),
+                new Metric<>("rpc.txCache.evictions", evictions.get()));
+    }
+
+    @Value
+    public static class Entry {
+
+        private final TransactionResultDTO transaction;
+
+        private final TransactionReceiptDTO receipt;
+
+        private final long blockNumber;
+
+        private final ByteArrayWrapper blockHash;
+    }
+
+    @Value
+    private static class CachedBlock {
+
+        private final ByteArrayWrapper hash;
+
+        private final List<ByteArrayWrapper> txHashes;
+    }
+}
@@ -22,10 +22,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.net.swarm.Util;
 import org.spongycastle.util.encoders.Hex;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
@@ -39,6 +42,8 @@ import java.util.stream.Collectors;
  * Comply to go-ethereum key store format.
  * https://github.com/ethereum/wiki/wiki/Web3-Secret-Storage-Definition
  *
+ * Key files are found by address with {@link KeystoreIndex}, which is built on first access.
+ *
  * Created by Stan Reshetnyk on 26.07.16.
  */
 @Component
@@ -51,12 +56,30 @@ public class FileSystemKeystore implements Keystore {
 
     public KeystoreFormat keystoreFormat = new KeystoreFormat();
 
+    @Autowired(required = false)
+    public KdfExecutor kdfExecutor;
+
+    private volatile KeystoreIndex index;
+
+    @PostConstruct
+    public void init() {
+        keystoreFormat.setKdfExecutor(kdfExecutor);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (index != null) {
+            index.close();
+        }
+    }
+
     @Override
     public void removeKey(String address) {
-        getFiles().stream()
-                .filter(f -> hasAddressInName(address, f))
-                .findFirst()
-                .ifPresent(f -> f.delete());
+        final File file = getIndex().get(address);
+        if (file != null) {
+            file.delete();
+            getIndex().remove(file);
+        }
     }
 
     @Override
@@ -77,11 +100,15 @@ public class FileSystemKeystore implements Keystore {
     @Override
     public void storeRawKeystore(String content, String address) throws RuntimeException {
         String fileName = "UTC--" + getISODate(Util.curTime()) + "--" + address;
+        final Path file = getKeyStoreLocation().resolve(fileName);
         try {
-            Files.write(getKeyStoreLocation().resolve(fileName), Arrays.asList(content));
+            Files.write(file, Arrays.asList(content));
         } catch (IOException e) {
             throw new RuntimeException("Problem storing key for address");
         }
+        getIndex().add(file.toFile());
+        // directory could be just created
+        getIndex().watch();
     }
 
     /**
@@ -89,11 +116,8 @@ public class FileSystemKeystore implements Keystore {
      */
     @Override
     public String[] listStoredKeys() {
-        return getFiles().stream()
-                .filter(f -> !f.isDirectory())
-                .map(f -> f.getName().split("--"))
-                .filter(n -> n != null && n.length == 3)
-                .map(a -> "0x" + a[2])
+        return getIndex().getAddresses().stream()
+                .map(a -> "0x" + a)
                 .toArray(size -> new String[size]);
     }
 
@@ -102,38 +126,53 @@ public class FileSystemKeystore implements Keystore {
      */
     @Override
     public ECKey loadStoredKey(String address, String password) throws RuntimeException {
-        return getFiles().stream()
-                .filter(f -> hasAddressInName(address, f))
-                .map(f -> {
-                    try {
-                        return Files.readAllLines(f.toPath())
-                                .stream()
-                                .collect(Collectors.joining(""));
-                    } catch (IOException e) {
-                        throw new RuntimeException("Problem reading keystore file for address:" + address);
-                    }
-                })
-                .map(content -> keystoreFormat.fromKeystore(content, password))
-                .findFirst()
-                .orElse(null);
-    }
+        final File file = getIndex().get(address);
+        if (file == null) {
+            return null;
+        }
 
-    private boolean hasAddressInName(String address, File file) {
-        return !file.isDirectory() && file.getName().toLowerCase().endsWith("--" + address.toLowerCase());
+        final String content;
+        try {
+            content = Files.readAllLines(file.toPath())
+                    .stream()
+                    .collect(Collectors.joining(""));
+        } catch (NoSuchFileException e) {
+            // removed meanwhile
+            getIndex().remove(file);
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Problem reading keystore file for address:" + address);
+        }
+        return keystoreFormat.fromKeystore(content, password);
     }
 
     @Override
     public boolean hasStoredKey(String address) {
-        return getFiles().stream()
-                .filter(f -> hasAddressInName(address, f))
-                .findFirst()
-                .isPresent();
+        return getIndex().get(address) != null;
+    }
+
+    /**
+     * @return file with key of address or null
+     */
+    public File getKeyFile(String address) {
+        return getIndex().get(address);
+    }
+
+    private KeystoreIndex getIndex() {
+        KeystoreIndex result = index;
+        if (result == null) {
+            synchronized (this) {
+                if (index == null) {
+                    index = createIndex(getKeyStoreLocation());
+                }
+                result = index;
+            }
+        }
+        return result;
     }
 
-    private List<File> getFiles() {
-        final File dir = getKeyStoreLocation().toFile();
-        final File[] files = dir.listFiles();
-        return files != null ? Arrays.asList(files) : Collections.emptyList();
+    KeystoreIndex createIndex(Path dir) {
+        return new KeystoreIndex(dir);
     }
 
     private String getISODate(long milliseconds) {
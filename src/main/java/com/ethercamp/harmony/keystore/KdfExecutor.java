@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.keystore;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.util.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes key derivations (scrypt, pbkdf2) on bounded pool, so concurrent unlocks can't exhaust heap.
+ *
+ * Derivation is started only when memory it needs fits into memory limit, it waits in queue otherwise.
+ * Derivation, which needs more memory than the whole limit, waits for the whole limit and runs alone.
+ * Derivation, which doesn't start within timeout, fails. It fails immediately when queue is full.
+ */
+@Slf4j(topic = "keystore")
+@Component
+public class KdfExecutor implements PublicMetrics {
+
+    @Autowired
+    HarmonyProperties properties;
+
+    private ThreadPoolExecutor pool;
+
+    /**
+     * Permits are kilobytes of memory
+     */
+    private Semaphore memory;
+
+    private int memoryLimitKb;
+
+    private long timeoutMs;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+
+    public KdfExecutor() {
+    }
+
+    /**
+     * For use outside of Spring context, {@link #init()} should be called after
+     */
+    public KdfExecutor(HarmonyProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() {
+        memoryLimitKb = (int) Math.min(Integer.MAX_VALUE, properties.kdfMaxMemory() / 1024);
+        memory = new Semaphore(memoryLimitKb, true);
+        timeoutMs = TimeUnit.SECONDS.toMillis(properties.kdfTimeoutSec());
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final int threads = Math.max(1, properties.kdfThreads());
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.kdfQueueSize())),
+                r -> {
+                    final Thread thread = new Thread(r, "kdf-" + threadCounter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @return approximate memory used by scrypt with given parameters
+     */
+    public static long scryptMemory(int n, int r, int p) {
+        return 128L * r * n + 128L * r * p;
+    }
+
+    /**
+     * Submits derivation, which result could be awaited without holding calling thread.
+     *
+     * @param memoryBytes memory needed by derivation
+     */
+    public <T> CompletableFuture<T> submit(long memoryBytes, Callable<T> derivation) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        // limit could be less than one default scrypt needs on small heap, such derivation runs alone
+        final int memoryKb = (int) Math.min(memoryLimitKb, (memoryBytes + 1023) / 1024);
+
+        final long submitted = System.nanoTime();
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            pool.execute(() -> {
+                try {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0 || !memory.tryAcquire(memoryKb, remaining, TimeUnit.MILLISECONDS)) {
+                        timeouts.incrementAndGet();
+                        result.completeExceptionally(new RuntimeException("Key derivation is busy, try again later"));
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+
+                final long started = System.nanoTime();
+                waitTime.record(started - submitted, TimeUnit.NANOSECONDS);
+                running.incrementAndGet();
+                try {
+                    result.complete(derivation.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    running.decrementAndGet();
+                    memory.release(memoryKb);
+                    runTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    completed.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            result.completeExceptionally(new RuntimeException("Too many key derivations are waiting, try again later"));
+        }
+        return result;
+    }
+
+    /**
+     * Submits derivation and waits for its result.
+     */
+    public <T> T execute(long memoryBytes, Callable<T> derivation) throws Exception {
+        try {
+            return submit(memoryBytes, derivation).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("keystore.kdf.running", running.get()),
+                new Metric<>("keystore.kdf.queue", pool.getQueue().size()),
+                new Metric<>("keystore.kdf.memoryUsedKb", memoryLimitKb - memory.availablePermits()),
+                new Metric<>("keystore.kdf.completed", completed.get()),
+                new Metric<>("keystore.kdf.rejected", rejected.get()),
+                new Metric<>("keystore.kdf.timeouts", timeouts.get()),
+                new Metric<>("keystore.kdf.wait.p99Ms", waitTime.getValueAtQuantile(0.99) / 1000),
+                new Metric<>("keystore.kdf.run.p99Ms", runTime.getValueAtQuantile(0.99) / 1000));
+    }
+}
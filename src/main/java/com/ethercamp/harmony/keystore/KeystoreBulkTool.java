@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.keystore;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.ethereum.crypto.ECKey;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Imports and exports many keys at once, used by RPC and by command line mode.
+ *
+ * Source of import is directory (scanned recursively) or zip archive, each file contains either
+ * keystore json (stored as is, no password needed) or raw private keys in hex, one per line
+ * (encrypted with given password). Encryption of raw keys is done in parallel, key derivations
+ * are limited by {@link KdfExecutor} when keystore has it.
+ *
+ * Keys, which are already in keystore or repeat in source, are skipped. Wallet is not updated here,
+ * callers reindex it once with imported addresses.
+ *
+ * Export never overwrites existing files.
+ */
+@Slf4j(topic = "keystore")
+public class KeystoreBulkTool {
+
+    private static final int PROGRESS_STEP = 100;
+
+    private final FileSystemKeystore keystore;
+
+    private final int threads;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public KeystoreBulkTool(FileSystemKeystore keystore, int threads) {
+        this.keystore = keystore;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param password password for raw keys, could be null when source has keystore files only
+     * @param progress receives progress messages
+     */
+    public ImportResult importKeys(Path source, String password, Consumer<String> progress) throws IOException {
+        final Map<String, String> contents = readSource(source);
+        // addresses taken by tasks of this import, so same key in source is stored once
+        final Set<String> claimed = ConcurrentHashMap.newKeySet();
+        final List<Callable<String>> tasks = new ArrayList<>();
+        // where key of task comes from, errors name it instead of exception text, which could show file content
+        final List<String> origins = new ArrayList<>();
+        for (Map.Entry<String, String> file : contents.entrySet()) {
+            final String content = file.getValue();
+            if (content.trim().startsWith("{")) {
+                tasks.add(() -> importKeystore(content, claimed));
+                origins.add(file.getKey());
+            } else {
+                final String[] lines = content.split("\\r?\\n");
+                for (int i = 0; i < lines.length; i++) {
+                    final String hex = lines[i].trim();
+                    if (hex.isEmpty()) continue;
+                    tasks.add(() -> importRawKey(hex, password, claimed));
+                    origins.add(file.getKey() + " line " + (i + 1));
+                }
+            }
+        }
+        progress.accept("Importing " + tasks.size() + " keys from " + source);
+
+        final ImportResult result = new ImportResult();
+        final AtomicInteger done = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<String>> futures = tasks.stream()
+                    .map(task -> pool.submit(() -> {
+                        try {
+                            return task.call();
+                        } finally {
+                            final int count = done.incrementAndGet();
+                            if (count % PROGRESS_STEP == 0) {
+                                progress.accept("Processed " + count + " of " + tasks.size() + " keys");
+                            }
+                        }
+                    }))
+                    .collect(Collectors.toList());
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    final String address = futures.get(i).get();
+                    if (address != null) {
+                        result.imported.add(address);
+                    } else {
+                        result.skipped++;
+                    }
+                } catch (ExecutionException e) {
+                    log.debug("Problem importing key from " + origins.get(i), e.getCause());
+                    result.errors.add("Problem importing key from " + origins.get(i));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        progress.accept("Imported " + result.imported.size() + " keys, skipped " + result.skipped
+                + " existing, failed " + result.errors.size());
+        return result;
+    }
+
+    /**
+     * Copies key files of all keystore keys into zip archive (when path ends with .zip) or directory.
+     * Fails when archive or any of key files already exists in target.
+     *
+     * @return number of exported keys
+     */
+    public int exportKeys(Path target, Consumer<String> progress) throws IOException {
+        final List<File> files = Stream.of(keystore.listStoredKeys())
+                .map(address -> keystore.getKeyFile(address.substring(2)))
+                .filter(file -> file != null)
+                .collect(Collectors.toList());
+        progress.accept("Exporting " + files.size() + " keys to " + target);
+
+        int count = 0;
+        if (target.getFileName().toString().toLowerCase().endsWith(".zip")) {
+            try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW);
+                 ZipOutputStream zip = new ZipOutputStream(out)) {
+                for (File file : files) {
+                    zip.putNextEntry(new ZipEntry(file.getName()));
+                    Files.copy(file.toPath(), zip);
+                    zip.closeEntry();
+                    if (++count % PROGRESS_STEP == 0) {
+                        progress.accept("Exported " + count + " of " + files.size() + " keys");
+                    }
+                }
+            }
+        } else {
+            Files.createDirectories(target);
+            // checked before copying, so existing export is not left half overwritten
+            for (File file : files) {
+                if (Files.exists(target.resolve(file.getName()))) {
+                    throw new FileAlreadyExistsException(target.resolve(file.getName()).toString());
+                }
+            }
+            for (File file : files) {
+                Files.copy(file.toPath(), target.resolve(file.getName()));
+                if (++count % PROGRESS_STEP == 0) {
+                    progress.accept("Exported " + count + " of " + files.size() + " keys");
+                }
+            }
+        }
+        progress.accept("Exported " + count + " keys");
+        return count;
+    }
+
+    /**
+     * @return file contents by file names relative to source
+     */
+    private Map<String, String> readSource(Path source) throws IOException {
+        final Map<String, String> result = new LinkedHashMap<>();
+        if (Files.isDirectory(source)) {
+            final List<Path> paths;
+            try (Stream<Path> walk = Files.walk(source)) {
+                paths = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path path : paths) {
+                result.put(source.relativize(path).toString(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            }
+        } else {
+            try (ZipFile zip = new ZipFile(source.toFile())) {
+                for (ZipEntry entry : Collections.list(zip.entries())) {
+                    if (entry.isDirectory()) continue;
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        result.put(entry.getName(), new String(readAll(in), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return address of imported key or null, when it is already in keystore
+     */
+    private String importKeystore(String content, Set<String> claimed) throws IOException {
+        final KeystoreItem item = mapper.readValue(content, KeystoreItem.class);
+        if (item.getAddress() == null) {
+            throw new RuntimeException("Keystore file without address, id: " + item.getId());
+        }
+        final String address = cleanHex(item.getAddress());
+        Hex.decode(address);
+        return store(address, () -> content.trim(), claimed);
+    }
+
+    private String importRawKey(String hex, String password, Set<String> claimed) {
+        if (password == null) {
+            throw new RuntimeException("Password is required to import raw keys");
+        }
+        final ECKey key = ECKey.fromPrivate(Hex.decode(cleanHex(hex)));
+        final String address = Hex.toHexString(key.getAddress());
+        return store(address, () -> keystore.keystoreFormat.toKeystore(key, password), claimed);
+    }
+
+    /**
+     * Content is rendered only by first task with given address, check and write are atomic
+     * for all bulk tools of keystore
+     */
+    private String store(String address, Supplier<String> content, Set<String> claimed) {
+        if (!claimed.add(address) || keystore.hasStoredKey(address)) {
+            return null;
+        }
+        final String json = content.get();
+        synchronized (keystore) {
+            if (keystore.hasStoredKey(address)) {
+                return null;
+            }
+            keystore.storeRawKeystore(json, address);
+        }
+        return address;
+    }
+
+    private static String cleanHex(String value) {
+        return (value.startsWith("0x") ? value.substring(2) : value).toLowerCase();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Getter
+    public static class ImportResult {
+
+        private final List<String> imported = new ArrayList<>();
+
+        private int skipped;
+
+        private final List<String> errors = new ArrayList<>();
+    }
+}
@@ -37,11 +37,18 @@ import java.util.UUID;
 
 /**
  * Converts private key and password to json content and vise versa.
+ * Key derivations are executed with {@link KdfExecutor} when it is set, on calling thread otherwise.
  */
 @Component
 @Slf4j(topic = "keystore")
 public class KeystoreFormat {
 
+    private KdfExecutor kdfExecutor;
+
+    public void setKdfExecutor(KdfExecutor kdfExecutor) {
+        this.kdfExecutor = kdfExecutor;
+    }
+
     public String toKeystore(final ECKey key, String password) {
         try {
             // n,r,p = 2^18, 8, 1 uses 256MB memory and approx 1s CPU time on a modern CPU.
@@ -195,11 +202,22 @@ public class KeystoreFormat {
         return c;
     }
 
-    private byte[] scrypt(byte[] pass, byte[] salt, int n, int r, int p, int dkLen) throws GeneralSecurityException {
-        return SCrypt.generate(pass, salt, n, r, p, dkLen);
+    private byte[] scrypt(byte[] pass, byte[] salt, int n, int r, int p, int dkLen) throws Exception {
+        if (kdfExecutor == null) {
+            return SCrypt.generate(pass, salt, n, r, p, dkLen);
+        }
+        return kdfExecutor.execute(KdfExecutor.scryptMemory(n, r, p), () -> SCrypt.generate(pass, salt, n, r, p, dkLen));
     }
 
     private byte[] hash(String encryptedData, byte[] salt, int iterations) throws Exception {
+        if (kdfExecutor == null) {
+            return pbkdf2(encryptedData, salt, iterations);
+        }
+        // memory of pbkdf2 is negligible, executor only bounds its CPU usage
+        return kdfExecutor.execute(0, () -> pbkdf2(encryptedData, salt, iterations));
+    }
+
+    private byte[] pbkdf2(String encryptedData, byte[] salt, int iterations) throws Exception {
         char[] chars = encryptedData.toCharArray();
         PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, 256);
         SecretKeyFactory skf = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
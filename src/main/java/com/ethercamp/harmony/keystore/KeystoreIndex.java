@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.keystore;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Index of key files by lowercase address, so keystore lookups don't list directory.
+ *
+ * Built by listing directory once, then kept current by watching directory for created and deleted files.
+ * Changes made through keystore are applied immediately, watching picks up files changed by other processes.
+ * When directory doesn't exist yet, watching starts after it is created by keystore.
+ */
+@Slf4j(topic = "keystore")
+class KeystoreIndex {
+
+    private static final Pattern ADDRESS = Pattern.compile("[0-9a-fA-F]{40}");
+
+    private final Path dir;
+
+    /**
+     * False when index is kept current only by changes made through keystore
+     */
+    private final boolean watching;
+
+    private final Map<String, File> files = new ConcurrentHashMap<>();
+
+    /**
+     * Guarded by this, null when directory is not watched
+     */
+    private WatchService watchService;
+
+    KeystoreIndex(Path dir) {
+        this(dir, true);
+    }
+
+    KeystoreIndex(Path dir, boolean watching) {
+        this.dir = dir;
+        this.watching = watching;
+        watch();
+        rebuild();
+    }
+
+    File get(String address) {
+        return files.get(address.toLowerCase());
+    }
+
+    Collection<String> getAddresses() {
+        return new ArrayList<>(files.keySet());
+    }
+
+    void add(File file) {
+        final String address = getAddress(file);
+        if (address != null) {
+            files.put(address, file);
+        }
+    }
+
+    void remove(File file) {
+        final String address = getAddress(file);
+        if (address != null) {
+            files.remove(address, file);
+        }
+    }
+
+    /**
+     * Starts watching directory, if it exists and is not watched yet
+     */
+    synchronized void watch() {
+        if (!watching || watchService != null || !dir.toFile().isDirectory()) return;
+
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.warn("Problem watching keystore directory " + dir + ", changes made outside are not visible", e);
+            close();
+            return;
+        }
+
+        final WatchService service = watchService;
+        final Thread thread = new Thread(() -> run(service), "keystore-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Problem closing keystore watch service", e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void run(WatchService service) {
+        while (true) {
+            final WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    rebuild();
+                    continue;
+                }
+                final File file = dir.resolve((Path) event.context()).toFile();
+                if (event.kind() == ENTRY_DELETE) {
+                    remove(file);
+                } else if (file.isFile()) {
+                    add(file);
+                }
+            }
+
+            if (!key.reset()) {
+                // directory was removed, it will be watched again when created by keystore
+                log.info("Keystore directory {} is not accessible anymore", dir);
+                close();
+                rebuild();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds missing files and removes deleted ones, index is not cleared, so lookups don't miss meanwhile
+     */
+    private void rebuild() {
+        final File[] list = dir.toFile().listFiles();
+        if (list != null) {
+            for (File file : list) {
+                final String address = file.isDirectory() ? null : getAddress(file);
+                if (address != null) {
+                    files.putIfAbsent(address, file);
+                }
+            }
+        }
+        files.values().removeIf(file -> !file.exists());
+    }
+
+    /**
+     * @return lowercase address from file name in format "UTC--{date}--{address}" or null
+     */
+    private static String getAddress(File file) {
+        final String[] parts = file.getName().split("--");
+        return parts.length == 3 && "UTC".equals(parts[0]) && ADDRESS.matcher(parts[2]).matches()
+                ? parts[2].toLowerCase()
+                : null;
+    }
+}
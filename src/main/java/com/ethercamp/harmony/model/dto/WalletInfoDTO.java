@@ -34,5 +34,10 @@ public class WalletInfoDTO {
 
     private final BigInteger totalAmount;
 
+    /**
+     * True if only changed addresses are included
+     */
+    private final boolean partial;
+
     private final List<WalletAddressDTO> addresses = new ArrayList();
 }
@@ -111,6 +111,9 @@ public class BlockchainInfoService implements ApplicationListener {
     @Autowired
     HarmonyProperties properties;
 
+    @Autowired
+    EventPipelineService eventPipeline;
+
     /**
      * Concurrent queue of last blocks.
      * Ethereum adds items when available.
@@ -158,7 +161,7 @@ public class BlockchainInfoService implements ApplicationListener {
          * - notify client on new block;
          * - track sync status.
          */
-        ethereum.addListener(new EthereumListenerAdapter() {
+        eventPipeline.addListener("dashboard", new EthereumListenerAdapter() {
             @Override
             public void onBlock(Block block, List<TransactionReceipt> receipts) {
                 addBlock(block);
@@ -169,13 +172,13 @@ public class BlockchainInfoService implements ApplicationListener {
             if ((lastBlock - i) < 1) continue;
             gasPriceTracker.replay(blockchain.getBlockByNumber(lastBlock - i));
         }
-        ethereum.addListener(gasPriceTracker);
+        eventPipeline.addListener("dashboard", gasPriceTracker);
 
         if (!config.isSyncEnabled()) {
             syncStatus = BlockchainInfoService.SyncStatus.DISABLED;
         } else {
             syncStatus = syncManager.isSyncDone() ? SyncStatus.SHORT_SYNC : SyncStatus.LONG_SYNC;
-            ethereum.addListener(new EthereumListenerAdapter() {
+            eventPipeline.addListener("dashboard", new EthereumListenerAdapter() {
                 @Override
                 public void onSyncDone(SyncState state) {
                     log.info("Sync done " + state);
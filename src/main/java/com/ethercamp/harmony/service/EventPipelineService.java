@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.service;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockSummary;
+import org.ethereum.core.PendingTransactionState;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.facade.Ethereum;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Moves handling of blockchain events out of EthereumJ event thread.
+ *
+ * Single listener is registered in EthereumJ, which only puts events into bounded queues of stages.
+ * Each stage (json-rpc filters, wallet, dashboard, etc) has own queue and worker thread,
+ * so slow stage doesn't delay other stages. When stage queue is full, EthereumJ event thread waits for it
+ * (backpressure), such waits are counted.
+ *
+ * Only block, pending transactions and sync done events are passed to stage listeners.
+ */
+@Slf4j(topic = "harmony")
+@Service
+public class EventPipelineService implements PublicMetrics {
+
+    @Autowired
+    Ethereum ethereum;
+
+    @Autowired
+    HarmonyProperties properties;
+
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    /**
+     * Number of last block received from EthereumJ
+     */
+    private volatile long bestBlockNumber = -1;
+
+    @PostConstruct
+    public void init() {
+        ethereum.addListener(new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                final long number = blockSummary.getBlock().getNumber();
+                bestBlockNumber = number;
+                publish(l -> l.onBlock(blockSummary), number);
+            }
+
+            @Override
+            public void onPendingTransactionsReceived(List<Transaction> transactions) {
+                publish(l -> l.onPendingTransactionsReceived(transactions), -1);
+            }
+
+            @Override
+            public void onPendingTransactionUpdate(TransactionReceipt txReceipt, PendingTransactionState state, Block block) {
+                publish(l -> l.onPendingTransactionUpdate(txReceipt, state, block), -1);
+            }
+
+            @Override
+            public void onSyncDone(SyncState state) {
+                publish(l -> l.onSyncDone(state), -1);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        stages.values().forEach(stage -> stage.worker.interrupt());
+    }
+
+    /**
+     * Subscribes listener to events of given stage. Listeners of one stage are called in subscription order
+     * on the stage worker thread.
+     */
+    public void addListener(String stageName, EthereumListener listener) {
+        stages.computeIfAbsent(stageName, name -> new Stage(name, properties.eventPipelineQueueSize()))
+                .listeners.add(listener);
+    }
+
+    private void publish(Consumer<EthereumListener> event, long blockNumber) {
+        final StageEvent stageEvent = new StageEvent(event, blockNumber);
+        for (Stage stage : stages.values()) {
+            stage.offer(stageEvent);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> result = new ArrayList<>();
+        for (Stage stage : stages.values()) {
+            final String prefix = "pipeline." + stage.name + ".";
+            result.add(new Metric<>(prefix + "queue", stage.queue.size()));
+            result.add(new Metric<>(prefix + "processed", stage.processed.get()));
+            result.add(new Metric<>(prefix + "blocked", stage.blockedCount.get()));
+            result.add(new Metric<>(prefix + "blockedMs", TimeUnit.NANOSECONDS.toMillis(stage.blockedNanos.get())));
+            result.add(new Metric<>(prefix + "lag", stage.getLag()));
+        }
+        return result;
+    }
+
+    private static class StageEvent {
+        final Consumer<EthereumListener> event;
+        final long blockNumber;
+
+        StageEvent(Consumer<EthereumListener> event, long blockNumber) {
+            this.event = event;
+            this.blockNumber = blockNumber;
+        }
+    }
+
+    private class Stage {
+        final String name;
+        final BlockingQueue<StageEvent> queue;
+        final List<EthereumListener> listeners = new CopyOnWriteArrayList<>();
+        final Thread worker;
+
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong blockedCount = new AtomicLong();
+        final AtomicLong blockedNanos = new AtomicLong();
+
+        /**
+         * Number of last block handled by stage listeners
+         */
+        volatile long processedBlockNumber = -1;
+
+        Stage(String name, int queueSize) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.worker = new Thread(this::run, "events-" + name);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        void offer(StageEvent event) {
+            if (queue.offer(event)) return;
+
+            blockedCount.incrementAndGet();
+            final long start = System.nanoTime();
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for events stage {}, event is dropped", name);
+            } finally {
+                blockedNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        long getLag() {
+            return processedBlockNumber < 0 ? 0 : Math.max(0, bestBlockNumber - processedBlockNumber);
+        }
+
+        private void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                final StageEvent event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                for (EthereumListener listener : listeners) {
+                    try {
+                        event.event.accept(listener);
+                    } catch (Exception e) {
+                        log.error("Problem handling event in stage " + name, e);
+                    }
+                }
+                if (event.blockNumber >= 0) {
+                    processedBlockNumber = event.blockNumber;
+                }
+                processed.incrementAndGet();
+            }
+        }
+    }
+}
@@ -22,10 +22,16 @@ import com.ethercamp.harmony.config.RpcEnabledCondition;
 import com.ethercamp.harmony.model.dto.MethodCallDTO;
 import com.ethercamp.harmony.jsonrpc.JsonRpc;
 import com.ethercamp.harmony.util.AppConst;
+import com.ethercamp.harmony.util.LatencyHistogram;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.InvocationListener;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.boot.context.embedded.EmbeddedServletContainerInitializedEvent;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationListener;
@@ -33,11 +39,19 @@ import org.springframework.context.annotation.Conditional;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
@@ -46,14 +60,29 @@ import java.util.stream.Stream;
 
 /**
  * Services for:
- *  - gathering statistics info of how many times RPC methods were called;
+ *  - gathering statistics info of how many times RPC methods were called,
+ *    invocations are reported by JSON-RPC server, so request and response are not parsed again;
+ *  - measuring latency, errors, in-flight calls and request/response sizes per method,
+ *    exposed as actuator metrics and in Prometheus text format;
  *  - pushing updates to client side;
  *  - reading curl examples from conf file.
  */
 @Service
 @Conditional(RpcEnabledCondition.class)
 @Slf4j(topic = "jsonrpc")
-public class JsonRpcUsageService implements ApplicationListener {
+public class JsonRpcUsageService implements ApplicationListener, InvocationListener, PublicMetrics {
+
+    private static final String BATCH = "batch";
+
+    private static final int MAX_LAST_RESULT_LENGTH = 4096;
+
+    private static final String TOO_LARGE_RESULT = "\"(result is too large to show)\"";
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private static final List<String> EXCLUDE_LOGS = Arrays.asList("eth_getLogs", "eth_getFilterLogs",
+            "personal_newAccount", "personal_importRawKey", "personal_unlockAccount", "personal_signAndSendTransaction",
+            "ethj_importKeys");
 
     @Autowired
     JsonRpc jsonRpc;
@@ -63,6 +92,25 @@ public class JsonRpcUsageService implements ApplicationListener {
 
     private final Map<String, CallStats> stats = new ConcurrentHashMap();
 
+    /**
+     * Sizes of batch requests, which could not be accounted to single method
+     */
+    private final CallStats batchStats = new CallStats(BATCH, 0L, null, null);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Methods invoked while handling current HTTP request, not set for threads executing batch requests
+     */
+    private final ThreadLocal<List<String>> requestMethods = new ThreadLocal<>();
+
+    /**
+     * Start of method invocation on current thread, in nanoseconds
+     */
+    private final ThreadLocal<Long> invocationStart = new ThreadLocal<>();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
     private void init(int port) {
         final String serverUrl = "http://localhost:" + port + AppConst.JSON_RPC_PATH;
 
@@ -136,6 +184,83 @@ public class JsonRpcUsageService implements ApplicationListener {
         clientMessageService.sendToTopic("/topic/rpcUsage", items);
     }
 
+    /**
+     * Called by JSON-RPC filter before request is passed to server.
+     */
+    public void requestStarted() {
+        requestMethods.set(new ArrayList<>());
+    }
+
+    /**
+     * Called by JSON-RPC filter when response is written.
+     * Sizes are accounted to invoked method, sizes of batch requests are accounted to {@link #BATCH}.
+     */
+    public void requestFinished(long requestBytes, long responseBytes, boolean batch) {
+        final List<String> methods = requestMethods.get();
+        requestMethods.remove();
+
+        final CallStats callStats = batch ? batchStats
+                : methods != null && methods.size() == 1 ? stats.get(methods.get(0)) : null;
+        if (callStats != null) {
+            callStats.requestBytes.add(requestBytes);
+            callStats.responseBytes.add(responseBytes);
+        }
+    }
+
+    @Override
+    public void willInvoke(Method method, List<JsonNode> arguments) {
+        final CallStats callStats = stats.get(method.getName());
+        if (callStats != null) {
+            callStats.inFlight.incrementAndGet();
+        }
+        inFlight.incrementAndGet();
+        invocationStart.set(System.nanoTime());
+    }
+
+    @Override
+    public void didInvoke(Method method, List<JsonNode> arguments, Object result, Throwable t, long duration) {
+        inFlight.decrementAndGet();
+        final Long started = invocationStart.get();
+        invocationStart.remove();
+
+        final String methodName = method.getName();
+        final List<String> methods = requestMethods.get();
+        if (methods != null) {
+            methods.add(methodName);
+        }
+        final CallStats callStats = stats.get(methodName);
+        if (callStats != null) {
+            callStats.inFlight.decrementAndGet();
+            // duration of server is in whole milliseconds, so most calls would be recorded as 0
+            if (started != null) {
+                callStats.latency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            } else {
+                callStats.latency.record(duration, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (t != null) {
+            if (callStats != null) {
+                callStats.errors.increment();
+            }
+            log.warn("Problem when invoking JSON-RPC " + methodName + "(" + joinParams(arguments) + "): " + t.getMessage());
+            return;
+        }
+
+        // result is rendered once with length limit, both for log and for stats
+        final boolean logResult = log.isInfoEnabled() && !EXCLUDE_LOGS.contains(methodName);
+        if (!logResult && callStats == null) return;
+
+        final String resultJson = toJson(result, MAX_LAST_RESULT_LENGTH);
+        // passwords could be sent here, logging of such methods is handled manually in service
+        if (logResult) {
+            log.info(methodName + "(" + joinParams(arguments) + "): " + resultJson);
+        }
+        if (callStats != null) {
+            methodInvoked(methodName, resultJson);
+        }
+    }
+
     /**
      * Account method invocation into statistics.
      */
@@ -153,6 +278,142 @@ public class JsonRpcUsageService implements ApplicationListener {
         // do not track stats for non existing methods
     }
 
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> result = new ArrayList<>();
+        result.add(new Metric<>("rpc.inFlight", inFlight.get()));
+        for (CallStats stat : getCalledMethodsStats()) {
+            final String prefix = "rpc.method." + stat.name + ".";
+            result.add(new Metric<>(prefix + "count", stat.latency.getCount()));
+            result.add(new Metric<>(prefix + "errors", stat.errors.sum()));
+            result.add(new Metric<>(prefix + "inFlight", stat.inFlight.get()));
+            result.add(new Metric<>(prefix + "p50Us", stat.latency.getValueAtQuantile(0.5)));
+            result.add(new Metric<>(prefix + "p99Us", stat.latency.getValueAtQuantile(0.99)));
+            result.add(new Metric<>(prefix + "p999Us", stat.latency.getValueAtQuantile(0.999)));
+            result.add(new Metric<>(prefix + "maxUs", stat.latency.getMax()));
+            result.add(new Metric<>(prefix + "requestBytes", stat.requestBytes.sum()));
+            result.add(new Metric<>(prefix + "responseBytes", stat.responseBytes.sum()));
+        }
+        return result;
+    }
+
+    /**
+     * Renders metrics in Prometheus text exposition format.
+     */
+    public String renderPrometheusMetrics() {
+        final List<CallStats> called = getCalledMethodsStats();
+        final StringBuilder out = new StringBuilder();
+
+        out.append("# HELP harmony_rpc_in_flight JSON-RPC calls being executed\n");
+        out.append("# TYPE harmony_rpc_in_flight gauge\n");
+        out.append("harmony_rpc_in_flight ").append(inFlight.get()).append('\n');
+
+        out.append("# HELP harmony_rpc_method_in_flight JSON-RPC calls being executed per method\n");
+        out.append("# TYPE harmony_rpc_method_in_flight gauge\n");
+        called.forEach(stat -> appendSample(out, "harmony_rpc_method_in_flight", stat.name, null, stat.inFlight.get()));
+
+        out.append("# HELP harmony_rpc_errors_total Failed JSON-RPC calls\n");
+        out.append("# TYPE harmony_rpc_errors_total counter\n");
+        called.forEach(stat -> appendSample(out, "harmony_rpc_errors_total", stat.name, null, stat.errors.sum()));
+
+        out.append("# HELP harmony_rpc_latency_seconds JSON-RPC call duration\n");
+        out.append("# TYPE harmony_rpc_latency_seconds summary\n");
+        for (CallStats stat : called) {
+            for (double quantile : QUANTILES) {
+                appendSample(out, "harmony_rpc_latency_seconds", stat.name, quantile,
+                        stat.latency.getValueAtQuantile(quantile) / 1e6);
+            }
+            appendSample(out, "harmony_rpc_latency_seconds_sum", stat.name, null, stat.latency.getSum() / 1e6);
+            appendSample(out, "harmony_rpc_latency_seconds_count", stat.name, null, stat.latency.getCount());
+        }
+
+        out.append("# HELP harmony_rpc_request_bytes_total Size of JSON-RPC requests\n");
+        out.append("# TYPE harmony_rpc_request_bytes_total counter\n");
+        called.forEach(stat -> appendSample(out, "harmony_rpc_request_bytes_total", stat.name, null, stat.requestBytes.sum()));
+        appendSample(out, "harmony_rpc_request_bytes_total", BATCH, null, batchStats.requestBytes.sum());
+
+        out.append("# HELP harmony_rpc_response_bytes_total Size of JSON-RPC responses\n");
+        out.append("# TYPE harmony_rpc_response_bytes_total counter\n");
+        called.forEach(stat -> appendSample(out, "harmony_rpc_response_bytes_total", stat.name, null, stat.responseBytes.sum()));
+        appendSample(out, "harmony_rpc_response_bytes_total", BATCH, null, batchStats.responseBytes.sum());
+
+        return out.toString();
+    }
+
+    private static void appendSample(StringBuilder out, String name, String method, Double quantile, Number value) {
+        out.append(name).append("{method=\"").append(method).append('"');
+        if (quantile != null) {
+            out.append(",quantile=\"").append(quantile).append('"');
+        }
+        out.append("} ").append(value).append('\n');
+    }
+
+    private List<CallStats> getCalledMethodsStats() {
+        return stats.values().stream()
+                .filter(stat -> stat.latency.getCount() > 0)
+                .sorted(Comparator.comparing(stat -> stat.name))
+                .collect(Collectors.toList());
+    }
+
+    private static String joinParams(List<JsonNode> arguments) {
+        return arguments == null ? "" : arguments.stream()
+                .map(JsonNode::asText)
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * @return JSON of result or placeholder, when JSON is longer than max length
+     */
+    private String toJson(Object result, int maxLength) {
+        final LimitedWriter writer = new LimitedWriter(maxLength);
+        try {
+            mapper.writeValue(writer, result);
+            return writer.toString();
+        } catch (IOException e) {
+            return writer.isLimitReached() ? TOO_LARGE_RESULT : null;
+        }
+    }
+
+    /**
+     * Stops writing with exception when max length is reached, so large results are not rendered in full.
+     */
+    private static class LimitedWriter extends Writer {
+
+        private final StringBuilder buffer = new StringBuilder();
+        private final int maxLength;
+        private boolean limitReached;
+
+        LimitedWriter(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (buffer.length() + len > maxLength) {
+                limitReached = true;
+                throw new IOException("Max length reached");
+            }
+            buffer.append(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        boolean isLimitReached() {
+            return limitReached;
+        }
+
+        @Override
+        public String toString() {
+            return buffer.toString();
+        }
+    }
+
     static class CallStats {
 
         public String name;
@@ -162,10 +423,21 @@ public class JsonRpcUsageService implements ApplicationListener {
         // time called last time in ms
         public AtomicLong lastCall = new AtomicLong();
 
+        // rendered result, only short results are kept
         public AtomicReference<String> lastResult = new AtomicReference<>();
 
         public String curl;
 
+        public LongAdder errors = new LongAdder();
+
+        public AtomicInteger inFlight = new AtomicInteger();
+
+        public LatencyHistogram latency = new LatencyHistogram();
+
+        public LongAdder requestBytes = new LongAdder();
+
+        public LongAdder responseBytes = new LongAdder();
+
         public CallStats(String name, long lastCallTime, String lastResultString, String curl) {
             this.name = name;
             lastCall.set(lastCallTime);
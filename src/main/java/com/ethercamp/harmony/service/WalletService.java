@@ -21,6 +21,8 @@ package com.ethercamp.harmony.service;
 import com.ethercamp.harmony.model.dto.WalletAddressDTO;
 import com.ethercamp.harmony.model.dto.WalletConfirmTransactionDTO;
 import com.ethercamp.harmony.model.dto.WalletInfoDTO;
+import com.ethercamp.harmony.jsonrpc.KeySessionCache;
+import com.ethercamp.harmony.jsonrpc.SigningService;
 import com.ethercamp.harmony.keystore.Keystore;
 import com.ethercamp.harmony.model.Account;
 import com.ethercamp.harmony.service.wallet.FileSystemWalletStore;
@@ -33,7 +35,6 @@ import org.ethereum.core.BlockSummary;
 import org.ethereum.core.Blockchain;
 import org.ethereum.core.Transaction;
 import org.ethereum.crypto.ECKey;
-import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.facade.Ethereum;
 import org.ethereum.facade.Repository;
 import org.ethereum.listener.EthereumListenerAdapter;
@@ -56,6 +57,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -69,6 +71,12 @@ import java.util.stream.Stream;
  *  - show pending balance;
  *  - notify client if interesting tx was included in block.
  *
+ * Balances and pending changes of addresses are kept in table, which is updated incrementally:
+ * balances are re-read only for addresses touched by block transactions or rewards,
+ * pending changes are adjusted when pending transactions are added or confirmed.
+ * Only changed addresses are pushed to client, full wallet is pushed when addresses are added or removed.
+ * Balances could change without wallet transactions (contract transfers), so all of them are re-read periodically.
+ *
  * This class operate with addresses in lowercase form without 0x prefix.
  *
  * Created by Stan Reshetnyk on 24.08.16.
@@ -82,6 +90,9 @@ public class WalletService {
     @Autowired
     Ethereum ethereum;
 
+    @Autowired
+    EventPipelineService eventPipeline;
+
     @Autowired
     Repository repository;
 
@@ -97,6 +108,15 @@ public class WalletService {
     @Autowired
     Keystore keystore;
 
+    /**
+     * Available when RPC is enabled
+     */
+    @Autowired(required = false)
+    KeySessionCache keySessionCache;
+
+    @Autowired(required = false)
+    SigningService signingService;
+
     @Autowired
     Environment env;
 
@@ -120,6 +140,12 @@ public class WalletService {
     final Map<String, TransactionInfo> pendingSendTransactions = new ConcurrentHashMap<>();
     final Map<String, TransactionInfo> pendingReceiveTransactions = new ConcurrentHashMap<>();
 
+    /**
+     * key - hex address in lower case
+     * value - balance and pending changes of address
+     */
+    final Map<String, AddressBalance> balances = new ConcurrentHashMap<>();
+
     private boolean subscribedForEvents;
 
     @PostConstruct
@@ -137,7 +163,7 @@ public class WalletService {
         if (config.minerStart()) {
             subscribeOnce();
         } else {
-            ethereum.addListener(new EthereumListenerAdapter() {
+            eventPipeline.addListener("wallet", new EthereumListenerAdapter() {
                 @Override
                 public void onSyncDone(SyncState state) {
                     if (state == SyncState.UNSECURE || state == SyncState.COMPLETE) {
@@ -151,7 +177,7 @@ public class WalletService {
     private void subscribeOnce() {
         if (!subscribedForEvents) {
             subscribedForEvents = true;
-            ethereum.addListener(new EthereumListenerAdapter() {
+            eventPipeline.addListener("wallet", new EthereumListenerAdapter() {
                 @Override
                 public void onPendingTransactionsReceived(List<Transaction> list) {
                     handlePendingTransactionsReceived(list);
@@ -166,13 +192,13 @@ public class WalletService {
     }
 
     public void handleBlock(BlockSummary blockSummary) {
-        checkForChangesInWallet(blockSummary,
+        final Set<String> touched = checkForChangesInWallet(
                 blockSummary
                         .getReceipts().stream()
                         .map(receipt -> receipt.getTransaction())
                         .collect(Collectors.toList()),
                 (info) -> {
-                    pendingSendTransactions.remove(info.getHash());
+                    removePending(pendingSendTransactions, info.getHash(), true);
                     if (!syncManager.isSyncDone()) {
                         clientMessageService.sendToTopic("/topic/confirmTransaction", new WalletConfirmTransactionDTO(
                                 info.getHash(),
@@ -181,64 +207,104 @@ public class WalletService {
                         ));
                     }
                 },
-                (info) -> pendingReceiveTransactions.remove(info.getHash()));
+                (info) -> removePending(pendingReceiveTransactions, info.getHash(), false));
+
+        // check if balance changes due to block reward
+        final List<byte[]> rewarded = new ArrayList<>();
+        rewarded.add(blockSummary.getBlock().getCoinbase());
+        if (blockSummary.getRewards() != null) {
+            rewarded.addAll(blockSummary.getRewards().keySet());
+        }
+        rewarded.stream()
+                .filter(address -> isWalletAddress(address))
+                .forEach(address -> touched.add(toHexString(address)));
+
+        touched.forEach(address -> updateBalance(address));
+        sendWalletChanges(touched);
     }
 
     public void handlePendingTransactionsReceived(List<Transaction> list) {
-        checkForChangesInWallet(null,
+        final Set<String> touched = checkForChangesInWallet(
                 list,
-                (info) -> pendingSendTransactions.put(info.getHash(), info),
-                (info) -> pendingReceiveTransactions.put(info.getHash(), info));
+                (info) -> addPending(pendingSendTransactions, info, true),
+                (info) -> addPending(pendingReceiveTransactions, info, false));
+        sendWalletChanges(touched);
     }
 
-    private void checkForChangesInWallet(BlockSummary blockSummary, List<Transaction> transactions, Consumer<TransactionInfo> sendHandler, Consumer<TransactionInfo> receiveHandler) {
-        final Set<ByteArrayWrapper> subscribed = addresses.keySet().stream()
-                .map(a -> cleanAddress(a))
-                .flatMap(a -> {
-                    try {
-                        return Stream.of(new ByteArrayWrapper(Hex.decode(a)));
-                    } catch (Exception e) {
-                        log.error("Problem getting bytes representation from " + a);
-                        return Stream.empty();
-                    }
-                })
-                .collect(Collectors.toSet());
-
-        final List<Transaction> confirmedTransactions = transactions.stream()
-                .filter(transaction ->
-                        isSetContains(subscribed, transaction.getReceiveAddress())
-                            || isSetContains(subscribed, transaction.getSender()))
-                .collect(Collectors.toList());
+    /**
+     * @return wallet addresses, which are senders or receivers of transactions
+     */
+    private Set<String> checkForChangesInWallet(List<Transaction> transactions, Consumer<TransactionInfo> sendHandler, Consumer<TransactionInfo> receiveHandler) {
+        final Set<String> touched = new HashSet<>();
+        transactions.forEach(transaction -> {
+            final boolean hasSender = isWalletAddress(transaction.getSender());
+            final boolean hasReceiver = isWalletAddress(transaction.getReceiveAddress());
+            if (!hasSender && !hasReceiver) return;
 
-        confirmedTransactions.forEach(transaction -> {
             final String hash = toHexString(transaction.getHash());
             final BigInteger amount = ByteUtil.bytesToBigInteger(transaction.getValue());
-            final boolean hasSender = isSetContains(subscribed, transaction.getSender());
-            final boolean hasReceiver = isSetContains(subscribed, transaction.getReceiveAddress());
             log.debug("Handle transaction hash:" + hash + ", hasSender:" + hasSender + ", amount:" + amount);
 
             if (hasSender) {
-                sendHandler.accept(new TransactionInfo(hash, amount, hasSender, toHexString(transaction.getSender())));
+                final String sender = toHexString(transaction.getSender());
+                touched.add(sender);
+                sendHandler.accept(new TransactionInfo(hash, amount, hasSender, sender));
             }
             if (hasReceiver) {
-                receiveHandler.accept(new TransactionInfo(hash, amount, hasSender, toHexString(transaction.getReceiveAddress())));
+                final String receiver = toHexString(transaction.getReceiveAddress());
+                touched.add(receiver);
+                receiveHandler.accept(new TransactionInfo(hash, amount, hasSender, receiver));
             }
         });
+        return touched;
+    }
 
-        // check if balance changes due to block reward
-        final Optional<ByteArrayWrapper> coinbase = Optional.ofNullable(blockSummary).map(bs -> new ByteArrayWrapper(bs.getBlock().getCoinbase()));
-        final Boolean matchCoinbase = coinbase.map(c -> subscribed.stream().anyMatch(a -> c.equals(a))).orElse(false);
+    private void addPending(Map<String, TransactionInfo> transactions, TransactionInfo info, boolean sending) {
+        if (transactions.put(info.getHash(), info) == null) {
+            getBalance(info.getAddress()).addPending(info.getAmount(), sending);
+        }
+    }
 
-        final boolean needToSendUpdate = matchCoinbase || !confirmedTransactions.isEmpty();
-        if (needToSendUpdate) {
-            // update wallet if transactions are related to wallet addresses
-            clientMessageService.sendToTopic("/topic/getWalletInfo", getWalletInfo());
+    private void removePending(Map<String, TransactionInfo> transactions, String hash, boolean sending) {
+        final TransactionInfo info = transactions.remove(hash);
+        final AddressBalance entry = info == null ? null : balances.get(info.getAddress());
+        if (entry != null) {
+            entry.removePending(info.getAmount(), sending);
         }
     }
 
     @Scheduled(fixedRate = 60000)
     private void doSendWalletInfo() {
-        clientMessageService.sendToTopic("/topic/getWalletInfo", getWalletInfo());
+        final Set<String> changed = addresses.keySet().stream()
+                .filter(address -> updateBalance(address))
+                .collect(Collectors.toSet());
+        sendWalletChanges(changed);
+    }
+
+    /**
+     * Re-reads balance of address
+     * @return true if balance changed
+     */
+    private boolean updateBalance(String hexAddress) {
+        final AddressBalance entry = balances.get(hexAddress);
+        if (entry == null) {
+            // not read yet, will be read on first access
+            return false;
+        }
+        return entry.setBalance(repository.getBalance(Hex.decode(hexAddress)));
+    }
+
+    private AddressBalance getBalance(String hexAddress) {
+        return balances.computeIfAbsent(hexAddress, a -> new AddressBalance(repository.getBalance(Hex.decode(a))));
+    }
+
+    /**
+     * Pushes changed wallet addresses only
+     */
+    private void sendWalletChanges(Set<String> changed) {
+        if (changed.isEmpty()) return;
+
+        clientMessageService.sendToTopic("/topic/getWalletInfo", getWalletInfo(changed::contains, true));
     }
 
     private String cleanAddress(String input) {
@@ -252,23 +318,37 @@ public class WalletService {
     }
 
     public WalletInfoDTO getWalletInfo() {
+        return getWalletInfo(address -> true, false);
+    }
+
+    /**
+     * @param filter    selects addresses to render
+     * @param partial   if true, client merges addresses into already shown ones
+     */
+    private WalletInfoDTO getWalletInfo(Predicate<String> filter, boolean partial) {
         BigInteger gasPrice = BigInteger.valueOf(ethereum.getGasPrice());
         BigInteger txFee = gasLimit.multiply(gasPrice);
 
         List<WalletAddressDTO> list = addresses.entrySet().stream()
+                .filter(e -> filter.test(e.getKey()))
                 .flatMap(e -> {
                     final String hexAddress = e.getKey();
                     try {
-                        final byte[] address = Hex.decode(hexAddress);
-                        final BigInteger balance = repository.getBalance(address);
-                        final BigInteger sendBalance = calculatePendingChange(pendingSendTransactions, hexAddress, txFee);
-                        final BigInteger receiveBalance = calculatePendingChange(pendingReceiveTransactions, hexAddress, BigInteger.ZERO);
+                        final AddressBalance entry = getBalance(hexAddress);
+                        final BigInteger balance;
+                        final BigInteger pendingAmount;
+                        synchronized (entry) {
+                            balance = entry.balance;
+                            pendingAmount = entry.pendingReceiveAmount
+                                    .subtract(entry.pendingSendAmount)
+                                    .subtract(txFee.multiply(BigInteger.valueOf(entry.pendingSendCount)));
+                        }
 
                         return Stream.of(new WalletAddressDTO(
                                 e.getValue(),
                                 e.getKey(),
                                 balance,
-                                receiveBalance.subtract(sendBalance),
+                                pendingAmount,
                                 keystore.hasStoredKey(e.getKey())));
                     } catch (Exception exception) {
                         log.error("Error in making wallet address " + hexAddress, exception);
@@ -277,23 +357,19 @@ public class WalletService {
                 })
                 .collect(Collectors.toList());
 
-        BigInteger totalAmount = list.stream()
-                .map(t -> t.getAmount())
+        // partial info contains only some of addresses, while total is shown for whole wallet
+        BigInteger totalAmount = addresses.keySet().stream()
+                .map(a -> balances.get(a))
+                .filter(Objects::nonNull)
+                .map(b -> b.balance)
                 .reduce(BigInteger.ZERO, (state, amount) -> state.add(amount));
 
-        WalletInfoDTO result = new WalletInfoDTO(totalAmount);
+        WalletInfoDTO result = new WalletInfoDTO(totalAmount, partial);
 
         result.getAddresses().addAll(list);
         return result;
     }
 
-    private BigInteger calculatePendingChange(Map<String, TransactionInfo> transactions, String hexAddress, BigInteger txFee) {
-        return transactions.values().stream()
-                .filter(info -> info.getAddress().equals(hexAddress))
-                .map(info -> info.getAmount())
-                .reduce(BigInteger.ZERO, (state, amount) -> state.add(amount).add(txFee));
-    }
-
     /**
      * Generate new key and address. Key will be kept in keystore.
      */
@@ -348,6 +424,31 @@ public class WalletService {
         return account;
     }
 
+    /**
+     * Adds addresses of keys imported into keystore in bulk (with auto-generated names),
+     * wallet is stored and sent to client once.
+     */
+    public void addKeystoreAddresses(Collection<String> keystoreAddresses) {
+        final Set<String> names = new HashSet<>(addresses.values());
+        int i = 1;
+        for (String value : keystoreAddresses) {
+            final String address = cleanAddress(value);
+            if (addresses.containsKey(address)) continue;
+
+            while (names.contains(String.format("Account #%s", i))) {
+                ++i;
+            }
+            final String name = String.format("Account #%s", i);
+            names.add(name);
+            addresses.put(address, name);
+        }
+        log.info("Added " + keystoreAddresses.size() + " keystore addresses");
+
+        flushWalletToDisk();
+
+        clientMessageService.sendToTopic("/topic/getWalletInfo", getWalletInfo());
+    }
+
     /**
      * Import address without keeping key on server.
      */
@@ -381,6 +482,16 @@ public class WalletService {
         final String address = cleanAddress(value);
         addresses.remove(address);
         keystore.removeKey(address);
+        // decrypted copies of removed key could still sign RPC transactions
+        if (keySessionCache != null) {
+            keySessionCache.evict(address);
+        }
+        if (signingService != null) {
+            signingService.lock(address);
+        }
+        balances.remove(address);
+        pendingSendTransactions.values().removeIf(info -> info.getAddress().equals(address));
+        pendingReceiveTransactions.values().removeIf(info -> info.getAddress().equals(address));
 
         flushWalletToDisk();
 
@@ -412,8 +523,8 @@ public class WalletService {
         return value == null ? "" : Hex.toHexString(value);
     }
 
-    private boolean isSetContains(Set<ByteArrayWrapper> set, byte[] value) {
-        return value != null && set.contains(new ByteArrayWrapper(value));
+    private boolean isWalletAddress(byte[] value) {
+        return value != null && addresses.containsKey(Hex.toHexString(value));
     }
 
     private void flushWalletToDisk() {
@@ -434,4 +545,52 @@ public class WalletService {
 
         private String address;
     }
+
+    /**
+     * Balance of address and sums of its pending transactions
+     */
+    static class AddressBalance {
+
+        volatile BigInteger balance;
+
+        BigInteger pendingSendAmount = BigInteger.ZERO;
+
+        /**
+         * Fee of pending transaction is counted on render, as gas price changes
+         */
+        int pendingSendCount;
+
+        BigInteger pendingReceiveAmount = BigInteger.ZERO;
+
+        AddressBalance(BigInteger balance) {
+            this.balance = balance;
+        }
+
+        /**
+         * @return true if balance changed
+         */
+        synchronized boolean setBalance(BigInteger value) {
+            final boolean changed = !value.equals(balance);
+            balance = value;
+            return changed;
+        }
+
+        synchronized void addPending(BigInteger amount, boolean sending) {
+            if (sending) {
+                pendingSendAmount = pendingSendAmount.add(amount);
+                pendingSendCount++;
+            } else {
+                pendingReceiveAmount = pendingReceiveAmount.add(amount);
+            }
+        }
+
+        synchronized void removePending(BigInteger amount, boolean sending) {
+            if (sending) {
+                pendingSendAmount = pendingSendAmount.subtract(amount);
+                pendingSendCount--;
+            } else {
+                pendingReceiveAmount = pendingReceiveAmount.subtract(amount);
+            }
+        }
+    }
 }
@@ -31,6 +31,7 @@ import com.ethercamp.contrdata.storage.dictionary.StorageDictionaryDb;
 import com.ethercamp.contrdata.storage.dictionary.StorageDictionaryVmHook;
 import com.ethercamp.harmony.config.HarmonyProperties;
 import com.ethercamp.harmony.service.BlockchainConsts;
+import com.ethercamp.harmony.service.EventPipelineService;
 import com.ethercamp.harmony.util.SolcUtils;
 import com.ethercamp.harmony.util.TrustSSL;
 import com.ethercamp.harmony.util.exception.ContractException;
@@ -129,6 +130,9 @@ public class ContractsServiceImpl implements ContractsService {
     @Autowired
     Ethereum ethereum;
 
+    @Autowired
+    EventPipelineService eventPipeline;
+
     @Autowired
     Storage storage;
 
@@ -167,7 +171,7 @@ public class ContractsServiceImpl implements ContractsService {
 
         syncedBlock.ifPresent(syncStart -> log.info("Contract service is set to track from block #{}", syncStart));
 
-        ethereum.addListener(new EthereumListenerAdapter() {
+        eventPipeline.addListener("contracts", new EthereumListenerAdapter() {
             @Override
             public void onBlock(Block block, List<TransactionReceipt> receipts) {
 
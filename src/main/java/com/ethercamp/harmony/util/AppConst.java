@@ -26,4 +26,19 @@ public class AppConst {
     public final static String JSON_RPC_PATH = "/rpc";
 
     public final static String JSON_RPC_ALIAS_PATH = "/";
+
+    /**
+     * Streaming endpoint for ethj_getLogs, response is written while logs are found
+     */
+    public final static String JSON_RPC_LOGS_PATH = "/rpc/logs";
+
+    /**
+     * JSON-RPC metrics in Prometheus text format
+     */
+    public final static String JSON_RPC_METRICS_PATH = "/rpc/metrics";
+
+    /**
+     * JSON-RPC over WebSocket, supports eth_subscribe
+     */
+    public final static String JSON_RPC_WS_PATH = "/rpc/ws";
 }
@@ -19,12 +19,9 @@
 package com.ethercamp.harmony.web.filter;
 
 import com.ethercamp.harmony.config.RpcEnabledCondition;
+import com.ethercamp.harmony.jsonrpc.JsonRpcBatchExecutor;
 import com.ethercamp.harmony.service.JsonRpcUsageService;
 import com.ethercamp.harmony.util.AppConst;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Conditional;
 
@@ -34,31 +31,33 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
-import java.io.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.IOException;
 
 /**
- * Intercept JSON-RPC requests and updates usage stats.
- *  - use custom request wrapper to allow read input stream multiple times;
- *  - use custom response wrapper to allow read output stream multiple times.
+ * Intercept JSON-RPC requests to keep response status compliant with spec
+ * and to count request and response sizes.
+ * Batch requests are passed to {@link JsonRpcBatchExecutor}, which executes them in parallel.
+ *
+ * Usage stats and logging are handled by {@link JsonRpcUsageService},
+ * which is notified by JSON-RPC server, so request and response are passed through as is
+ * and response is streamed to client without copying.
  *
  * Created by Stan Reshetnyk on 22.07.16.
  */
-@Slf4j(topic = "jsonrpc")
 @WebFilter(urlPatterns = AppConst.JSON_RPC_PATH)
 @Conditional(RpcEnabledCondition.class)
 public class JsonRpcUsageFilter implements Filter {
 
-    private static final List<String> EXCLUDE_LOGS = Arrays.asList("eth_getLogs", "eth_getFilterLogs",
-            "personal_newAccount", "personal_importRawKey", "personal_unlockAccount", "personal_signAndSendTransaction");
+    /**
+     * Same as used by jsonrpc4j server
+     */
+    private static final String BATCH_CONTENT_TYPE = "application/json-rpc";
 
     @Autowired
     JsonRpcUsageService jsonRpcUsageService;
 
-    final ObjectMapper mapper = new ObjectMapper();
+    @Autowired
+    JsonRpcBatchExecutor jsonRpcBatchExecutor;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
@@ -71,51 +70,20 @@ public class JsonRpcUsageFilter implements Filter {
             final HttpServletRequest httpRequest = (HttpServletRequest) request;
             final HttpServletResponse httpResponse = (HttpServletResponse) response;
 
-            // don't count alias as it redirects here
-            final boolean isJsonRpcUrl = AppConst.JSON_RPC_PATH.equals(httpRequest.getRequestURI());
-
-            if (isJsonRpcUrl && httpRequest.getMethod().equalsIgnoreCase("POST")) {
-
+            if (httpRequest.getMethod().equalsIgnoreCase("POST")) {
+                final CountingRequest countingRequest = new CountingRequest(httpRequest);
+                final JsonRpcStatusResponse countingResponse = new JsonRpcStatusResponse(httpResponse);
+                final boolean batch = countingRequest.isBatch();
+                jsonRpcUsageService.requestStarted();
                 try {
-                    final ResettableStreamHttpServletRequest wrappedRequest = new ResettableStreamHttpServletRequest(
-                            httpRequest);
-
-                    final String body = IOUtils.toString(wrappedRequest.getReader());
-
-                    wrappedRequest.resetInputStream();
-
-                    if (response.getCharacterEncoding() == null) {
-                        response.setCharacterEncoding("UTF-8");
-                    }
-                    final HttpServletResponseCopier responseCopier = new HttpServletResponseCopier(httpResponse);
-
-                    try {
-                        chain.doFilter(wrappedRequest, responseCopier);
-                        responseCopier.flushBuffer();
-                    } finally {
-                        // read response for stats and log
-                        final byte[] copy = responseCopier.getCopy();
-                        final String responseText = new String(copy, response.getCharacterEncoding());
-
-                        final JsonNode json = mapper.readTree(body);
-                        final JsonNode responseJson = mapper.readTree(responseText);
-
-                        if (json.isArray()) {
-                            for (int i = 0; i < json.size(); i++) {
-                                notifyInvocation(json.get(i), responseJson.get(i));
-                            }
-                        } else {
-                            notifyInvocation(json, responseJson);
-                        }
-
-                        // According to spec, JSON-RPC 2 should return status 200 in case of error
-                        if (httpResponse.getStatus() == 500) {
-                            httpResponse.setStatus(200);
-                        }
+                    if (batch) {
+                        countingResponse.setContentType(BATCH_CONTENT_TYPE);
+                        jsonRpcBatchExecutor.execute(countingRequest.getInputStream(), countingResponse.getOutputStream());
+                    } else {
+                        chain.doFilter(countingRequest, countingResponse);
                     }
-
-                } catch (IOException e) {
-                    log.error("Error parsing JSON-RPC request", e);
+                } finally {
+                    jsonRpcUsageService.requestFinished(countingRequest.getCount(), countingResponse.getCount(), batch);
                 }
             } else {
                 chain.doFilter(request, response);
@@ -125,205 +93,175 @@ public class JsonRpcUsageFilter implements Filter {
         }
     }
 
-    private void notifyInvocation(JsonNode requestJson, JsonNode responseJson) throws IOException {
-        if (responseJson.has("error")) {
-            final String errorMessage = responseJson.get("error").toString();
-            log.warn("Problem when invoking JSON-RPC " + requestJson.toString() + " response:" + errorMessage);
-        } else {
-            final String methodName = requestJson.get("method").asText();
-            final List<JsonNode> params = new ArrayList<>();
-            if (requestJson.has("params")) {
-                requestJson.get("params")
-                        .forEach(n -> params.add(n));
-            }
-
-            final String responseText = mapper.writeValueAsString(responseJson);
-            jsonRpcUsageService.methodInvoked(methodName, responseText);
-
-            if (log.isInfoEnabled()) {
-                // passwords could be sent here
-                if (!EXCLUDE_LOGS.contains(methodName)) {
-                    log.info(methodName + "(" + params.stream()
-                            .map(n -> n.asText())
-                            .collect(Collectors.joining(", ")) + "): " + responseText);
-                } else {
-                    // logging is handled manually in service
-                }
-            }
-        }
-    }
-
-    private String dumpToString(JsonNode n) {
-        if (n.isTextual()) {
-            return n.asText();
-        } else {
-            try {
-                return mapper.writeValueAsString(n);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }
-    }
-
-
     @Override
     public void destroy() {
 
     }
 
+    /**
+     * According to spec, JSON-RPC 2 should return status 200 in case of error
+     */
+    private static class JsonRpcStatusResponse extends HttpServletResponseWrapper {
 
-    private static class ResettableStreamHttpServletRequest extends
-            HttpServletRequestWrapper {
-
-        private byte[] rawData;
-        private HttpServletRequest request;
-        private ResettableServletInputStream servletStream;
-
-        public ResettableStreamHttpServletRequest(HttpServletRequest request) {
-            super(request);
-            this.request = request;
-            this.servletStream = new ResettableServletInputStream();
-        }
-
+        private CountingOutputStream outputStream;
 
-        public void resetInputStream() {
-            servletStream.stream = new ByteArrayInputStream(rawData);
+        JsonRpcStatusResponse(HttpServletResponse response) {
+            super(response);
         }
 
         @Override
-        public ServletInputStream getInputStream() throws IOException {
-            if (rawData == null) {
-                rawData = IOUtils.toByteArray(this.request.getReader());
-                servletStream.stream = new ByteArrayInputStream(rawData);
-            }
-            return servletStream;
+        public void setStatus(int sc) {
+            super.setStatus(sc == SC_INTERNAL_SERVER_ERROR ? SC_OK : sc);
         }
 
         @Override
-        public BufferedReader getReader() throws IOException {
-            if (rawData == null) {
-                rawData = IOUtils.toByteArray(this.request.getReader());
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream());
             }
-            servletStream = new ResettableServletInputStream();
-            servletStream.stream = new ByteArrayInputStream(rawData);
-            return new BufferedReader(new InputStreamReader(servletStream));
+            return outputStream;
         }
 
+        long getCount() {
+            return outputStream == null ? 0 : outputStream.count;
+        }
+    }
 
-        private static class ResettableServletInputStream extends ServletInputStream {
-
-            private InputStream stream;
+    private static class CountingRequest extends HttpServletRequestWrapper {
 
-            @Override
-            public int read() throws IOException {
-                return stream.read();
-            }
+        private CountingInputStream inputStream;
 
-            @Override
-            public boolean isFinished() {
-                return false;
-            }
+        CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
 
-            @Override
-            public boolean isReady() {
-                return true;
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new CountingInputStream(super.getInputStream());
             }
+            return inputStream;
+        }
 
-            @Override
-            public void setReadListener(ReadListener listener) {
+        long getCount() {
+            return inputStream == null ? Math.max(0, getContentLengthLong()) : inputStream.count;
+        }
 
-            }
+        /**
+         * Peeks first significant byte of body, batch request is JSON array
+         */
+        boolean isBatch() throws IOException {
+            return ((CountingInputStream) getInputStream()).peekSignificant() == '[';
         }
     }
 
-    public static class ServletOutputStreamCopier extends ServletOutputStream {
+    private static class CountingOutputStream extends ServletOutputStream {
 
-        private OutputStream outputStream;
-        private ByteArrayOutputStream copy;
+        private final ServletOutputStream delegate;
+        private long count;
 
-        public ServletOutputStreamCopier(OutputStream outputStream) {
-            this.outputStream = outputStream;
-            this.copy = new ByteArrayOutputStream(1024);
+        CountingOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
         }
 
         @Override
         public void write(int b) throws IOException {
-            outputStream.write(b);
-            copy.write(b);
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
         }
 
-        public byte[] getCopy() {
-            return copy.toByteArray();
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
         }
 
         @Override
         public boolean isReady() {
-            return true;
+            return delegate.isReady();
         }
 
         @Override
         public void setWriteListener(WriteListener listener) {
-
+            delegate.setWriteListener(listener);
         }
     }
 
-    public static class HttpServletResponseCopier extends HttpServletResponseWrapper {
+    private static class CountingInputStream extends ServletInputStream {
 
-        private ServletOutputStream outputStream;
-        private PrintWriter writer;
-        private ServletOutputStreamCopier copier;
+        private final ServletInputStream delegate;
+        private long count;
 
-        public HttpServletResponseCopier(HttpServletResponse response) throws IOException {
-            super(response);
-        }
+        /**
+         * Byte read by peek, -1 if none
+         */
+        private int peeked = -1;
 
-        @Override
-        public ServletOutputStream getOutputStream() throws IOException {
-            if (writer != null) {
-                throw new IllegalStateException("getWriter() has already been called on this response.");
-            }
+        CountingInputStream(ServletInputStream delegate) {
+            this.delegate = delegate;
+        }
 
-            if (outputStream == null) {
-                outputStream = getResponse().getOutputStream();
-                copier = new ServletOutputStreamCopier(outputStream);
+        /**
+         * Skips whitespaces and returns next byte without consuming it
+         */
+        int peekSignificant() throws IOException {
+            if (peeked < 0) {
+                int b;
+                do {
+                    b = read();
+                } while (b >= 0 && Character.isWhitespace(b));
+                peeked = b;
             }
-
-            return copier;
+            return peeked;
         }
 
         @Override
-        public PrintWriter getWriter() throws IOException {
-            if (outputStream != null) {
-                throw new IllegalStateException("getOutputStream() has already been called on this response.");
+        public int read() throws IOException {
+            if (peeked >= 0) {
+                final int b = peeked;
+                peeked = -1;
+                return b;
             }
+            final int b = delegate.read();
+            if (b >= 0) count++;
+            return b;
+        }
 
-            if (writer == null) {
-                copier = new ServletOutputStreamCopier(getResponse().getOutputStream());
-                writer = new PrintWriter(new OutputStreamWriter(copier, getResponse().getCharacterEncoding()), true);
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (peeked >= 0) {
+                b[off] = (byte) read();
+                return 1;
             }
-
-            return writer;
+            final int read = delegate.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
         }
 
         @Override
-        public void flushBuffer() throws IOException {
-            if (writer != null) {
-                writer.flush();
-            } else if (outputStream != null) {
-                copier.flush();
-            }
+        public boolean isFinished() {
+            return peeked < 0 && delegate.isFinished();
         }
 
-        public byte[] getCopy() {
-            if (copier != null) {
-                return copier.getCopy();
-            } else {
-                return new byte[0];
-            }
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
         }
 
+        @Override
+        public void setReadListener(ReadListener listener) {
+            delegate.setReadListener(listener);
+        }
     }
 }
-
-
@@ -117,7 +117,17 @@
                         a.pendingAmountString = '';
                     }
                 });
-                $scope.addresses = data.addresses;
+                if (data.partial) {
+                    // only changed addresses are sent
+                    data.addresses.forEach(function(a) {
+                        var index = _.findIndex($scope.addresses, {publicAddress: a.publicAddress});
+                        if (index >= 0) {
+                            $scope.addresses[index] = a;
+                        }
+                    });
+                } else {
+                    $scope.addresses = data.addresses;
+                }
             }, 10);
 
             $http({
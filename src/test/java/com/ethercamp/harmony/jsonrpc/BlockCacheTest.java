@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.BlockResult;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.ethercamp.harmony.jsonrpc.TypeConverter.toJsonHex;
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BlockCacheTest {
+
+    private final BlockCache cache = new BlockCache();
+
+    /**
+     * Main chain by number
+     */
+    private final Map<Long, Block> mainChain = new HashMap<>();
+
+    @Before
+    public void before() {
+        cache.blockchain = mock(BlockchainImpl.class);
+        cache.properties = mock(HarmonyProperties.class);
+        when(cache.properties.blockCacheSize()).thenReturn(4);
+        when(cache.blockchain.getBlockByNumber(anyLong())).thenAnswer(invocation -> mainChain.get(invocation.getArguments()[0]));
+        cache.init();
+    }
+
+    @Test
+    public void hitTest() {
+        final Block b1 = block(1, "1", block(0, "0", null));
+        importBlock(b1);
+
+        assertEquals("light", cache.get(b1.getHash(), false).transactions[0]);
+        assertEquals("full", cache.get(b1.getHash(), true).transactions[0]);
+        assertEquals("full", cache.getByNumber(1, true).transactions[0]);
+        assertEquals(toJsonHex(b1.getHash()), cache.getByNumber(1, false).hash);
+        assertNull(cache.getByNumber(2, false));
+        assertNull(cache.get(sha3("other".getBytes()), false));
+
+        // lookups cache only requested variant
+        final Block b0 = mainChain.get(0L);
+        cache.put(b0, false, render(b0, false));
+        assertNotNull(cache.get(b0.getHash(), false));
+        assertNull(cache.get(b0.getHash(), true));
+    }
+
+    @Test
+    public void reorgTest() {
+        final Block b1 = block(1, "1", block(0, "0", null));
+        final Block b2 = block(2, "2", b1);
+        final Block b3 = block(3, "3", b2);
+        importBlock(b1);
+        importBlock(b2);
+        importBlock(b3);
+
+        final Block b2a = block(2, "2a", b1);
+        final Block b3a = block(3, "3a", b2a);
+        importBlock(b2a);
+        importBlock(b3a);
+
+        assertNull(cache.get(b2.getHash(), false));
+        assertNull(cache.get(b3.getHash(), false));
+        assertEquals(toJsonHex(b2a.getHash()), cache.getByNumber(2, false).hash);
+        assertEquals(toJsonHex(b3a.getHash()), cache.getByNumber(3, true).hash);
+        assertNotNull(cache.get(b1.getHash(), false));
+    }
+
+    @Test
+    public void shorterChainTest() {
+        final Block b1 = block(1, "1", block(0, "0", null));
+        final Block b2 = block(2, "2", b1);
+        final Block b3 = block(3, "3", b2);
+        importBlock(b1);
+        importBlock(b2);
+        importBlock(b3);
+
+        // heavier chain with less blocks
+        final Block b2a = block(2, "2a", b1);
+        mainChain.remove(3L);
+        importBlock(b2a);
+
+        assertNull(cache.getByNumber(3, false));
+        assertNull(cache.get(b3.getHash(), false));
+        assertNull(cache.get(b2.getHash(), false));
+        assertEquals(toJsonHex(b2a.getHash()), cache.getByNumber(2, false).hash);
+    }
+
+    @Test
+    public void sideChainEventTest() {
+        final Block b1 = block(1, "1", block(0, "0", null));
+        importBlock(b1);
+
+        // event of block, which already left main chain
+        final Block b1a = block(1, "1a", mainChain.get(0L));
+        cache.onBlock(b1a, BlockCacheTest::render);
+
+        assertNull(cache.get(b1a.getHash(), false));
+        assertEquals(toJsonHex(b1.getHash()), cache.getByNumber(1, false).hash);
+    }
+
+    @Test
+    public void sizeBoundTest() {
+        Block parent = block(0, "0", null);
+        for (long number = 1; number <= 6; number++) {
+            parent = block(number, String.valueOf(number), parent);
+            importBlock(parent);
+        }
+
+        assertNull(cache.getByNumber(1, false));
+        assertNull(cache.getByNumber(2, false));
+        assertNotNull(cache.getByNumber(3, false));
+        assertNotNull(cache.getByNumber(6, false));
+        assertEquals(4, metric("rpc.blockCache.size"));
+        assertEquals(2L, metric("rpc.blockCache.evictions"));
+    }
+
+    private void importBlock(Block block) {
+        mainChain.put(block.getNumber(), block);
+        cache.onBlock(block, BlockCacheTest::render);
+    }
+
+    private Block block(long number, String name, Block parent) {
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(sha3(name.getBytes()));
+        when(block.getParentHash()).thenReturn(parent == null ? new byte[32] : parent.getHash());
+        if (parent == null) {
+            mainChain.put(number, block);
+        }
+        when(cache.blockchain.getBlockByHash(block.getHash())).thenReturn(block);
+        return block;
+    }
+
+    private static BlockResult render(Block block, boolean fullTx) {
+        final BlockResult result = new BlockResult();
+        result.number = toJsonHex(block.getNumber());
+        result.hash = toJsonHex(block.getHash());
+        result.transactions = new Object[] {fullTx ? "full" : "light"};
+        return result;
+    }
+
+    private Object metric(String name) {
+        return cache.metrics().stream()
+                .filter(m -> m.getName().equals(name))
+                .findFirst().get().getValue();
+    }
+}
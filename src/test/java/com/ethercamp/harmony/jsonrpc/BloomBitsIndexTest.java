@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.Bloom;
+import org.ethereum.db.BlockStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BloomBitsIndexTest {
+
+    private static final int SECTION_SIZE = 8;
+
+    private static final byte[] ADDRESS_1 = Arrays.copyOf(sha3("cow".getBytes()), 20);
+    private static final byte[] ADDRESS_2 = Arrays.copyOf(sha3("dog".getBytes()), 20);
+    private static final byte[] TOPIC_1 = sha3("Transfer".getBytes());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void lookupTest() throws Exception {
+        final BloomBitsIndex index = new BloomBitsIndex();
+        index.open(folder.getRoot().toPath(), SECTION_SIZE);
+
+        // two completed sections and part of third one
+        for (long number = 0; number < SECTION_SIZE * 2 + 3; number++) {
+            if (number == 3 || number == 10) {
+                index.onBlock(block(number, ADDRESS_1, TOPIC_1));
+            } else if (number == 5 || number == 17) {
+                index.onBlock(block(number, ADDRESS_2));
+            } else {
+                index.onBlock(block(number));
+            }
+        }
+        assertEquals(SECTION_SIZE * 2 + 2, index.getIndexedBlock());
+        assertTrue(Files.exists(folder.getRoot().toPath().resolve("section-1")));
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("section-2")));
+
+        assertEquals(Arrays.asList(3L, 10L), index.findCandidates(Arrays.asList(ADDRESS_1), Collections.emptyList(), 0, 18));
+        assertEquals(Arrays.asList(5L, 17L), index.findCandidates(Arrays.asList(ADDRESS_2), Collections.emptyList(), 0, 18));
+        assertEquals(Arrays.asList(3L, 5L, 10L, 17L), index.findCandidates(Arrays.asList(ADDRESS_1, ADDRESS_2), Collections.emptyList(), 0, 18));
+        assertEquals(Arrays.asList(10L), index.findCandidates(Collections.emptyList(), Arrays.<byte[][]>asList(new byte[][] {TOPIC_1}), 4, 18));
+        assertEquals(Collections.emptyList(), index.findCandidates(Arrays.asList(ADDRESS_2), Arrays.<byte[][]>asList(new byte[][] {TOPIC_1}), 0, 18));
+        assertNull(index.findCandidates(Collections.emptyList(), Collections.emptyList(), 0, 18));
+    }
+
+    @Test
+    public void truncatedSectionTest() throws Exception {
+        final Path dir = folder.getRoot().toPath();
+        {
+            final BloomBitsIndex index = new BloomBitsIndex();
+            index.open(dir, SECTION_SIZE);
+            for (long number = 0; number < SECTION_SIZE * 3; number++) {
+                index.onBlock(number == 12 ? block(number, ADDRESS_1) : block(number));
+            }
+            assertEquals(SECTION_SIZE * 3 - 1, index.getIndexedBlock());
+        }
+
+        // crash in the middle of writing section
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("section-1").toFile(), "rw")) {
+            file.setLength(100);
+        }
+        Files.write(dir.resolve("section.tmp"), new byte[10]);
+
+        final BloomBitsIndex index = new BloomBitsIndex();
+        index.open(dir, SECTION_SIZE);
+        assertEquals(SECTION_SIZE - 1, index.getIndexedBlock());
+        assertFalse(Files.exists(dir.resolve("section-1")));
+        assertFalse(Files.exists(dir.resolve("section-2")));
+        assertFalse(Files.exists(dir.resolve("section.tmp")));
+
+        // rebuilt section is found again
+        for (long number = SECTION_SIZE; number < SECTION_SIZE * 2; number++) {
+            index.onBlock(number == 12 ? block(number, ADDRESS_1) : block(number));
+        }
+        assertEquals(Arrays.asList(12L), index.findCandidates(Arrays.asList(ADDRESS_1), Collections.emptyList(), 0, SECTION_SIZE * 2 - 1));
+    }
+
+    @Test
+    public void reorgDuringBackfillTest() throws Exception {
+        final BloomBitsIndex index = new BloomBitsIndex();
+        index.open(folder.getRoot().toPath(), SECTION_SIZE);
+        index.blockchain = mock(BlockchainImpl.class);
+        final BlockStore blockStore = mock(BlockStore.class);
+        when(index.blockchain.getBlockStore()).thenReturn(blockStore);
+
+        final Map<Long, Block> mainChain = new HashMap<>();
+        for (long number = 0; number < SECTION_SIZE; number++) {
+            mainChain.put(number, named(block(number, ADDRESS_1), String.valueOf(number)));
+        }
+        final Block replacement = named(block(5, ADDRESS_2), "5a");
+
+        when(index.blockchain.getBestBlock()).thenAnswer(invocation -> mainChain.get(SECTION_SIZE - 1L));
+        when(blockStore.getBlockHashByNumber(anyLong())).thenAnswer(invocation -> mainChain.get(invocation.getArguments()[0]).getHash());
+        when(index.blockchain.getBlockByNumber(anyLong())).thenAnswer(invocation -> {
+            final long number = (Long) invocation.getArguments()[0];
+            final Block block = mainChain.get(number);
+            if (number == 5 && block != replacement) {
+                // reorg is imported right after backfill has read old block,
+                // replacement is ahead of indexed blocks, so onBlock skips it
+                mainChain.put(5L, replacement);
+                index.onBlock(replacement);
+            }
+            return block;
+        });
+
+        index.backfill();
+
+        assertEquals(SECTION_SIZE - 1, index.getIndexedBlock());
+        assertEquals(Arrays.asList(5L), index.findCandidates(Arrays.asList(ADDRESS_2), Collections.emptyList(), 0, SECTION_SIZE - 1));
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 6L, 7L),
+                index.findCandidates(Arrays.asList(ADDRESS_1), Collections.emptyList(), 0, SECTION_SIZE - 1));
+    }
+
+    private static Block named(Block block, String name) {
+        when(block.getHash()).thenReturn(sha3(name.getBytes()));
+        return block;
+    }
+
+    private static Block block(long number, byte[]... terms) {
+        final Bloom bloom = new Bloom();
+        for (byte[] term : terms) {
+            bloom.or(Bloom.create(sha3(term)));
+        }
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getLogBloom()).thenReturn(bloom.getData());
+        return block;
+    }
+}
@@ -106,6 +106,52 @@ public class EthFilterTest {
         }
     }
 
+    @Test
+    public void overflowTest() {
+        byte[] parentHash = new byte[32];
+        for (int i = 0; i < 1300; ++i) {
+            Block block = createBlock(i, parentHash);
+            index.add(block);
+            parentHash = block.getHash();
+            filter.newBlockReceived(block);
+            if (i == 100) {
+                assertEquals(101, filter.poll().length);
+                assertEquals(0, filter.getOverflowCount());
+            }
+        }
+        // blocks #101..#1299 were added after poll, #101..#275 are overwritten
+        Object[] pollBlocks = filter.poll();
+        assertEquals(EthJsonRpcImpl.Filter.MAX_EVENT_COUNT, pollBlocks.length);
+        assertEquals(175, filter.getOverflowCount());
+        assertEquals(TypeConverter.toJsonHex(index.get(276).getHash()), pollBlocks[0]);
+        assertEquals(0, filter.poll().length);
+        assertEquals(175, filter.getOverflowCount());
+    }
+
+    @Test
+    public void sizeLimitTest() {
+        byte[] parentHash = new byte[32];
+        long eventSize = 0;
+        for (int i = 0; i < 20; ++i) {
+            Block block = createBlock(i, parentHash);
+            index.add(block);
+            parentHash = block.getHash();
+            filter.newBlockReceived(block);
+            if (i == 0) {
+                eventSize = filter.getBufferedBytes();
+                filter.maxBufferedBytes = eventSize * 10;
+            }
+        }
+        assertEquals(10, filter.getAll().length);
+        assertEquals(10, filter.getEventCount());
+        assertEquals(eventSize * 10, filter.getBufferedBytes());
+
+        Object[] pollBlocks = filter.poll();
+        assertEquals(10, pollBlocks.length);
+        assertEquals(10, filter.getOverflowCount());
+        assertEquals(TypeConverter.toJsonHex(index.get(10).getHash()), pollBlocks[0]);
+    }
+
     private void test0() {
         assertEquals(0, filter.getAll().length);
         assertEquals(0, filter.poll().length);
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.FilterRequest;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.LogFilterElement;
+import org.ethereum.core.*;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EthGetLogsTest {
+
+    private static final int BLOCKS = 100;
+
+    private static final int LOGS_PER_BLOCK = 20;
+
+    private final EthJsonRpcImpl jsonRpc = new EthJsonRpcImpl();
+
+    @Before
+    public void before() {
+        jsonRpc.logScanPool = new ForkJoinPool(4);
+        jsonRpc.blockchain = mock(BlockchainImpl.class);
+        jsonRpc.logIndex = mock(LogIndex.class);
+        jsonRpc.bloomBitsIndex = mock(BloomBitsIndex.class);
+        jsonRpc.harmonyProperties = mock(HarmonyProperties.class);
+        when(jsonRpc.harmonyProperties.logScanChunkSize()).thenReturn(10);
+        when(jsonRpc.harmonyProperties.getLogsMaxResults()).thenReturn(10000);
+
+        final List<Block> blocks = new ArrayList<>();
+        for (int number = 0; number < BLOCKS; number++) {
+            blocks.add(block(number));
+        }
+        when(jsonRpc.blockchain.getBestBlock()).thenReturn(blocks.get(BLOCKS - 1));
+        when(jsonRpc.blockchain.getBlockByNumber(anyLong())).thenAnswer(invocation -> blocks.get((int) (long) (Long) invocation.getArguments()[0]));
+        when(jsonRpc.blockchain.getTransactionInfo(any(byte[].class))).thenAnswer(invocation -> {
+            final byte[] hash = (byte[]) invocation.getArguments()[0];
+            return blocks.stream()
+                    .filter(b -> Arrays.equals(b.getTransactionsList().get(0).getHash(), hash))
+                    .findFirst()
+                    .map(b -> txInfo(b))
+                    .orElse(null);
+        });
+    }
+
+    @After
+    public void after() {
+        jsonRpc.logScanPool.shutdownNow();
+    }
+
+    @Test
+    public void moreThanFilterBufferTest() throws Exception {
+        final Object[] logs = jsonRpc.eth_getLogs(request("0x0", "latest"));
+
+        // result is not limited by filter events ring buffer
+        assertTrue(BLOCKS * LOGS_PER_BLOCK > EthJsonRpcImpl.Filter.MAX_EVENT_COUNT);
+        assertEquals(BLOCKS * LOGS_PER_BLOCK, logs.length);
+        assertEquals("0x0", ((LogFilterElement) logs[0]).blockNumber);
+        assertEquals(TypeConverter.toJsonHex(BLOCKS - 1), ((LogFilterElement) logs[logs.length - 1]).blockNumber);
+        assertEquals(TypeConverter.toJsonHex(LOGS_PER_BLOCK - 1), ((LogFilterElement) logs[logs.length - 1]).logIndex);
+    }
+
+    @Test
+    public void pendingToBlockTest() throws Exception {
+        assertEquals(BLOCKS * LOGS_PER_BLOCK, jsonRpc.eth_getLogs(request("0x0", "pending")).length);
+    }
+
+    @Test
+    public void overLimitTest() throws Exception {
+        when(jsonRpc.harmonyProperties.getLogsMaxResults()).thenReturn(BLOCKS * LOGS_PER_BLOCK - 1);
+        try {
+            jsonRpc.eth_getLogs(request("0x0", "latest"));
+            fail("Result over limit should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ethj_getLogs"));
+        }
+
+        // exactly at limit
+        when(jsonRpc.harmonyProperties.getLogsMaxResults()).thenReturn(BLOCKS * LOGS_PER_BLOCK);
+        assertEquals(BLOCKS * LOGS_PER_BLOCK, jsonRpc.eth_getLogs(request("0x0", "latest")).length);
+    }
+
+    private static FilterRequest request(String fromBlock, String toBlock) {
+        final FilterRequest fr = new FilterRequest();
+        fr.fromBlock = fromBlock;
+        fr.toBlock = toBlock;
+        return fr;
+    }
+
+    private static Block block(long number) {
+        final Transaction tx = mock(Transaction.class);
+        when(tx.getHash()).thenReturn(sha3(("tx" + number).getBytes()));
+        when(tx.getReceiveAddress()).thenReturn(new byte[20]);
+
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(sha3(("block" + number).getBytes()));
+        when(block.getLogBloom()).thenReturn(log(0).getBloom().getData());
+        when(block.getTransactionsList()).thenReturn(Arrays.asList(tx));
+        return block;
+    }
+
+    private static TransactionInfo txInfo(Block block) {
+        final List<LogInfo> logs = new ArrayList<>();
+        for (int i = 0; i < LOGS_PER_BLOCK; i++) {
+            logs.add(log(i));
+        }
+        final TransactionReceipt receipt = new TransactionReceipt(new byte[32], new byte[] {1}, log(0).getBloom(), logs);
+        receipt.setTransaction(block.getTransactionsList().get(0));
+        final TransactionInfo txInfo = mock(TransactionInfo.class);
+        when(txInfo.getReceipt()).thenReturn(receipt);
+        return txInfo;
+    }
+
+    private static LogInfo log(int i) {
+        return new LogInfo(new byte[20], Arrays.asList(DataWord.of(i)), new byte[0]);
+    }
+}
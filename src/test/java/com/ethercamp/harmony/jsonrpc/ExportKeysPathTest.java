@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ExportKeysPathTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final EthJsonRpcImpl jsonRpc = new EthJsonRpcImpl();
+
+    private Path exportDir;
+
+    @Before
+    public void before() {
+        exportDir = folder.getRoot().toPath().resolve("exports");
+        jsonRpc.harmonyProperties = mock(HarmonyProperties.class);
+        when(jsonRpc.harmonyProperties.keystoreExportDir()).thenReturn(exportDir.toString());
+    }
+
+    @Test
+    public void insideExportDirTest() throws Exception {
+        assertEquals(exportDir.resolve("keys.zip"), jsonRpc.resolveExportPath("keys.zip"));
+        assertEquals(exportDir.resolve("daily/keys"), jsonRpc.resolveExportPath("daily/../daily/keys"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void outsideExportDirTest() throws Exception {
+        jsonRpc.resolveExportPath("../keys.zip");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void absolutePathTest() throws Exception {
+        jsonRpc.resolveExportPath(folder.getRoot().toPath().resolve("keys.zip").toString());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void notConfiguredTest() throws Exception {
+        when(jsonRpc.harmonyProperties.keystoreExportDir()).thenReturn(null);
+        jsonRpc.resolveExportPath("keys.zip");
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GasEstimatorTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @After
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void gasUsedIsEnoughTest() throws Exception {
+        final GasEstimator estimator = new GasEstimator(pool, 4, 5000);
+        assertEquals(21000, estimator.estimate(8_000_000, limit -> limit >= 21000 ? 21000 : -1));
+    }
+
+    @Test
+    public void refundTest() throws Exception {
+        // call needs 50000 gas, but half of it is refunded
+        final GasEstimator estimator = new GasEstimator(pool, 4, 5000);
+        assertEquals(50000, estimator.estimate(8_000_000, limit -> limit >= 50000 ? 25000 : -1));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void alwaysFailingTest() throws Exception {
+        final GasEstimator estimator = new GasEstimator(pool, 4, 5000);
+        estimator.estimate(8_000_000, limit -> -1);
+    }
+
+    @Test
+    public void timeBudgetTest() throws Exception {
+        final GasEstimator estimator = new GasEstimator(pool, 2, 100);
+        final long gas = estimator.estimate(8_000_000, limit -> {
+            if (limit < 8_000_000) Thread.sleep(50);
+            return limit >= 50000 ? 25000 : -1;
+        });
+        assertTrue(gas >= 50000);
+        assertTrue(gas <= 8_000_000);
+    }
+
+    @Test
+    public void saturatedPoolTest() throws Exception {
+        final ThreadPoolExecutor saturated = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.AbortPolicy());
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // pool thread and queue are taken by other requests
+            saturated.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            saturated.execute(() -> {});
+
+            final Thread caller = Thread.currentThread();
+            final AtomicInteger inlineProbes = new AtomicInteger();
+            final GasEstimator estimator = new GasEstimator(saturated, 4, 500);
+            final long started = System.currentTimeMillis();
+            final long gas = estimator.estimate(8_000_000, limit -> {
+                if (Thread.currentThread() == caller) inlineProbes.incrementAndGet();
+                if (limit < 8_000_000) Thread.sleep(200);
+                return limit >= 50000 ? 25000 : -1;
+            });
+            final long elapsed = System.currentTimeMillis() - started;
+
+            assertTrue(gas >= 50000);
+            assertTrue(gas <= 8_000_000);
+            // probes ran one by one on caller and no probe was started after time budget
+            assertTrue("Elapsed " + elapsed, elapsed < 500 + 300);
+            assertTrue("Inline probes " + inlineProbes.get(), inlineProbes.get() <= 4);
+            assertEquals(0, saturated.getCompletedTaskCount());
+        } finally {
+            release.countDown();
+            saturated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void losingProbesInterruptedTest() throws Exception {
+        final AtomicInteger slowStarted = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        final GasEstimator estimator = new GasEstimator(pool, 4, 20_000);
+        // first round probes are about 1.6M apart, higher ones are slow
+        final long gas = estimator.estimate(8_000_000, limit -> {
+            if (limit > 2_000_000 && limit < 8_000_000) {
+                slowStarted.incrementAndGet();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    throw e;
+                }
+            }
+            return limit >= 50000 ? 25000 : -1;
+        });
+
+        assertEquals(50000, gas);
+        // slow probes, which started before they were cancelled, are interrupted
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (interrupted.get() < slowStarted.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(slowStarted.get(), interrupted.get());
+    }
+}
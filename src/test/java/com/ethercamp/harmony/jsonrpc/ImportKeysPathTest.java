@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ImportKeysPathTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final EthJsonRpcImpl jsonRpc = new EthJsonRpcImpl();
+
+    private Path importDir;
+
+    @Before
+    public void before() {
+        importDir = folder.getRoot().toPath().resolve("imports");
+        jsonRpc.harmonyProperties = mock(HarmonyProperties.class);
+        when(jsonRpc.harmonyProperties.keystoreImportDir()).thenReturn(importDir.toString());
+    }
+
+    @Test
+    public void insideImportDirTest() throws Exception {
+        assertEquals(importDir.resolve("keys.zip"), jsonRpc.resolveImportPath("keys.zip"));
+        assertEquals(importDir.resolve("daily/keys"), jsonRpc.resolveImportPath("daily/../daily/keys"));
+        assertEquals(importDir, jsonRpc.resolveImportPath("."));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void outsideImportDirTest() throws Exception {
+        jsonRpc.resolveImportPath("../../etc");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void absolutePathTest() throws Exception {
+        jsonRpc.resolveImportPath("/etc/passwd");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void notConfiguredTest() throws Exception {
+        when(jsonRpc.harmonyProperties.keystoreImportDir()).thenReturn(null);
+        jsonRpc.resolveImportPath("keys.zip");
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.service.JsonRpcUsageService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JsonRpcBatchExecutorTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private JsonRpcBatchExecutor executor;
+
+    @Before
+    public void before() {
+        executor = new JsonRpcBatchExecutor() {
+            @Override
+            public byte[] handle(JsonNode request) throws IOException {
+                if ("eth_blockNumber".equals(request.path("method").asText())) {
+                    throw new IOException("Test failure");
+                }
+                return super.handle(request);
+            }
+        };
+        executor.jsonRpc = mock(JsonRpc.class);
+        executor.jsonRpcUsageService = mock(JsonRpcUsageService.class);
+        executor.properties = mock(HarmonyProperties.class);
+        when(executor.jsonRpc.web3_clientVersion()).thenReturn("harmony");
+        when(executor.properties.rpcBatchMaxSize()).thenReturn(100);
+        when(executor.properties.rpcBatchConcurrency()).thenReturn(4);
+        when(executor.properties.rpcBatchThreads()).thenReturn(4);
+        executor.init();
+    }
+
+    @After
+    public void after() {
+        executor.close();
+    }
+
+    @Test
+    public void mixedBatchTest() throws Exception {
+        final JsonNode responses = execute("[" +
+                "{\"jsonrpc\":\"2.0\",\"method\":\"web3_clientVersion\",\"params\":[],\"id\":1}," +
+                "{\"jsonrpc\":\"2.0\",\"method\":\"eth_blockNumber\",\"params\":[],\"id\":2}," +
+                "5," +
+                "{\"jsonrpc\":\"2.0\",\"method\":\"eth_blockNumber\",\"params\":[]}," +
+                "{\"jsonrpc\":\"2.0\",\"method\":\"no_suchMethod\",\"params\":[],\"id\":3}," +
+                "{\"jsonrpc\":\"2.0\",\"method\":\"web3_clientVersion\",\"params\":[],\"id\":4}" +
+                "]");
+
+        // failed notification has no response
+        assertEquals(5, responses.size());
+
+        assertEquals(1, responses.get(0).get("id").asInt());
+        assertEquals("harmony", responses.get(0).get("result").asText());
+
+        assertEquals(2, responses.get(1).get("id").asInt());
+        assertEquals(-32603, responses.get(1).path("error").path("code").asInt());
+
+        assertTrue(responses.get(2).get("id").isNull());
+        assertEquals(-32600, responses.get(2).path("error").path("code").asInt());
+
+        assertEquals(3, responses.get(3).get("id").asInt());
+        assertTrue(responses.get(3).has("error"));
+
+        assertEquals(4, responses.get(4).get("id").asInt());
+        assertEquals("harmony", responses.get(4).get("result").asText());
+    }
+
+    @Test
+    public void tooLargeBatchTest() throws Exception {
+        final StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i <= 100; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"jsonrpc\":\"2.0\",\"method\":\"web3_clientVersion\",\"params\":[],\"id\":" + i + "}");
+        }
+        final JsonNode response = execute(batch.append("]").toString());
+
+        assertEquals(-32600, response.path("error").path("code").asInt());
+    }
+
+    private JsonNode execute(String batch) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        executor.execute(new ByteArrayInputStream(batch.getBytes()), output);
+        return mapper.readTree(output.toByteArray());
+    }
+}
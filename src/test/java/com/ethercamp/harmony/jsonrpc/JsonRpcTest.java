@@ -18,10 +18,12 @@
 
 package com.ethercamp.harmony.jsonrpc;
 
+import com.ethercamp.harmony.config.HarmonyProperties;
 import com.ethercamp.harmony.keystore.FileSystemKeystore;
 import com.ethercamp.harmony.service.BlockchainInfoService;
 import com.ethercamp.harmony.service.ClientMessageService;
 import com.ethercamp.harmony.service.ClientMessageServiceDummy;
+import com.ethercamp.harmony.service.EventPipelineService;
 import com.ethercamp.harmony.service.PrivateMinerService;
 import com.ethercamp.harmony.service.WalletService;
 import com.ethercamp.harmony.service.wallet.FileSystemWalletStore;
@@ -170,6 +172,61 @@ public class JsonRpcTest {
             return new EthJsonRpcImpl();
         }
 
+        @Bean
+        public HarmonyProperties harmonyProperties() {
+            return new HarmonyProperties(systemProperties());
+        }
+
+        @Bean
+        public LogIndex logIndex() {
+            return new LogIndex();
+        }
+
+        @Bean
+        public BloomBitsIndex bloomBitsIndex() {
+            return new BloomBitsIndex();
+        }
+
+        @Bean
+        public TransactionCache transactionCache() {
+            return new TransactionCache();
+        }
+
+        @Bean
+        public BlockCache blockCache() {
+            return new BlockCache();
+        }
+
+        @Bean
+        public PendingBlockCache pendingBlockCache() {
+            return new PendingBlockCache();
+        }
+
+        @Bean
+        public StateSnapshotCache stateSnapshotCache() {
+            return new StateSnapshotCache();
+        }
+
+        @Bean
+        public SigningService signingService() {
+            return new SigningService();
+        }
+
+        @Bean
+        public NonceManager nonceManager() {
+            return new NonceManager();
+        }
+
+        @Bean
+        public KeySessionCache keySessionCache() {
+            return new KeySessionCache();
+        }
+
+        @Bean
+        public EventPipelineService eventPipelineService() {
+            return new EventPipelineService();
+        }
+
         @Bean
         public TestRunner test() {
             return new TestRunner();
@@ -362,6 +419,16 @@ public class JsonRpcTest {
             assertEquals("0x0000000000000000000000000000000000000000000000000000000000000777", ret3);
             assertEquals("0x0000000000000000000000000000000000000000000000000000000000000000", ret4);
 
+            {
+                JsonRpc.CallArguments publicArgs = createCall(receipt2.contractAddress, "getPublic");
+                JsonRpc.CallResult[] results = jsonRpc.ethj_multiCall(
+                        new JsonRpc.CallArguments[]{callArgs2, publicArgs}, "latest");
+                assertEquals(2, results.length);
+                assertEquals(ret2, results[0].result);
+                assertNull(results[0].error);
+                assertEquals(jsonRpc.eth_call(publicArgs, "latest"), results[1].result);
+            }
+
             {
                 JsonRpc.CallArguments args = createCall(receipt2.contractAddress, "getPublic");
                 String ret5 = jsonRpc.eth_call(args, blockResult2.number);
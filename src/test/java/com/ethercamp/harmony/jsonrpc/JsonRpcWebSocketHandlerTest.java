@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.jsonrpc.EthJsonRpcImpl.JsonLogFilter;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.FilterRequest;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.LogFilterElement;
+import com.ethercamp.harmony.service.EventPipelineService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ethereum.core.Transaction;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class JsonRpcWebSocketHandlerTest {
+
+    private static final byte[] ADDRESS = Arrays.copyOf(sha3("cow".getBytes()), 20);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+
+    private JsonRpcWebSocketHandler handler;
+    private WebSocketSession session;
+
+    @Before
+    public void before() throws Exception {
+        handler = new JsonRpcWebSocketHandler();
+        handler.jsonRpc = mock(EthJsonRpcImpl.class);
+        handler.executor = mock(JsonRpcBatchExecutor.class);
+        handler.eventPipeline = mock(EventPipelineService.class);
+        handler.properties = mock(HarmonyProperties.class);
+        when(handler.properties.webSocketMaxBufferedBytes()).thenReturn(1024L * 1024);
+        when(handler.properties.webSocketSendTimeoutSec()).thenReturn(1);
+        when(handler.properties.webSocketMaxSubscriptions()).thenReturn(2);
+        when(handler.properties.webSocketSenderThreads()).thenReturn(2);
+        handler.init();
+
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("1");
+        doAnswer(invocation -> {
+            sent.add(((TextMessage) invocation.getArguments()[0]).getPayload());
+            return null;
+        }).when(session).sendMessage(any(WebSocketMessage.class));
+        handler.afterConnectionEstablished(session);
+    }
+
+    @After
+    public void after() {
+        handler.close();
+    }
+
+    @Test
+    public void subscribeUnsubscribeTest() throws Exception {
+        final JsonLogFilter filter = mock(JsonLogFilter.class);
+        final ArgumentCaptor<Consumer> consumer = ArgumentCaptor.forClass(Consumer.class);
+        when(handler.jsonRpc.subscribeLogs(any(FilterRequest.class), consumer.capture())).thenReturn(filter);
+
+        final String subscriptionId = request("eth_subscribe", "\"logs\"", 1).get("result").asText();
+        assertTrue(subscriptionId.startsWith("0x"));
+        assertEquals(1, subscriptions());
+
+        consumer.getValue().accept(element());
+        final JsonNode notification = next();
+        assertEquals("eth_subscription", notification.get("method").asText());
+        assertEquals(subscriptionId, notification.get("params").get("subscription").asText());
+        assertEquals("0x0", notification.get("params").get("result").get("logIndex").asText());
+
+        assertEquals(true, request("eth_unsubscribe", "\"" + subscriptionId + "\"", 2).get("result").asBoolean());
+        verify(handler.jsonRpc).unsubscribeLogs(filter);
+        assertEquals(0, subscriptions());
+        assertEquals(false, request("eth_unsubscribe", "\"" + subscriptionId + "\"", 3).get("result").asBoolean());
+    }
+
+    @Test
+    public void subscriptionsLimitTest() throws Exception {
+        request("eth_subscribe", "\"newHeads\"", 1);
+        request("eth_subscribe", "\"newPendingTransactions\"", 2);
+        final JsonNode response = request("eth_subscribe", "\"newHeads\"", 3);
+        assertEquals(-32005, response.get("error").get("code").asInt());
+        assertEquals(-32602, request("eth_subscribe", "\"syncing\"", 4).get("error").get("code").asInt());
+        assertEquals(2, subscriptions());
+    }
+
+    @Test
+    public void disconnectTest() throws Exception {
+        final JsonLogFilter filter = mock(JsonLogFilter.class);
+        when(handler.jsonRpc.subscribeLogs(any(FilterRequest.class), any(Consumer.class))).thenReturn(filter);
+        request("eth_subscribe", "\"logs\"", 1);
+        request("eth_subscribe", "\"newHeads\"", 2);
+
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        verify(handler.jsonRpc).unsubscribeLogs(filter);
+        assertEquals(0, subscriptions());
+        assertEquals(0, metric("rpc.ws.connections"));
+    }
+
+    @Test
+    public void stalledClientTest() throws Exception {
+        final ArgumentCaptor<Consumer> consumer = ArgumentCaptor.forClass(Consumer.class);
+        when(handler.jsonRpc.subscribeLogs(any(FilterRequest.class), consumer.capture()))
+                .thenReturn(mock(JsonLogFilter.class));
+        request("eth_subscribe", "\"logs\"", 1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(session).sendMessage(any(WebSocketMessage.class));
+
+        // client stops reading, no more events come for it
+        consumer.getValue().accept(element());
+
+        verify(session, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1L, metric("rpc.ws.slowConsumers"));
+        release.countDown();
+    }
+
+    private JsonNode request(String method, String params, int id) throws Exception {
+        handler.handleTextMessage(session, new TextMessage(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"" + method + "\",\"params\":[" + params + "],\"id\":" + id + "}"));
+        final JsonNode response = next();
+        assertEquals(id, response.get("id").asInt());
+        return response;
+    }
+
+    private JsonNode next() throws Exception {
+        final String message = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Message is not sent", message);
+        return mapper.readTree(message);
+    }
+
+    private int subscriptions() {
+        return ((Number) metric("rpc.ws.subscriptions")).intValue();
+    }
+
+    private Object metric(String name) {
+        return handler.metrics().stream()
+                .filter(m -> m.getName().equals(name))
+                .findFirst().get().getValue();
+    }
+
+    private static LogFilterElement element() {
+        final Transaction tx = mock(Transaction.class);
+        when(tx.getHash()).thenReturn(sha3("tx".getBytes()));
+        when(tx.getReceiveAddress()).thenReturn(ADDRESS);
+        final LogInfo logInfo = new LogInfo(ADDRESS, Arrays.asList(DataWord.of(sha3("Transfer".getBytes()))), new byte[0]);
+        return new LogFilterElement(logInfo, null, null, tx, 0);
+    }
+}
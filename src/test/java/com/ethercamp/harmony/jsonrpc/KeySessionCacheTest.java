@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import org.ethereum.crypto.ECKey;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class KeySessionCacheTest {
+
+    private static final ECKey KEY_1 = ECKey.fromPrivate(BigInteger.valueOf(2001));
+    private static final ECKey KEY_2 = ECKey.fromPrivate(BigInteger.valueOf(2002));
+    private static final ECKey KEY_3 = ECKey.fromPrivate(BigInteger.valueOf(2003));
+
+    private final KeySessionCache cache = new KeySessionCache();
+
+    @Before
+    public void before() {
+        cache.properties = mock(HarmonyProperties.class);
+        when(cache.properties.keySessionCacheSize()).thenReturn(2);
+        when(cache.properties.keySessionTtlSec()).thenReturn(300);
+        cache.init();
+    }
+
+    @Test
+    public void hitTest() {
+        cache.put(address(KEY_1), "cow", KEY_1);
+
+        final ECKey key = cache.get(address(KEY_1), "cow");
+        assertArrayEquals(KEY_1.getPrivKeyBytes(), key.getPrivKeyBytes());
+        // address case and prefix don't matter
+        assertNotNull(cache.get("0x" + address(KEY_1).toUpperCase(), "cow"));
+        assertEquals(2L, metric("rpc.keySessions.hits"));
+    }
+
+    @Test
+    public void wrongPasswordTest() {
+        cache.put(address(KEY_1), "cow", KEY_1);
+
+        assertNull(cache.get(address(KEY_1), "dog"));
+        assertNull(cache.get(address(KEY_2), "cow"));
+        assertEquals(2L, metric("rpc.keySessions.misses"));
+        assertEquals(0L, metric("rpc.keySessions.hits"));
+    }
+
+    @Test
+    public void ttlTest() throws Exception {
+        cache.ttlMs = 100;
+        cache.put(address(KEY_1), "cow", KEY_1);
+        cache.put(address(KEY_2), "cow", KEY_2);
+        assertNotNull(cache.get(address(KEY_1), "cow"));
+
+        Thread.sleep(200);
+        assertNull(cache.get(address(KEY_1), "cow"));
+        assertEquals(1, metric("rpc.keySessions.size"));
+
+        cache.removeExpired();
+        assertEquals(0, metric("rpc.keySessions.size"));
+        assertNull(cache.get(address(KEY_2), "cow"));
+    }
+
+    @Test
+    public void disabledTest() {
+        cache.ttlMs = 0;
+        cache.put(address(KEY_1), "cow", KEY_1);
+        assertNull(cache.get(address(KEY_1), "cow"));
+        assertEquals(0, metric("rpc.keySessions.size"));
+    }
+
+    @Test
+    public void lruTest() {
+        cache.put(address(KEY_1), "cow", KEY_1);
+        cache.put(address(KEY_2), "cow", KEY_2);
+        // recently used entry is kept
+        assertNotNull(cache.get(address(KEY_1), "cow"));
+
+        cache.put(address(KEY_3), "cow", KEY_3);
+        assertEquals(2, metric("rpc.keySessions.size"));
+        assertEquals(1L, metric("rpc.keySessions.evictions"));
+        assertNull(cache.get(address(KEY_2), "cow"));
+        assertNotNull(cache.get(address(KEY_1), "cow"));
+        assertNotNull(cache.get(address(KEY_3), "cow"));
+    }
+
+    @Test
+    public void lockAccountTest() {
+        when(cache.properties.keySessionCacheSize()).thenReturn(10);
+        cache.init();
+        final EthJsonRpcImpl jsonRpc = new EthJsonRpcImpl();
+        jsonRpc.keySessionCache = cache;
+        jsonRpc.signingService = new SigningService();
+        jsonRpc.signingService.unlock(KEY_1);
+
+        cache.put(address(KEY_1), "cow", KEY_1);
+        cache.put(address(KEY_1), "dog", KEY_1);
+        cache.put(address(KEY_2), "cow", KEY_2);
+
+        assertTrue(jsonRpc.personal_lockAccount("0x" + address(KEY_1)));
+
+        // keys cached with any password are removed
+        assertNull(cache.get(address(KEY_1), "cow"));
+        assertNull(cache.get(address(KEY_1), "dog"));
+        assertNull(jsonRpc.signingService.get(address(KEY_1)));
+        assertNotNull(cache.get(address(KEY_2), "cow"));
+    }
+
+    private Object metric(String name) {
+        return cache.metrics().stream().filter(m -> m.getName().equals(name)).findFirst().get().getValue();
+    }
+
+    private static String address(ECKey key) {
+        return Hex.toHexString(key.getAddress());
+    }
+}
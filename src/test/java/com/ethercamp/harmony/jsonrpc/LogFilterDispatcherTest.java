@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.jsonrpc.JsonRpc.FilterRequest;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.LogFilterElement;
+import org.ethereum.core.Block;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.ethercamp.harmony.jsonrpc.TypeConverter.toJsonHex;
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LogFilterDispatcherTest {
+
+    private static final byte[] ADDRESS_1 = Arrays.copyOf(sha3("cow".getBytes()), 20);
+    private static final byte[] ADDRESS_2 = Arrays.copyOf(sha3("dog".getBytes()), 20);
+    private static final byte[] TOPIC_1 = sha3("Transfer".getBytes());
+    private static final byte[] TOPIC_2 = sha3("Approval".getBytes());
+
+    private final EthJsonRpcImpl jsonRpc = new EthJsonRpcImpl();
+
+    @Test
+    public void routingTest() {
+        final List<LogFilterElement> byAddress = new ArrayList<>();
+        final List<LogFilterElement> byAddresses = new ArrayList<>();
+        final List<LogFilterElement> byTopic = new ArrayList<>();
+        final List<LogFilterElement> bySecondTopic = new ArrayList<>();
+        final List<LogFilterElement> any = new ArrayList<>();
+
+        jsonRpc.subscribeLogs(request(toJsonHex(ADDRESS_1)), byAddress::add);
+        jsonRpc.subscribeLogs(request(new String[] {toJsonHex(ADDRESS_1), toJsonHex(ADDRESS_2)}), byAddresses::add);
+        jsonRpc.subscribeLogs(request(null, toJsonHex(TOPIC_1)), byTopic::add);
+        jsonRpc.subscribeLogs(request(null, null, toJsonHex(TOPIC_2)), bySecondTopic::add);
+        jsonRpc.subscribeLogs(request(null), any::add);
+
+        dispatch(
+                log(ADDRESS_1, TOPIC_1),
+                log(ADDRESS_2, TOPIC_2, TOPIC_2),
+                log(ADDRESS_1, TOPIC_2, TOPIC_1));
+
+        assertEquals(Arrays.asList("0x0", "0x2"), txIndexes(byAddress));
+        assertEquals(Arrays.asList("0x0", "0x1", "0x2"), txIndexes(byAddresses));
+        assertEquals(Arrays.asList("0x0"), txIndexes(byTopic));
+        assertEquals(Arrays.asList("0x1"), txIndexes(bySecondTopic));
+        assertEquals(Arrays.asList("0x0", "0x1", "0x2"), txIndexes(any));
+    }
+
+    @Test
+    public void removedFilterTest() {
+        final List<LogFilterElement> logs = new ArrayList<>();
+        final EthJsonRpcImpl.JsonLogFilter filter = jsonRpc.subscribeLogs(request(toJsonHex(ADDRESS_1)), logs::add);
+
+        dispatch(log(ADDRESS_1, TOPIC_1));
+        jsonRpc.unsubscribeLogs(filter);
+        dispatch(log(ADDRESS_1, TOPIC_1));
+
+        assertEquals(1, logs.size());
+    }
+
+    @Test
+    public void sharedElementTest() {
+        final List<LogFilterElement> first = new ArrayList<>();
+        final List<LogFilterElement> second = new ArrayList<>();
+        jsonRpc.subscribeLogs(request(toJsonHex(ADDRESS_1)), first::add);
+        jsonRpc.subscribeLogs(request(null, toJsonHex(TOPIC_1)), second::add);
+
+        dispatch(log(ADDRESS_1, TOPIC_1), log(ADDRESS_1, TOPIC_1));
+
+        assertEquals(2, first.size());
+        assertSame(first.get(0), second.get(0));
+        assertSame(first.get(1), second.get(1));
+        assertNotSame(first.get(0), first.get(1));
+    }
+
+    private static FilterRequest request(Object address, String... topics) {
+        final FilterRequest request = new FilterRequest();
+        request.address = address;
+        request.topics = topics;
+        return request;
+    }
+
+    /**
+     * Dispatches block with single transaction per log
+     */
+    private void dispatch(LogInfo... logs) {
+        final Bloom bloom = new Bloom();
+        final List<Transaction> txs = new ArrayList<>();
+        final List<TransactionReceipt> receipts = new ArrayList<>();
+        for (LogInfo log : logs) {
+            bloom.or(log.getBloom());
+
+            final Transaction tx = mock(Transaction.class);
+            when(tx.getHash()).thenReturn(sha3(log.getEncoded()));
+            when(tx.getReceiveAddress()).thenReturn(log.getAddress());
+            txs.add(tx);
+
+            final TransactionReceipt receipt = new TransactionReceipt(new byte[32], new byte[] {1}, log.getBloom(), Arrays.asList(log));
+            receipt.setTransaction(tx);
+            receipts.add(receipt);
+        }
+
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(1L);
+        when(block.getHash()).thenReturn(sha3("block".getBytes()));
+        when(block.getLogBloom()).thenReturn(bloom.getData());
+        when(block.getTransactionsList()).thenReturn(txs);
+
+        jsonRpc.logFilterDispatcher.onBlock(block, receipts);
+    }
+
+    private static List<String> txIndexes(List<LogFilterElement> logs) {
+        return logs.stream().map(log -> log.transactionIndex).collect(Collectors.toList());
+    }
+
+    private static LogInfo log(byte[] address, byte[]... topics) {
+        return new LogInfo(address, Arrays.stream(topics).map(DataWord::of).collect(Collectors.toList()), new byte[0]);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.jsonrpc.LogIndex.LogPosition;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.db.BlockStore;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LogIndexTest {
+
+    private static final byte[] ADDRESS_1 = Arrays.copyOf(sha3("cow".getBytes()), 20);
+    private static final byte[] ADDRESS_2 = Arrays.copyOf(sha3("dog".getBytes()), 20);
+    private static final byte[] TOPIC_1 = sha3("Transfer".getBytes());
+    private static final byte[] TOPIC_2 = sha3("Approval".getBytes());
+
+    private LogIndex logIndex;
+
+    @Before
+    public void before() {
+        logIndex = new LogIndex();
+        logIndex.open(new HashMapDB<>());
+    }
+
+    @Test
+    public void lookupTest() {
+        // block 0 is empty, block 1 has logs of both addresses
+        logIndex.onBlock(block(0), Collections.emptyList());
+        logIndex.onBlock(block(1), Arrays.asList(
+                receipt(log(ADDRESS_1, TOPIC_1), log(ADDRESS_2, TOPIC_2)),
+                receipt(log(ADDRESS_1, TOPIC_2))));
+        logIndex.onBlock(block(2), Arrays.asList(receipt(log(ADDRESS_2, TOPIC_1))));
+        assertEquals(2, logIndex.getIndexedBlock());
+
+        assertEquals(Arrays.asList(new LogPosition(1, 0, 0), new LogPosition(1, 1, 0)),
+                logIndex.find(Arrays.asList(ADDRESS_1), Collections.emptyList(), 0, 2));
+
+        assertEquals(Arrays.asList(new LogPosition(1, 0, 0), new LogPosition(1, 0, 1), new LogPosition(1, 1, 0), new LogPosition(2, 0, 0)),
+                logIndex.find(Arrays.asList(ADDRESS_1, ADDRESS_2), Collections.emptyList(), 0, 2));
+
+        // address and topic are intersected
+        assertEquals(Arrays.asList(new LogPosition(2, 0, 0)),
+                logIndex.find(Arrays.asList(ADDRESS_2), Arrays.<byte[][]>asList(new byte[][] {TOPIC_1}), 0, 2));
+
+        // range is respected
+        assertEquals(Arrays.asList(new LogPosition(2, 0, 0)),
+                logIndex.find(Collections.emptyList(), Arrays.<byte[][]>asList(new byte[][] {TOPIC_1}), 2, 2));
+
+        // null topic matches any topic
+        assertEquals(Arrays.asList(new LogPosition(1, 0, 0), new LogPosition(1, 1, 0)),
+                logIndex.find(Arrays.asList(ADDRESS_1), Arrays.<byte[][]>asList((byte[][]) null), 0, 2));
+
+        // no restrictions
+        assertNull(logIndex.find(Collections.emptyList(), Collections.emptyList(), 0, 2));
+    }
+
+    @Test
+    public void blockAheadIsSkippedTest() {
+        logIndex.onBlock(block(0), Collections.emptyList());
+        logIndex.onBlock(block(5), Arrays.asList(receipt(log(ADDRESS_1, TOPIC_1))));
+
+        assertEquals(0, logIndex.getIndexedBlock());
+        assertEquals(Collections.emptyList(), logIndex.find(Arrays.asList(ADDRESS_1), Collections.emptyList(), 0, 5));
+    }
+
+    @Test
+    public void segmentsMergeTest() {
+        // each block is flushed as separate segment, so segments of the same bucket are merged several times
+        final int blocks = LogIndex.MAX_SEGMENTS * 3 + 5;
+        final List<LogPosition> expected = new ArrayList<>();
+        for (int number = 0; number < blocks; number++) {
+            logIndex.onBlock(block(number), Arrays.asList(receipt(log(ADDRESS_1, TOPIC_1))));
+            expected.add(new LogPosition(number, 0, 0));
+        }
+        // next bucket
+        logIndex.onBlock(block(blocks), Collections.emptyList());
+        for (long number = blocks + 1; number <= LogIndex.BUCKET_SIZE + 1; number++) {
+            logIndex.onBlock(block(number), number % 100 == 0
+                    ? Arrays.asList(receipt(log(ADDRESS_1, TOPIC_1)))
+                    : Collections.emptyList());
+            if (number % 100 == 0) {
+                expected.add(new LogPosition(number, 0, 0));
+            }
+        }
+
+        assertEquals(expected, logIndex.find(Arrays.asList(ADDRESS_1), Collections.emptyList(), 0, LogIndex.BUCKET_SIZE + 1));
+        assertEquals(expected, logIndex.find(Collections.emptyList(), Arrays.<byte[][]>asList(new byte[][] {TOPIC_1}), 0, LogIndex.BUCKET_SIZE + 1));
+        assertEquals(expected.subList(10, 20), logIndex.find(Arrays.asList(ADDRESS_1), Collections.emptyList(), 10, 19));
+    }
+
+    @Test
+    public void reorgDuringBackfillTest() {
+        final BlockchainImpl blockchain = mock(BlockchainImpl.class);
+        final BlockStore blockStore = mock(BlockStore.class);
+        logIndex.blockchain = blockchain;
+        when(blockchain.getBlockStore()).thenReturn(blockStore);
+
+        final Map<Long, Block> mainChain = new HashMap<>();
+        for (long number = 0; number <= 3; number++) {
+            mainChain.put(number, storedBlock(blockchain, number, String.valueOf(number), log(ADDRESS_1, TOPIC_1)));
+        }
+        final Block replacement = storedBlock(blockchain, 2, "2a", log(ADDRESS_2, TOPIC_1));
+        final List<TransactionReceipt> replacementReceipts = Arrays.asList(
+                blockchain.getTransactionInfo(replacement.getTransactionsList().get(0).getHash()).getReceipt());
+
+        when(blockchain.getBestBlock()).thenAnswer(invocation -> mainChain.get(3L));
+        when(blockStore.getBlockHashByNumber(anyLong())).thenAnswer(invocation -> mainChain.get(invocation.getArguments()[0]).getHash());
+        when(blockchain.getBlockByNumber(anyLong())).thenAnswer(invocation -> {
+            final long number = (Long) invocation.getArguments()[0];
+            final Block block = mainChain.get(number);
+            if (number == 2 && block != replacement) {
+                // reorg is imported right after backfill has read old block,
+                // replacement is ahead of indexed blocks, so onBlock skips it
+                mainChain.put(2L, replacement);
+                logIndex.onBlock(replacement, replacementReceipts);
+            }
+            return block;
+        });
+
+        logIndex.backfill();
+
+        assertEquals(3, logIndex.getIndexedBlock());
+        assertEquals(Arrays.asList(new LogPosition(2, 0, 0)),
+                logIndex.find(Arrays.asList(ADDRESS_2), Collections.emptyList(), 0, 3));
+        assertEquals(Arrays.asList(new LogPosition(0, 0, 0), new LogPosition(1, 0, 0), new LogPosition(3, 0, 0)),
+                logIndex.find(Arrays.asList(ADDRESS_1), Collections.emptyList(), 0, 3));
+    }
+
+    /**
+     * Block with one transaction, which receipt is available from blockchain
+     */
+    private static Block storedBlock(BlockchainImpl blockchain, long number, String name, LogInfo log) {
+        final Block block = block(number);
+        when(block.getHash()).thenReturn(sha3(name.getBytes()));
+        when(block.getLogBloom()).thenReturn(log.getBloom().getData());
+
+        final Transaction tx = mock(Transaction.class);
+        when(tx.getHash()).thenReturn(sha3(("tx" + name).getBytes()));
+        when(block.getTransactionsList()).thenReturn(Arrays.asList(tx));
+        final TransactionInfo txInfo = new TransactionInfo(receipt(log), block.getHash(), 0);
+        when(blockchain.getTransactionInfo(tx.getHash())).thenReturn(txInfo);
+        return block;
+    }
+
+    private static Block block(long number) {
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        return block;
+    }
+
+    private static TransactionReceipt receipt(LogInfo... logs) {
+        return new TransactionReceipt(new byte[32], new byte[] {1}, new Bloom(), Arrays.asList(logs));
+    }
+
+    private static LogInfo log(byte[] address, byte[] topic) {
+        return new LogInfo(address, Arrays.asList(DataWord.of(topic)), new byte[0]);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.jsonrpc.JsonRpc.LogFilterElement;
+import org.ethereum.core.*;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LogScanTest {
+
+    private static final int BLOCKS = 100;
+
+    private final EthJsonRpcImpl jsonRpc = new EthJsonRpcImpl();
+
+    private final AtomicInteger loadedBlocks = new AtomicInteger();
+
+    /**
+     * Selects blocks, which are loaded slowly
+     */
+    private LongPredicate slowBlocks = number -> false;
+
+    @Before
+    public void before() {
+        jsonRpc.logScanPool = new ForkJoinPool(4);
+        jsonRpc.blockchain = mock(BlockchainImpl.class);
+
+        final List<Block> blocks = new ArrayList<>();
+        for (int number = 0; number < BLOCKS; number++) {
+            blocks.add(block(number));
+        }
+        when(jsonRpc.blockchain.getBlockByNumber(anyLong())).thenAnswer(invocation -> {
+            final long number = (Long) invocation.getArguments()[0];
+            loadedBlocks.incrementAndGet();
+            Thread.sleep(slowBlocks.test(number) ? 20 : 1);
+            return blocks.get((int) number);
+        });
+        when(jsonRpc.blockchain.getTransactionInfo(any(byte[].class))).thenAnswer(invocation -> {
+            final byte[] hash = (byte[]) invocation.getArguments()[0];
+            return blocks.stream()
+                    .filter(b -> Arrays.equals(b.getTransactionsList().get(0).getHash(), hash))
+                    .findFirst()
+                    .map(b -> txInfo(b))
+                    .orElse(null);
+        });
+    }
+
+    @After
+    public void after() {
+        jsonRpc.logScanPool.shutdownNow();
+    }
+
+    @Test
+    public void chunksMergeOrderTest() throws Exception {
+        // blocks of first chunks are slower, so later chunks complete first
+        slowBlocks = number -> number < 10;
+        final List<LogFilterElement> logs = new ArrayList<>();
+        final EthJsonRpcImpl.PagedLogFilter filter = jsonRpc.new PagedLogFilter(null, Integer.MAX_VALUE, logs::add);
+
+        jsonRpc.scanChunks(filter, chunks(0, BLOCKS - 1, 5));
+
+        assertEquals(LongStream.range(0, BLOCKS).mapToObj(TypeConverter::toJsonHex).collect(Collectors.toList()),
+                logs.stream().map(log -> log.blockNumber).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void abandonedChunksStopTest() throws Exception {
+        slowBlocks = number -> number >= 25;
+        final List<LogFilterElement> logs = new ArrayList<>();
+        final EthJsonRpcImpl.PagedLogFilter filter = jsonRpc.new PagedLogFilter(null, 1, logs::add);
+
+        // filter is complete after first chunk, other chunks are left in progress
+        jsonRpc.scanChunks(filter, chunks(0, BLOCKS - 1, 25));
+        Thread.sleep(200);
+        final int loaded = loadedBlocks.get();
+        Thread.sleep(200);
+
+        assertEquals(1, logs.size());
+        assertEquals(loaded, loadedBlocks.get());
+        assertTrue("Loaded " + loaded + " blocks", loaded < BLOCKS);
+    }
+
+    private static List<LongStream> chunks(long from, long to, int size) {
+        final List<LongStream> result = new ArrayList<>();
+        for (long chunkFrom = from; chunkFrom <= to; chunkFrom += size) {
+            result.add(LongStream.rangeClosed(chunkFrom, Math.min(to, chunkFrom + size - 1)));
+        }
+        return result;
+    }
+
+    private static Block block(long number) {
+        final Transaction tx = mock(Transaction.class);
+        when(tx.getHash()).thenReturn(sha3(("tx" + number).getBytes()));
+        when(tx.getReceiveAddress()).thenReturn(new byte[20]);
+
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(sha3(("block" + number).getBytes()));
+        when(block.getLogBloom()).thenReturn(log().getBloom().getData());
+        when(block.getTransactionsList()).thenReturn(Arrays.asList(tx));
+        return block;
+    }
+
+    private static TransactionInfo txInfo(Block block) {
+        final TransactionReceipt receipt = new TransactionReceipt(new byte[32], new byte[] {1}, log().getBloom(), Arrays.asList(log()));
+        receipt.setTransaction(block.getTransactionsList().get(0));
+        final TransactionInfo txInfo = mock(TransactionInfo.class);
+        when(txInfo.getReceipt()).thenReturn(receipt);
+        return txInfo;
+    }
+
+    private static LogInfo log() {
+        return new LogInfo(new byte[20], Arrays.asList(DataWord.of(1)), new byte[0]);
+    }
+}
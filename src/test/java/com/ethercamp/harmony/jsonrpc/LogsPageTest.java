@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.jsonrpc.JsonRpc.LogFilterElement;
+import org.ethereum.core.Block;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LogsPageTest {
+
+    private final EthJsonRpcImpl jsonRpc = new EthJsonRpcImpl();
+
+    @Test
+    public void cursorRoundTripTest() {
+        final LogIndex.LogPosition position = new LogIndex.LogPosition(5_000_000, 12, 3);
+        assertEquals(position, EthJsonRpcImpl.parseLogCursor(EthJsonRpcImpl.toLogCursor(position)));
+        assertNull(EthJsonRpcImpl.parseLogCursor(null));
+        assertNull(EthJsonRpcImpl.parseLogCursor(""));
+    }
+
+    @Test
+    public void limitTest() {
+        assertEquals(EthJsonRpcImpl.MAX_LOGS_PAGE, EthJsonRpcImpl.parseLogsLimit(null));
+        assertEquals(1, EthJsonRpcImpl.parseLogsLimit("0x1"));
+        assertEquals(EthJsonRpcImpl.MAX_LOGS_PAGE, EthJsonRpcImpl.parseLogsLimit("0x100000000"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void zeroLimitTest() {
+        EthJsonRpcImpl.parseLogsLimit("0x0");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void negativeLimitTest() {
+        EthJsonRpcImpl.parseLogsLimit("-1");
+    }
+
+    @Test
+    public void pageBoundariesTest() {
+        // 3 blocks with 2 transactions of 2 logs each
+        final List<Block> blocks = Arrays.asList(block(10), block(11), block(12));
+
+        // page boundary falls inside transaction
+        final List<LogFilterElement> page1 = new ArrayList<>();
+        final LogIndex.LogPosition next1 = scan(blocks, null, 5, page1);
+        assertEquals(5, page1.size());
+        assertEquals(new LogIndex.LogPosition(11, 0, 1), next1);
+
+        // cursor is passed to client and back
+        final List<LogFilterElement> page2 = new ArrayList<>();
+        final LogIndex.LogPosition next2 = scan(blocks, EthJsonRpcImpl.parseLogCursor(EthJsonRpcImpl.toLogCursor(next1)), 5, page2);
+        assertEquals(5, page2.size());
+        assertEquals("0xb", page2.get(0).blockNumber);
+        assertEquals("0x0", page2.get(0).transactionIndex);
+        assertEquals("0x1", page2.get(0).logIndex);
+        assertEquals(new LogIndex.LogPosition(12, 1, 0), next2);
+
+        // last page exactly fits limit, so there is no next cursor
+        final List<LogFilterElement> page3 = new ArrayList<>();
+        assertNull(scan(blocks, next2, 2, page3));
+        assertEquals(2, page3.size());
+        assertEquals("0xc", page3.get(1).blockNumber);
+        assertEquals("0x1", page3.get(1).logIndex);
+    }
+
+    private LogIndex.LogPosition scan(List<Block> blocks, LogIndex.LogPosition resumeFrom, int limit, List<LogFilterElement> result) {
+        final EthJsonRpcImpl.PagedLogFilter filter = jsonRpc.new PagedLogFilter(resumeFrom, limit, result::add);
+        for (Block block : blocks) {
+            for (int txIndex = 0; txIndex < 2; txIndex++) {
+                filter.onTransactionReceipt(receipt(block, txIndex), block, txIndex);
+            }
+        }
+        return filter.next;
+    }
+
+    private static Block block(long number) {
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(sha3(("block" + number).getBytes()));
+        return block;
+    }
+
+    private static TransactionReceipt receipt(Block block, int txIndex) {
+        final Transaction tx = mock(Transaction.class);
+        when(tx.getHash()).thenReturn(sha3(("tx" + block.getNumber() + txIndex).getBytes()));
+        when(tx.getReceiveAddress()).thenReturn(new byte[20]);
+
+        final List<LogInfo> logs = Arrays.asList(
+                new LogInfo(new byte[20], Arrays.asList(DataWord.of(1)), new byte[0]),
+                new LogInfo(new byte[20], Arrays.asList(DataWord.of(2)), new byte[0]));
+        final Bloom bloom = new Bloom();
+        logs.forEach(log -> bloom.or(log.getBloom()));
+
+        final TransactionReceipt receipt = new TransactionReceipt(new byte[32], new byte[] {1}, bloom, logs);
+        receipt.setTransaction(tx);
+        return receipt;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import org.ethereum.core.PendingStateImpl;
+import org.ethereum.core.PendingTransactionState;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NonceManagerTest {
+
+    private static final byte[] ADDRESS = new byte[20];
+
+    private final NonceManager nonceManager = new NonceManager();
+
+    /**
+     * Nonce of account in pending state
+     */
+    private volatile BigInteger pendingNonce = BigInteger.valueOf(10);
+
+    @Before
+    public void before() {
+        nonceManager.pendingState = mock(PendingStateImpl.class);
+        final Repository repository = mock(Repository.class);
+        when(nonceManager.pendingState.getRepository()).thenReturn(repository);
+        when(repository.getNonce(any(byte[].class))).thenAnswer(invocation -> pendingNonce);
+    }
+
+    @Test
+    public void concurrentSendsTest() throws Exception {
+        final int threads = 8;
+        final int sendsPerThread = 50;
+        final Set<BigInteger> nonces = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < sendsPerThread; j++) {
+                        nonceManager.withNonce(ADDRESS, null, nonce -> {
+                            assertTrue("Duplicate nonce " + nonce, nonces.add(nonce));
+                            return null;
+                        });
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * sendsPerThread, nonces.size());
+        assertEquals(BigInteger.valueOf(10), nonces.stream().min(BigInteger::compareTo).get());
+        assertEquals(BigInteger.valueOf(10 + threads * sendsPerThread - 1), nonces.stream().max(BigInteger::compareTo).get());
+        // pending state is read only once
+        assertEquals(1L, metric("rpc.nonces.lookups"));
+    }
+
+    @Test
+    public void failedActionTest() {
+        assertEquals(BigInteger.valueOf(10), send());
+        assertEquals(BigInteger.valueOf(11), send());
+
+        try {
+            nonceManager.withNonce(ADDRESS, null, nonce -> {
+                throw new RuntimeException("Submission failed");
+            });
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("Submission failed", e.getMessage());
+        }
+
+        // failed transaction is not in pending state, so its nonce is reused
+        pendingNonce = BigInteger.valueOf(12);
+        assertEquals(BigInteger.valueOf(12), send());
+        assertEquals(2L, metric("rpc.nonces.lookups"));
+    }
+
+    @Test
+    public void explicitNonceTest() {
+        assertEquals(BigInteger.valueOf(10), send());
+        assertEquals(BigInteger.valueOf(15), nonceManager.withNonce(ADDRESS, BigInteger.valueOf(15), nonce -> nonce));
+        assertEquals(BigInteger.valueOf(16), send());
+    }
+
+    @Test
+    public void droppedTest() {
+        assertEquals(BigInteger.valueOf(10), send());
+        assertEquals(BigInteger.valueOf(11), send());
+
+        // other updates keep local nonce
+        nonceManager.onPendingTransactionUpdate(receipt(ADDRESS), PendingTransactionState.PENDING);
+        assertEquals(BigInteger.valueOf(12), send());
+
+        // transactions with nonces 11 and 12 are dropped
+        pendingNonce = BigInteger.valueOf(11);
+        nonceManager.onPendingTransactionUpdate(receipt(ADDRESS), PendingTransactionState.DROPPED);
+        assertEquals(BigInteger.valueOf(11), send());
+        assertEquals(1L, metric("rpc.nonces.drops"));
+
+        // drop of other account doesn't affect this one
+        nonceManager.onPendingTransactionUpdate(receipt(new byte[] {1}), PendingTransactionState.DROPPED);
+        assertEquals(BigInteger.valueOf(12), send());
+        assertEquals(1L, metric("rpc.nonces.drops"));
+    }
+
+    @Test
+    public void blockTest() {
+        assertEquals(BigInteger.valueOf(10), send());
+        assertEquals(BigInteger.valueOf(11), send());
+
+        // transaction of account was sent outside of RPC and included to block
+        pendingNonce = BigInteger.valueOf(15);
+        nonceManager.onBlock();
+        assertEquals(BigInteger.valueOf(15), send());
+        assertEquals(BigInteger.valueOf(16), send());
+        assertEquals(2L, metric("rpc.nonces.lookups"));
+    }
+
+    private BigInteger send() {
+        return nonceManager.withNonce(ADDRESS, null, nonce -> nonce);
+    }
+
+    private Object metric(String name) {
+        return nonceManager.metrics().stream().filter(m -> m.getName().equals(name)).findFirst().get().getValue();
+    }
+
+    private static TransactionReceipt receipt(byte[] sender) {
+        final Transaction tx = mock(Transaction.class);
+        when(tx.getSender()).thenReturn(sender);
+        final TransactionReceipt receipt = mock(TransactionReceipt.class);
+        when(receipt.getTransaction()).thenReturn(tx);
+        return receipt;
+    }
+}
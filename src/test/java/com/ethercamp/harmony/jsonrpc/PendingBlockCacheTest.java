@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.jsonrpc.JsonRpc.BlockResult;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.PendingStateImpl;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PendingBlockCacheTest {
+
+    private final PendingBlockCache cache = new PendingBlockCache();
+
+    private Block best;
+
+    @Before
+    public void before() {
+        cache.blockchain = mock(BlockchainImpl.class);
+        cache.pendingState = mock(PendingStateImpl.class);
+        best = block(1);
+        when(cache.blockchain.getBestBlock()).thenAnswer(invocation -> best);
+        // new pending block is built on each call, so rebuild gives another instance
+        when(cache.blockchain.createNewBlock(any(Block.class), anyListOf(Transaction.class), anyListOf(BlockHeader.class)))
+                .thenAnswer(invocation -> block(((Block) invocation.getArguments()[0]).getNumber() + 1));
+    }
+
+    @Test
+    public void versionTest() {
+        assertEquals(0, cache.getVersion());
+        final PendingBlockCache.Snapshot snapshot = cache.getSnapshot();
+        assertEquals(0, snapshot.getVersion());
+        assertEquals(2, snapshot.getBlock().getNumber());
+
+        cache.invalidate();
+        cache.invalidate();
+        assertEquals(2, cache.getVersion());
+        assertEquals(2, cache.getSnapshot().getVersion());
+        assertEquals(2L, metric("rpc.pendingBlock.version"));
+    }
+
+    @Test
+    public void sharedSnapshotTest() {
+        final PendingBlockCache.Snapshot snapshot = cache.getSnapshot();
+        assertSame(snapshot, cache.getSnapshot());
+        assertSame(snapshot, cache.getSnapshot());
+        assertEquals(1L, metric("rpc.pendingBlock.rebuilds"));
+    }
+
+    @Test
+    public void invalidateTest() {
+        final PendingBlockCache.Snapshot snapshot = cache.getSnapshot();
+        cache.invalidate();
+
+        final PendingBlockCache.Snapshot rebuilt = cache.getSnapshot();
+        assertNotSame(snapshot, rebuilt);
+        assertSame(rebuilt, cache.getSnapshot());
+        assertEquals(2L, metric("rpc.pendingBlock.rebuilds"));
+    }
+
+    @Test
+    public void bestBlockMovedTest() {
+        final PendingBlockCache.Snapshot snapshot = cache.getSnapshot();
+
+        // block is imported, but its event is not handled yet, so version is the same
+        best = block(2);
+        final PendingBlockCache.Snapshot rebuilt = cache.getSnapshot();
+        assertNotSame(snapshot, rebuilt);
+        assertEquals(snapshot.getVersion(), rebuilt.getVersion());
+        assertEquals(3, rebuilt.getBlock().getNumber());
+        assertSame(rebuilt, cache.getSnapshot());
+    }
+
+    @Test
+    public void blockResultOncePerSnapshotTest() throws Exception {
+        final AtomicInteger renders = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final PendingBlockCache.Snapshot snapshot = cache.getSnapshot();
+            final List<Future<BlockResult>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final boolean fullTx = i % 2 == 0;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return snapshot.getBlockResult(fullTx, (block, full) -> {
+                        renders.incrementAndGet();
+                        return new BlockResult();
+                    });
+                }));
+            }
+            start.countDown();
+
+            for (int i = 0; i < results.size(); i++) {
+                assertSame(results.get(i % 2).get(5, TimeUnit.SECONDS), results.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertNotSame(results.get(0).get(), results.get(1).get());
+            // once for light and once for full variant
+            assertEquals(2, renders.get());
+
+            // new snapshot renders again
+            cache.invalidate();
+            cache.getSnapshot().getBlockResult(false, (block, full) -> {
+                renders.incrementAndGet();
+                return new BlockResult();
+            });
+            assertEquals(3, renders.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void repositoryOncePerSnapshotTest() {
+        final AtomicInteger builds = new AtomicInteger();
+        final PendingBlockCache.Snapshot snapshot = cache.getSnapshot();
+        assertSame(best, snapshot.getParent());
+
+        final Repository repository = snapshot.getRepository(s -> {
+            builds.incrementAndGet();
+            assertSame(snapshot, s);
+            return mock(Repository.class);
+        });
+        assertSame(repository, snapshot.getRepository(s -> {
+            builds.incrementAndGet();
+            return mock(Repository.class);
+        }));
+        assertEquals(1, builds.get());
+
+        // pending transactions changed, state is built again for new snapshot
+        cache.invalidate();
+        assertNotSame(repository, cache.getSnapshot().getRepository(s -> mock(Repository.class)));
+    }
+
+    private Object metric(String name) {
+        return cache.metrics().stream().filter(m -> m.getName().equals(name)).findFirst().get().getValue();
+    }
+
+    private static Block block(long number) {
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(sha3(("block" + number).getBytes()));
+        return block;
+    }
+}
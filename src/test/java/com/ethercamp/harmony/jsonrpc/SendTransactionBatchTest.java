@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.CallArguments;
+import com.ethercamp.harmony.jsonrpc.JsonRpc.SendResult;
+import com.ethercamp.harmony.keystore.Keystore;
+import org.ethereum.core.PendingStateImpl;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.facade.Ethereum;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SendTransactionBatchTest {
+
+    private static final ECKey KEY_1 = ECKey.fromPrivate(BigInteger.valueOf(1001));
+    private static final ECKey KEY_2 = ECKey.fromPrivate(BigInteger.valueOf(1002));
+    private static final ECKey LOCKED_KEY = ECKey.fromPrivate(BigInteger.valueOf(1003));
+
+    private final EthJsonRpcImpl jsonRpc = new EthJsonRpcImpl();
+
+    private final List<Transaction> submitted = new ArrayList<>();
+
+    @Before
+    public void before() {
+        jsonRpc.harmonyProperties = mock(HarmonyProperties.class);
+        when(jsonRpc.harmonyProperties.sendBatchMaxSize()).thenReturn(1000);
+        jsonRpc.keystore = mock(Keystore.class);
+        when(jsonRpc.keystore.hasStoredKey(anyString())).thenReturn(true);
+
+        jsonRpc.nonceManager = new NonceManager();
+        jsonRpc.nonceManager.pendingState = mock(PendingStateImpl.class);
+        final Repository repository = mock(Repository.class);
+        when(jsonRpc.nonceManager.pendingState.getRepository()).thenReturn(repository);
+        when(repository.getNonce(any(byte[].class))).thenAnswer(invocation -> BigInteger.valueOf(submitted.stream()
+                .filter(tx -> Arrays.equals(tx.getSender(), (byte[]) invocation.getArguments()[0]))
+                .count()));
+
+        jsonRpc.signingService = new SigningService();
+        jsonRpc.signingService.nonceManager = jsonRpc.nonceManager;
+        jsonRpc.signingService.unlock(KEY_1);
+        jsonRpc.signingService.unlock(KEY_2);
+
+        // transactions with data are rejected by pending state
+        jsonRpc.eth = mock(Ethereum.class);
+        when(jsonRpc.eth.submitTransaction(any(Transaction.class))).thenAnswer(invocation -> {
+            final Transaction tx = (Transaction) invocation.getArguments()[0];
+            if (tx.getData() != null && tx.getData().length > 0) {
+                throw new RuntimeException("Transaction rejected");
+            }
+            submitted.add(tx);
+            return null;
+        });
+    }
+
+    @Test
+    public void resultsInOrderTest() {
+        final SendResult[] results = jsonRpc.ethj_sendTransactionBatch(new CallArguments[] {
+                tx(KEY_1, null), tx(KEY_2, null), tx(KEY_1, null), tx(KEY_1, null), tx(KEY_2, null)});
+
+        assertEquals(5, results.length);
+        assertEquals(5, submitted.size());
+        for (int i = 0; i < results.length; i++) {
+            assertNull(results[i].error);
+            assertEquals(TypeConverter.toJsonHex(submitted.get(i).getHash()), results[i].hash);
+        }
+        // transactions of one account get consecutive nonces in batch order
+        assertEquals(0, nonce(submitted.get(0)));
+        assertEquals(0, nonce(submitted.get(1)));
+        assertEquals(1, nonce(submitted.get(2)));
+        assertEquals(2, nonce(submitted.get(3)));
+        assertEquals(1, nonce(submitted.get(4)));
+        assertArrayEquals(KEY_2.getAddress(), submitted.get(4).getSender());
+    }
+
+    @Test
+    public void failureDoesntAbortBatchTest() {
+        final SendResult[] results = jsonRpc.ethj_sendTransactionBatch(new CallArguments[] {
+                tx(KEY_1, null), tx(KEY_1, "0x01"), tx(LOCKED_KEY, null), tx(KEY_1, null)});
+
+        assertEquals(4, results.length);
+        assertNotNull(results[0].hash);
+        assertNull(results[0].error);
+
+        assertNull(results[1].hash);
+        assertEquals("Transaction rejected", results[1].error);
+
+        assertNull(results[2].hash);
+        assertTrue(results[2].error, results[2].error.startsWith("Unlocked account is required"));
+
+        assertNull(results[3].error);
+        assertEquals(2, submitted.size());
+        assertEquals(TypeConverter.toJsonHex(submitted.get(1).getHash()), results[3].hash);
+        // nonce of rejected transaction is reused
+        assertEquals(1, nonce(submitted.get(1)));
+    }
+
+    private static CallArguments tx(ECKey from, String data) {
+        final CallArguments args = new CallArguments();
+        args.from = "0x" + Hex.toHexString(from.getAddress());
+        args.to = "0x" + Hex.toHexString(new byte[20]);
+        args.gas = "0x5208";
+        args.gasPrice = "0x1";
+        args.value = "0x1";
+        args.data = data;
+        return args;
+    }
+
+    private static long nonce(Transaction tx) {
+        return new BigInteger(1, tx.getNonce()).longValue();
+    }
+}
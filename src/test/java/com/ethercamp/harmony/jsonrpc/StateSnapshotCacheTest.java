@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.db.RepositoryRoot;
+import org.ethereum.manager.WorldManager;
+import org.ethereum.vm.DataWord;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StateSnapshotCacheTest {
+
+    private static final byte[] ADDRESS = Arrays.copyOf(sha3("cow".getBytes()), 20);
+    private static final DataWord KEY = DataWord.of(1);
+
+    private final StateSnapshotCache cache = new StateSnapshotCache();
+
+    private Block block;
+
+    @Before
+    public void before() {
+        final RepositoryRoot repository = new RepositoryRoot(new HashMapDB<>());
+        repository.addBalance(ADDRESS, BigInteger.valueOf(100));
+        repository.addStorageRow(ADDRESS, KEY, DataWord.of(7));
+        repository.commit();
+
+        cache.worldManager = mock(WorldManager.class);
+        cache.properties = mock(HarmonyProperties.class);
+        when(cache.worldManager.getRepository()).thenReturn(repository);
+        when(cache.properties.stateSnapshotsWindow()).thenReturn(16);
+        when(cache.properties.stateSnapshotsMaxCalls()).thenReturn(1000);
+
+        block = mock(Block.class);
+        when(block.getNumber()).thenReturn(1L);
+        when(block.getStateRoot()).thenReturn(repository.getRoot());
+    }
+
+    @Test
+    public void concurrentTrackingTest() throws Exception {
+        final Repository snapshot = cache.getSnapshot(block);
+
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 1; i <= threads; i++) {
+                final int value = i;
+                futures.add(executor.submit(() -> {
+                    final Repository track = cache.getTrackingRepository(block);
+                    track.addBalance(ADDRESS, BigInteger.valueOf(value));
+                    track.addStorageRow(ADDRESS, KEY, DataWord.of(value));
+                    // all layers are modified before any of them is read
+                    barrier.await(5, TimeUnit.SECONDS);
+                    assertEquals(BigInteger.valueOf(100 + value), track.getBalance(ADDRESS));
+                    assertEquals(DataWord.of(value), track.getStorageValue(ADDRESS, KEY));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertSame(snapshot, cache.getSnapshot(block));
+        assertEquals(BigInteger.valueOf(100), snapshot.getBalance(ADDRESS));
+        assertEquals(DataWord.of(7), snapshot.getStorageValue(ADDRESS, KEY));
+        assertEquals(1L, metric("rpc.stateSnapshots.misses"));
+    }
+
+    @Test
+    public void renewalTest() {
+        when(cache.properties.stateSnapshotsMaxCalls()).thenReturn(2);
+
+        final Repository first = cache.getSnapshot(block);
+        assertSame(first, cache.getSnapshot(block));
+        final Repository renewed = cache.getSnapshot(block);
+        assertNotSame(first, renewed);
+        assertSame(renewed, cache.getSnapshot(block));
+
+        assertEquals(BigInteger.valueOf(100), renewed.getBalance(ADDRESS));
+        assertEquals(1L, metric("rpc.stateSnapshots.renewals"));
+        assertEquals(1, metric("rpc.stateSnapshots.size"));
+    }
+
+    private Object metric(String name) {
+        return cache.metrics().stream()
+                .filter(m -> m.getName().equals(name))
+                .findFirst().get().getValue();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.jsonrpc;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.db.BlockStore;
+import org.ethereum.util.ByteUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.ethercamp.harmony.jsonrpc.TypeConverter.toJsonHex;
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TransactionCacheTest {
+
+    private static final ECKey SENDER = ECKey.fromPrivate(sha3("cow".getBytes()));
+
+    private final TransactionCache cache = new TransactionCache();
+
+    /**
+     * Main chain block hash by number, as in block store index
+     */
+    private final Map<Long, byte[]> mainChain = new HashMap<>();
+
+    private final Block genesis = block(0, "0", null);
+
+    private long nonce;
+
+    @Before
+    public void before() {
+        cache.blockchain = mock(BlockchainImpl.class);
+        cache.properties = mock(HarmonyProperties.class);
+        final BlockStore blockStore = mock(BlockStore.class);
+        when(cache.blockchain.getBlockStore()).thenReturn(blockStore);
+        when(blockStore.getBlockHashByNumber(anyLong())).thenAnswer(invocation -> mainChain.get(invocation.getArguments()[0]));
+        when(cache.properties.transactionCacheSize()).thenReturn(4);
+        cache.init();
+        mainChain.put(0L, genesis.getHash());
+    }
+
+    @Test
+    public void hitMissTest() {
+        final Block b1 = block(1, "1", genesis, tx(), tx());
+        importBlock(b1);
+
+        final Transaction tx = b1.getTransactionsList().get(1);
+        final TransactionCache.Entry entry = cache.get(tx.getHash());
+        assertNotNull(entry);
+        assertEquals(toJsonHex(tx.getHash()), entry.getTransaction().hash);
+        assertEquals("0x1", entry.getReceipt().transactionIndex);
+        assertEquals(toJsonHex(b1.getHash()), entry.getReceipt().blockHash);
+        assertNull(cache.get(tx().getHash()));
+
+        assertEquals(1L, metric("rpc.txCache.hits"));
+        assertEquals(1L, metric("rpc.txCache.misses"));
+        // main chain is checked by hash in block store index, blocks are not loaded
+        verify(cache.blockchain, never()).getBlockByNumber(anyLong());
+    }
+
+    @Test
+    public void reorgTest() {
+        final Block b1 = block(1, "1", genesis);
+        final Block b2 = block(2, "2", b1, tx());
+        final Block b3 = block(3, "3", b2, tx());
+        importBlock(b1);
+        importBlock(b2);
+        importBlock(b3);
+
+        final Block b2a = block(2, "2a", b1, tx());
+        final Block b3a = block(3, "3a", b2a);
+        importBlock(b2a);
+        importBlock(b3a);
+
+        assertNull(cache.get(b2.getTransactionsList().get(0).getHash()));
+        assertNull(cache.get(b3.getTransactionsList().get(0).getHash()));
+        assertNotNull(cache.get(b2a.getTransactionsList().get(0).getHash()));
+        assertEquals(1, metric("rpc.txCache.size"));
+    }
+
+    @Test
+    public void shorterChainTest() {
+        final Block b1 = block(1, "1", genesis);
+        final Block b2 = block(2, "2", b1, tx());
+        final Block b3 = block(3, "3", b2, tx());
+        importBlock(b1);
+        importBlock(b2);
+        importBlock(b3);
+
+        // heavier chain with less blocks
+        final Block b2a = block(2, "2a", b1, tx());
+        mainChain.remove(3L);
+        importBlock(b2a);
+
+        assertEquals(1, metric("rpc.txCache.size"));
+        assertNull(cache.get(b3.getTransactionsList().get(0).getHash()));
+        assertNotNull(cache.get(b2a.getTransactionsList().get(0).getHash()));
+    }
+
+    @Test
+    public void lookupBeforeReorgEventTest() {
+        final Block b1 = block(1, "1", genesis, tx());
+        importBlock(b1);
+
+        // block is replaced in block store, but event is not handled yet
+        mainChain.put(1L, sha3("1a".getBytes()));
+
+        assertNull(cache.get(b1.getTransactionsList().get(0).getHash()));
+        assertEquals(0, metric("rpc.txCache.size"));
+    }
+
+    @Test
+    public void sizeBoundTest() {
+        final Block b1 = block(1, "1", genesis, tx(), tx(), tx());
+        final Block b2 = block(2, "2", b1, tx(), tx(), tx());
+        importBlock(b1);
+        importBlock(b2);
+
+        assertEquals(4, metric("rpc.txCache.size"));
+        assertEquals(2L, metric("rpc.txCache.evictions"));
+        assertNull(cache.get(b1.getTransactionsList().get(0).getHash()));
+        assertNull(cache.get(b1.getTransactionsList().get(1).getHash()));
+        assertNotNull(cache.get(b1.getTransactionsList().get(2).getHash()));
+        assertNotNull(cache.get(b2.getTransactionsList().get(2).getHash()));
+    }
+
+    private void importBlock(Block block) {
+        mainChain.put(block.getNumber(), block.getHash());
+        final List<TransactionReceipt> receipts = new ArrayList<>();
+        for (Transaction ignored : block.getTransactionsList()) {
+            receipts.add(new TransactionReceipt(new byte[32], new byte[] {1}, new Bloom().getData(), Collections.emptyList()));
+        }
+        cache.onBlock(block, receipts);
+    }
+
+    private Block block(long number, String name, Block parent, Transaction... txs) {
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(sha3(name.getBytes()));
+        when(block.getParentHash()).thenReturn(parent == null ? new byte[32] : parent.getHash());
+        final List<Transaction> list = new ArrayList<>();
+        Collections.addAll(list, txs);
+        when(block.getTransactionsList()).thenReturn(list);
+        if (cache.blockchain != null) {
+            when(cache.blockchain.getBlockByHash(block.getHash())).thenReturn(block);
+        }
+        return block;
+    }
+
+    private Transaction tx() {
+        final Transaction tx = new Transaction(
+                ByteUtil.longToBytesNoLeadZeroes(nonce++),
+                ByteUtil.longToBytesNoLeadZeroes(1_000),
+                ByteUtil.longToBytesNoLeadZeroes(21_000),
+                new byte[20],
+                ByteUtil.longToBytesNoLeadZeroes(1),
+                new byte[0]);
+        tx.sign(SENDER);
+        return tx;
+    }
+
+    private Object metric(String name) {
+        return cache.metrics().stream()
+                .filter(m -> m.getName().equals(name))
+                .findFirst().get().getValue();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.keystore;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class KdfExecutorTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private KdfExecutor executor;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void before() {
+        final HarmonyProperties properties = mock(HarmonyProperties.class);
+        when(properties.kdfThreads()).thenReturn(2);
+        when(properties.kdfMaxMemory()).thenReturn(MB);
+        when(properties.kdfQueueSize()).thenReturn(1);
+        when(properties.kdfTimeoutSec()).thenReturn(1);
+        executor = new KdfExecutor(properties);
+        executor.init();
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        executor.close();
+    }
+
+    @Test
+    public void admissionTest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CompletableFuture<String> first = executor.submit(MB * 3 / 4, () -> {
+            started.countDown();
+            release.await();
+            return "first";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // second doesn't fit into memory left, so it waits for first
+        final CompletableFuture<String> second = executor.submit(MB / 2, () -> "second");
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+        assertEquals(MB * 3 / 4 / 1024, ((Number) metric("keystore.kdf.memoryUsedKb")).longValue());
+
+        release.countDown();
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, ((Number) metric("keystore.kdf.memoryUsedKb")).longValue());
+    }
+
+    @Test
+    public void oversizedRunsAloneTest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        // default scrypt needs 256MB, more than whole limit
+        final CompletableFuture<String> oversized = executor.submit(KdfExecutor.scryptMemory(262144, 8, 1), () -> {
+            started.countDown();
+            release.await();
+            return "oversized";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(MB / 1024, ((Number) metric("keystore.kdf.memoryUsedKb")).longValue());
+
+        final CompletableFuture<String> small = executor.submit(1024, () -> "small");
+        Thread.sleep(200);
+        assertFalse(small.isDone());
+
+        release.countDown();
+        assertEquals("oversized", oversized.get(5, TimeUnit.SECONDS));
+        assertEquals("small", small.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        final CompletableFuture<String> first = executor.submit(MB, () -> {
+            release.await();
+            return "first";
+        });
+        final CompletableFuture<String> second = executor.submit(1024, () -> "second");
+
+        assertFailure("busy", second);
+        assertEquals(1L, metric("keystore.kdf.timeouts"));
+
+        release.countDown();
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectTest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CompletableFuture<String> first = executor.submit(MB, () -> {
+            started.countDown();
+            release.await();
+            return "first";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // second takes other thread waiting for memory, third fills queue
+        final CompletableFuture<String> second = executor.submit(1024, () -> "second");
+        Thread.sleep(100);
+        final CompletableFuture<String> third = executor.submit(1024, () -> "third");
+        final CompletableFuture<String> rejected = executor.submit(1024, () -> "rejected");
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertFailure("Too many", rejected);
+        assertEquals(1L, metric("keystore.kdf.rejected"));
+
+        release.countDown();
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        assertEquals("third", third.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void assertFailure(String message, CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Derivation should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains(message));
+        }
+    }
+
+    private Object metric(String name) {
+        return executor.metrics().stream()
+                .filter(m -> m.getName().equals(name))
+                .findFirst().get().getValue();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.keystore;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.ethercamp.harmony.keystore.KeystoreTest.CORRECT_KEY;
+import static org.junit.Assert.*;
+
+public class KeystoreBulkToolTest {
+
+    private static final String ADDRESS = "dc212a894a3575c61eadfb012c8db93923d806f5";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemKeystore keystore;
+
+    private KeystoreBulkTool tool;
+
+    @Before
+    public void before() throws Exception {
+        final Path keystorePath = folder.newFolder("keystore").toPath();
+        keystore = new FileSystemKeystore() {
+            @Override
+            public Path getKeyStoreLocation() {
+                return keystorePath;
+            }
+        };
+        tool = new KeystoreBulkTool(keystore, 4);
+    }
+
+    @Test
+    public void duplicateImportTest() throws Exception {
+        final Path source = folder.newFolder("source").toPath();
+        for (int i = 0; i < 8; i++) {
+            Files.write(source.resolve("key" + i + ".json"), Arrays.asList(CORRECT_KEY));
+        }
+
+        final KeystoreBulkTool.ImportResult result = tool.importKeys(source, null, message -> {});
+
+        assertEquals(Arrays.asList(ADDRESS), result.getImported());
+        assertEquals(7, result.getSkipped());
+        assertTrue(result.getErrors().isEmpty());
+        assertEquals(1, keystore.getKeyStoreLocation().toFile().listFiles().length);
+
+        // next import skips keys stored already
+        assertEquals(8, tool.importKeys(source, null, message -> {}).getSkipped());
+    }
+
+    @Test
+    public void errorsDontShowContentTest() throws Exception {
+        final Path source = folder.newFolder("source").toPath();
+        Files.write(source.resolve("secret.json"), Arrays.asList("{\"secret\": very-secret-value"));
+        Files.write(source.resolve("raw.txt"), Arrays.asList("not-a-key-secret"));
+
+        final KeystoreBulkTool.ImportResult result = tool.importKeys(source, "123", message -> {});
+
+        assertEquals(Arrays.asList("Problem importing key from raw.txt line 1", "Problem importing key from secret.json"),
+                result.getErrors());
+        assertTrue(result.getImported().isEmpty());
+    }
+
+    @Test
+    public void exportDoesNotOverwriteTest() throws Exception {
+        keystore.storeRawKeystore(CORRECT_KEY, ADDRESS);
+        final File keyFile = keystore.getKeyFile(ADDRESS);
+
+        final Path zip = folder.getRoot().toPath().resolve("keys.zip");
+        assertEquals(1, tool.exportKeys(zip, message -> {}));
+        final long zipSize = Files.size(zip);
+        try {
+            tool.exportKeys(zip, message -> {});
+            fail("Existing archive should not be overwritten");
+        } catch (FileAlreadyExistsException e) {
+            assertEquals(zipSize, Files.size(zip));
+        }
+
+        final Path dir = folder.newFolder("export").toPath();
+        Files.write(dir.resolve(keyFile.getName()), Arrays.asList("existing"));
+        try {
+            tool.exportKeys(dir, message -> {});
+            fail("Existing key file should not be overwritten");
+        } catch (FileAlreadyExistsException e) {
+            assertEquals(Arrays.asList("existing"), Files.readAllLines(dir.resolve(keyFile.getName())));
+        }
+    }
+}
@@ -22,9 +22,12 @@ import org.ethereum.crypto.ECKey;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+
 import static org.junit.Assert.*;
 
 /**
@@ -53,6 +56,31 @@ public class KeystoreTest {
         }
     };
 
+    /**
+     * Keystore with index, which doesn't watch directory, so files deleted outside stay in index
+     */
+    FileSystemKeystore unwatchedKeystore = new FileSystemKeystore() {
+        Path keystorePath = null;
+
+        {
+            try {
+                keystorePath = Files.createTempDirectory("keystore");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public Path getKeyStoreLocation() {
+            return keystorePath;
+        }
+
+        @Override
+        KeystoreIndex createIndex(Path dir) {
+            return new KeystoreIndex(dir, false);
+        }
+    };
+
     @Test
     public void encodeDecode() throws Exception {
         final String password = "123";
@@ -109,5 +137,58 @@ public class KeystoreTest {
         }
     }
 
-    private static String CORRECT_KEY = "{\"address\":\"dc212a894a3575c61eadfb012c8db93923d806f5\",\"crypto\":{\"cipher\":\"aes-128-ctr\",\"ciphertext\":\"4baa65c9e3438e28c657a3585c5b444746578a5b0f35e1816e43146a09dc9f94\",\"cipherparams\":{\"iv\":\"bca4d9a043c68a9b9d995492d29653f5\"},\"kdf\":\"scrypt\",\"kdfparams\":{\"dklen\":32,\"n\":262144,\"p\":1,\"r\":8,\"salt\":\"eadb4203d8618141268903a9c8c0ace4f45954e5c4679257b89b874f24b56ea3\"},\"mac\":\"b1b34957940158569ed129f9bb4373979c78748bdf6e33354bcc922d2a207efa\"},\"id\":\"c985b75c-01ef-49b7-b7f0-0c2db4c299bc\",\"version\":3}";
+    @Test
+    public void indexFileNameMatch() throws Exception {
+        final Path dir = Files.createTempDirectory("keystore");
+        final String address = "dc212a894a3575c61eadfb012c8db93923d806f5";
+        for (String name : Arrays.asList(
+                "UTC--2016-07-27T10-00Z--" + address,
+                "UTC--2016-07-27T10-00Z--" + address.replace('d', 'e') + ".bak",
+                "UTC--2016-07-27T10-00Z--" + address.replace('d', 'f') + "--old",
+                "backup--2016-07-27T10-00Z--" + address.replace('d', '0'),
+                "UTC--2016-07-27T10-00Z--0x" + address.replace('d', '1'),
+                "UTC--2016-07-27T10-00Z--" + address.substring(2),
+                address.replace('d', '2') + ".json")) {
+            Files.write(dir.resolve(name), Arrays.asList(CORRECT_KEY));
+        }
+        Files.createDirectory(dir.resolve("UTC--2016-07-27T10-00Z--" + address.replace('d', '3')));
+
+        final KeystoreIndex index = new KeystoreIndex(dir, false);
+        assertEquals(Arrays.asList(address), index.getAddresses());
+        assertNotNull(index.get(address.toUpperCase()));
+    }
+
+    @Test
+    public void removeAndAddAgain() throws Exception {
+        final String address = "dc212a894a3575c61eadfb012c8db93923d806f5";
+
+        unwatchedKeystore.storeRawKeystore(CORRECT_KEY, address);
+        final File first = unwatchedKeystore.getKeyFile(address);
+        assertTrue(first.isFile());
+
+        unwatchedKeystore.removeKey(address);
+        assertFalse(first.exists());
+        assertFalse(unwatchedKeystore.hasStoredKey(address));
+        assertEquals(0, unwatchedKeystore.listStoredKeys().length);
+
+        unwatchedKeystore.storeRawKeystore(CORRECT_KEY, address);
+        assertTrue(unwatchedKeystore.hasStoredKey(address));
+        assertArrayEquals(new String[] {"0x" + address}, unwatchedKeystore.listStoredKeys());
+        assertNotNull(unwatchedKeystore.loadStoredKey(address, "123"));
+    }
+
+    @Test
+    public void fileDeletedBehindIndex() throws Exception {
+        final String address = "dc212a894a3575c61eadfb012c8db93923d806f5";
+
+        unwatchedKeystore.storeRawKeystore(CORRECT_KEY, address);
+        Files.delete(unwatchedKeystore.getKeyFile(address).toPath());
+        // index is not watching, so it still has deleted file
+        assertTrue(unwatchedKeystore.hasStoredKey(address));
+
+        assertNull(unwatchedKeystore.loadStoredKey(address, "123"));
+        assertFalse(unwatchedKeystore.hasStoredKey(address));
+    }
+
+    static final String CORRECT_KEY = "{\"address\":\"dc212a894a3575c61eadfb012c8db93923d806f5\",\"crypto\":{\"cipher\":\"aes-128-ctr\",\"ciphertext\":\"4baa65c9e3438e28c657a3585c5b444746578a5b0f35e1816e43146a09dc9f94\",\"cipherparams\":{\"iv\":\"bca4d9a043c68a9b9d995492d29653f5\"},\"kdf\":\"scrypt\",\"kdfparams\":{\"dklen\":32,\"n\":262144,\"p\":1,\"r\":8,\"salt\":\"eadb4203d8618141268903a9c8c0ace4f45954e5c4679257b89b874f24b56ea3\"},\"mac\":\"b1b34957940158569ed129f9bb4373979c78748bdf6e33354bcc922d2a207efa\"},\"id\":\"c985b75c-01ef-49b7-b7f0-0c2db4c299bc\",\"version\":3}";
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.service;
+
+import com.ethercamp.harmony.config.HarmonyProperties;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockSummary;
+import org.ethereum.facade.Ethereum;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class EventPipelineServiceTest {
+
+    private static final int QUEUE_SIZE = 4;
+
+    private EventPipelineService pipeline;
+
+    private EthereumListener ethereumListener;
+
+    @Before
+    public void before() {
+        pipeline = new EventPipelineService();
+        pipeline.ethereum = mock(Ethereum.class);
+        pipeline.properties = mock(HarmonyProperties.class);
+        when(pipeline.properties.eventPipelineQueueSize()).thenReturn(QUEUE_SIZE);
+        pipeline.init();
+
+        final ArgumentCaptor<EthereumListener> captor = ArgumentCaptor.forClass(EthereumListener.class);
+        verify(pipeline.ethereum).addListener(captor.capture());
+        ethereumListener = captor.getValue();
+    }
+
+    @After
+    public void after() {
+        pipeline.close();
+    }
+
+    @Test
+    public void slowStageDoesNotDelayOtherStagesTest() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> fastBlocks = new CopyOnWriteArrayList<>();
+        final List<Long> slowBlocks = new CopyOnWriteArrayList<>();
+
+        pipeline.addListener("slow", new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowBlocks.add(blockSummary.getBlock().getNumber());
+            }
+        });
+        pipeline.addListener("fast", new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                fastBlocks.add(blockSummary.getBlock().getNumber());
+            }
+        });
+
+        // fits into slow stage queue, so event thread is not blocked
+        for (long number = 1; number <= QUEUE_SIZE; number++) {
+            ethereumListener.onBlock(blockSummary(number));
+        }
+        waitFor(() -> fastBlocks.size() == QUEUE_SIZE);
+        assertEquals(0, slowBlocks.size());
+        assertEquals(0, metric("pipeline.slow.blocked"));
+        assertEquals(0, metric("pipeline.fast.lag"));
+
+        release.countDown();
+        waitFor(() -> slowBlocks.size() == QUEUE_SIZE);
+        assertEquals(fastBlocks, slowBlocks);
+    }
+
+    @Test
+    public void fullQueueBlocksEventThreadTest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> blocks = new CopyOnWriteArrayList<>();
+        pipeline.addListener("slow", new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                blocks.add(blockSummary.getBlock().getNumber());
+            }
+        });
+
+        ethereumListener.onBlock(blockSummary(1));
+        started.await(5, TimeUnit.SECONDS);
+
+        // first event is taken by worker, next ones fill the queue, last one waits for free space
+        final Thread eventThread = new Thread(() -> {
+            for (long number = 2; number <= QUEUE_SIZE + 2; number++) {
+                ethereumListener.onBlock(blockSummary(number));
+            }
+        });
+        eventThread.start();
+        waitFor(() -> eventThread.getState() == Thread.State.WAITING);
+        assertTrue(eventThread.isAlive());
+
+        release.countDown();
+        eventThread.join(5000);
+        waitFor(() -> blocks.size() == QUEUE_SIZE + 2);
+        assertEquals(1, metric("pipeline.slow.blocked"));
+    }
+
+    @Test
+    public void listenerErrorDoesNotStopStageTest() throws Exception {
+        final List<Long> blocks = new CopyOnWriteArrayList<>();
+        pipeline.addListener("stage", new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                if (blockSummary.getBlock().getNumber() == 1) {
+                    throw new RuntimeException("Test error");
+                }
+            }
+        });
+        pipeline.addListener("stage", new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                blocks.add(blockSummary.getBlock().getNumber());
+            }
+        });
+
+        ethereumListener.onBlock(blockSummary(1));
+        ethereumListener.onBlock(blockSummary(2));
+
+        waitFor(() -> blocks.size() == 2);
+        assertEquals(2, metric("pipeline.stage.processed"));
+    }
+
+    private long metric(String name) {
+        return pipeline.metrics().stream()
+                .filter(m -> m.getName().equals(name))
+                .mapToLong(m -> m.getValue().longValue())
+                .findFirst()
+                .orElse(-1);
+    }
+
+    private static BlockSummary blockSummary(long number) {
+        final Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        return new BlockSummary(block, Collections.emptyMap(), Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.test()) {
+            assertTrue("Condition is not met in time", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+        boolean test();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.ethercamp.harmony.service;
+
+import com.ethercamp.harmony.jsonrpc.JsonRpc;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerInitializedEvent;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class JsonRpcUsageServiceTest {
+
+    private final JsonRpcUsageService service = new JsonRpcUsageService();
+
+    private Method method;
+
+    @Before
+    public void before() throws Exception {
+        service.jsonRpc = mock(JsonRpc.class);
+        service.clientMessageService = mock(ClientMessageService.class);
+        when(service.jsonRpc.ethj_listAvailableMethods()).thenReturn(new String[] {"eth_blockNumber"});
+
+        final EmbeddedServletContainerInitializedEvent event = mock(EmbeddedServletContainerInitializedEvent.class, RETURNS_DEEP_STUBS);
+        when(event.getEmbeddedServletContainer().getPort()).thenReturn(8080);
+        service.onApplicationEvent(event);
+
+        method = JsonRpc.class.getMethod("eth_blockNumber");
+    }
+
+    @Test
+    public void subMillisecondLatencyTest() {
+        service.willInvoke(method, Collections.emptyList());
+        final long start = System.nanoTime();
+        while (System.nanoTime() - start < 200_000) {
+            // busy call of 200us
+        }
+        // server measures whole milliseconds
+        service.didInvoke(method, Collections.emptyList(), "0x1", null, 0);
+
+        assertEquals(1L, metric("rpc.method.eth_blockNumber.count"));
+        final long p50 = metric("rpc.method.eth_blockNumber.p50Us");
+        assertTrue("Latency " + p50, p50 >= 190 && p50 < 1000);
+    }
+
+    @Test
+    public void errorLatencyTest() {
+        service.willInvoke(method, Collections.emptyList());
+        service.didInvoke(method, Collections.emptyList(), null, new RuntimeException("Test failure"), 0);
+
+        assertEquals(1L, metric("rpc.method.eth_blockNumber.errors"));
+        assertEquals(0, (long) metric("rpc.method.eth_blockNumber.inFlight"));
+        assertEquals(0, (long) metric("rpc.inFlight"));
+    }
+
+    private long metric(String name) {
+        for (Metric<?> metric : service.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue().longValue();
+            }
+        }
+        throw new AssertionError("No metric " + name);
+    }
+}
@@ -20,6 +20,8 @@ package com.ethercamp.harmony.service;
 
 import com.ethercamp.harmony.model.dto.WalletAddressDTO;
 import com.ethercamp.harmony.model.dto.WalletInfoDTO;
+import com.ethercamp.harmony.jsonrpc.KeySessionCache;
+import com.ethercamp.harmony.jsonrpc.SigningService;
 import com.ethercamp.harmony.keystore.Keystore;
 import com.ethercamp.harmony.service.wallet.FileSystemWalletStore;
 import org.ethereum.core.*;
@@ -29,6 +31,7 @@ import org.ethereum.util.ByteUtil;
 import org.ethereum.util.blockchain.StandaloneBlockchain;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
@@ -117,6 +120,42 @@ public class WalletTests {
         }
     }
 
+    @Test
+    public void testPushOnlyChangedAddresses() throws Exception {
+        when(walletService.repository.getBalance(Hex.decode(ADDRESS_2))).thenReturn(BigInteger.ZERO);
+        walletService.importAddress(ADDRESS_1, "cow");
+        walletService.importAddress(ADDRESS_2, "dog");
+        reset(walletService.clientMessageService);
+
+        // not related to wallet
+        walletService.handlePendingTransactionsReceived(Arrays.asList(
+                createTransaction(ECKey.fromPrivate(sha3("cat".getBytes())), "0000000000000000000000000000000000000001", BigInteger.ONE)));
+        verify(walletService.clientMessageService, never()).sendToTopic(any(String.class), any());
+
+        walletService.handlePendingTransactionsReceived(Arrays.asList(createTransaction(KEY_2, ADDRESS_1, BigInteger.ONE)));
+
+        final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(walletService.clientMessageService).sendToTopic(eq("/topic/getWalletInfo"), captor.capture());
+        final WalletInfoDTO walletInfo = (WalletInfoDTO) captor.getValue();
+        assertTrue(walletInfo.isPartial());
+        assertEquals(2, walletInfo.getAddresses().size());
+        assertEquals(BALANCE_1, walletInfo.getTotalAmount());
+    }
+
+    @Test
+    public void testRemoveAddressEvictsKeys() throws Exception {
+        walletService.keySessionCache = mock(KeySessionCache.class);
+        walletService.signingService = mock(SigningService.class);
+        walletService.importAddress(ADDRESS_1, "cow");
+
+        walletService.removeAddress(ADDRESS_1);
+
+        verify(walletService.keystore).removeKey(ADDRESS_1);
+        verify(walletService.keySessionCache).evict(ADDRESS_1);
+        verify(walletService.signingService).lock(ADDRESS_1);
+        assertTrue(walletService.getWalletInfo().getAddresses().isEmpty());
+    }
+
     private Transaction createTransaction(ECKey fromAccount, String toAddress, BigInteger amount) {
         Transaction tx = new Transaction(
                 ByteUtil.bigIntegerToBytes(BigInteger.ZERO),
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015, 2016 Ether.Camp Inc. (US)
+ * This file is part of Ethereum Harmony.
+ *
+ * Ethereum Harmony is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ethereum Harmony is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ethereum Harmony.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ethercamp.harmony.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void quantilesTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertWithin(500_000, histogram.getValueAtQuantile(0.5));
+        assertWithin(990_000, histogram.getValueAtQuantile(0.99));
+        assertWithin(999_000, histogram.getValueAtQuantile(0.999));
+        assertEquals(1_000_000, histogram.getValueAtQuantile(1));
+    }
+
+    @Test
+    public void subMillisecondTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(250_000, TimeUnit.NANOSECONDS);
+        histogram.record(40_000, TimeUnit.NANOSECONDS);
+
+        assertEquals(250, histogram.getMax());
+        assertEquals(290, histogram.getSum());
+        assertEquals(40, histogram.getValueAtQuantile(0.5));
+    }
+
+    @Test
+    public void bucketsTest() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            final long highest = LatencyHistogram.highestValue(LatencyHistogram.bucket(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / 32);
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected ~" + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 32);
+    }
+}